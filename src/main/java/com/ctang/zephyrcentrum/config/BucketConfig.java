@@ -1,20 +0,0 @@
-package com.ctang.zephyrcentrum.config;
-
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-import java.time.Duration;
-
-@Configuration
-public class BucketConfig {
-
-    @Bean
-    Bucket bucket() {
-        // Configure the bucket with a limit of 10 tokens per minute
-        Bandwidth limit = Bandwidth.classic(10, Refill.greedy(10, Duration.ofMinutes(1)));
-        return Bucket.builder().addLimit(limit).build();
-    }
-}
\ No newline at end of file
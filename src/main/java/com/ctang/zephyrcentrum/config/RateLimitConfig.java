@@ -0,0 +1,23 @@
+package com.ctang.zephyrcentrum.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ctang.zephyrcentrum.ratelimit.JdbcBucketProxyManager;
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "zephyr.rate-limit.backend", havingValue = "jdbc")
+    public JdbcBucketProxyManager jdbcBucketProxyManager(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        return new JdbcBucketProxyManager(jdbcTemplate, meterRegistry);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ctang.zephyrcentrum.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -25,6 +26,9 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.ctang.zephyrcentrum.security.JwtCookieFilter;
+import com.ctang.zephyrcentrum.security.OffloadingPasswordEncoder;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -67,7 +71,8 @@ public class SecurityConfig {
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("Content-Type", "X-XSRF-TOKEN", "Authorization"));
         configuration.setAllowCredentials(true);
-        configuration.setExposedHeaders(Arrays.asList("X-XSRF-TOKEN"));
+        configuration.setExposedHeaders(Arrays.asList("X-XSRF-TOKEN", "RateLimit-Limit", "RateLimit-Remaining",
+            "RateLimit-Reset", "RateLimit-Policy", "Retry-After", "X-Next-Cursor"));
         
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -119,8 +124,14 @@ public class SecurityConfig {
     }
     
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    public PasswordEncoder passwordEncoder(
+        MeterRegistry meterRegistry,
+        @Value("${zephyr.security.password-hashing.workers:0}") int workers,
+        @Value("${zephyr.security.password-hashing.queue-capacity:64}") int queueCapacity,
+        @Value("${zephyr.security.password-hashing.timeout:5000}") long timeout
+    ) {
+        // BCrypt takes a few hundred milliseconds of CPU, keep it off the request threads
+        return new OffloadingPasswordEncoder(new BCryptPasswordEncoder(12), workers, queueCapacity, timeout, meterRegistry);
     }
 }
 
@@ -14,6 +14,7 @@ import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.security.web.csrf.CsrfTokenRepository;
 import org.springframework.web.bind.annotation.*;
 
+import com.ctang.zephyrcentrum.exceptions.PasswordHashingUnavailableException;
 import com.ctang.zephyrcentrum.exceptions.UsernameAlreadyExistsException;
 import com.ctang.zephyrcentrum.models.User;
 import com.ctang.zephyrcentrum.services.AuthenticationService;
@@ -99,6 +100,8 @@ public class AuthController {
             responseBody.put("message", "Invalid username or password");
 
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(responseBody);
+        } catch (PasswordHashingUnavailableException e) {
+            return passwordHashingUnavailable();
         } catch (Exception e) {
             // Other errors
             Map<String, Object> responseBody = new HashMap<>();
@@ -155,6 +158,8 @@ public class AuthController {
             responseBody.put("error", "username_exists");
             responseBody.put("message", "Username already exists");
             return ResponseEntity.badRequest().body(responseBody);
+        } catch (PasswordHashingUnavailableException e) {
+            return passwordHashingUnavailable();
         } catch (Exception e) {
             Map<String, String> responseBody = new HashMap<>();
             responseBody.put("error", "registration_failed");
@@ -207,6 +212,15 @@ public class AuthController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("authenticated", false));
         }
     }
+
+    private ResponseEntity<Object> passwordHashingUnavailable() {
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put("error", "service_busy");
+        responseBody.put("message", "Too many sign-ins right now, please retry shortly");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header("Retry-After", "1")
+            .body(responseBody);
+    }
     
     // Login request class (unchanged)
     public static class LoginRequest {
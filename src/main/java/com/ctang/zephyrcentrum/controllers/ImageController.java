@@ -1,16 +1,32 @@
 package com.ctang.zephyrcentrum.controllers;
 
+import com.ctang.zephyrcentrum.exceptions.UnsupportedImageTypeException;
 import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.ImageDerivative;
+import com.ctang.zephyrcentrum.models.dtos.ImageSummary;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus;
+import com.ctang.zephyrcentrum.services.ImageDerivativeService;
 import com.ctang.zephyrcentrum.services.ImageServiceImpl;
+import com.ctang.zephyrcentrum.services.UploadSessionService;
+import com.ctang.zephyrcentrum.types.Visibility;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
 
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 
 @RestController
@@ -18,19 +34,33 @@ import java.util.List;
 @CrossOrigin(maxAge = 3600)
 public class ImageController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ImageServiceImpl imageService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final UploadSessionService uploadSessionService;
 
-    public ImageController(ImageServiceImpl imageService) {
+    public ImageController(
+            ImageServiceImpl imageService,
+            ImageDerivativeService imageDerivativeService,
+            UploadSessionService uploadSessionService) {
         this.imageService = imageService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.uploadSessionService = uploadSessionService;
     }
     
     /**
-     * Get all images for a specific user
+     * Get a page of image metadata for a specific user, newest first.
+     * Pass the X-Next-Cursor header of a page as {@code before} to fetch the next one.
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Image>> getAllImagesByUser(@PathVariable Long userId) {
-        List<Image> images = imageService.getAllImagesByUserId(userId);
-        return ResponseEntity.ok(images);
+    public ResponseEntity<List<ImageSummary>> getAllImagesByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+        return KeysetPages.page(before, limit, MAX_PAGE_SIZE,
+            (cursor, pageSize) -> imageService.getImageSummariesByUserId(userId, cursor, pageSize),
+            image -> new KeysetCursor(image.uploadDate(), image.id()));
     }
     
     /**
@@ -44,6 +74,42 @@ public class ImageController {
             .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Stream the raw bytes of an image.
+     * With {@code w}, the smallest derivative at least that wide is served
+     * instead, falling back to the original if none has been rendered.
+     * Range, If-None-Match and If-Modified-Since are evaluated by Spring MVC
+     * against the headers set here, so resumed downloads get a 206 with only
+     * the requested regions and revalidations get a 304 with no body.
+     */
+    @GetMapping("/{imageId}/content")
+    public ResponseEntity<Resource> getImageContent(
+            @PathVariable Long imageId,
+            @RequestParam(name = "w", required = false) Integer width) {
+        Optional<Image> imageOptional = imageService.getImageById(imageId);
+        if (imageOptional.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Image image = imageOptional.get();
+
+        if (width != null && width > 0) {
+            Optional<ImageDerivative> derivative = imageDerivativeService.getClosestDerivative(imageId, width);
+            if (derivative.isPresent()) {
+                Optional<Resource> content = imageDerivativeService.getDerivativeContent(derivative.get());
+                if (content.isPresent()) {
+                    return contentResponse(image, derivative.get().getContentType(),
+                        derivative.get().getStorageKey(), content.get());
+                }
+            }
+        }
+
+        Optional<Resource> content = imageService.getImageContent(image);
+        if (content.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return contentResponse(image, image.getContentType(), image.getStorageKey(), content.get());
+    }
+
     @PatchMapping("/{imageId}")
     public ResponseEntity<Image> updateImage(@PathVariable Long imageId, @RequestBody Image image) {
         Image updatedImage = imageService.updateImage(imageId, image);
@@ -71,6 +137,9 @@ public class ImageController {
                 List<Image> savedImages = imageService.storeMultipleImages(files, userId);
                 return ResponseEntity.status(HttpStatus.CREATED).body(savedImages);
             }
+        } catch (UnsupportedImageTypeException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                .body(new ArrayList<>());
         } catch (IOException e) {
             // Return an empty list instead of a string message
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -78,6 +147,87 @@ public class ImageController {
         }
     }
 
+    /**
+     * Start a resumable upload. The response tells the client how to split
+     * the file: PUT each chunk to {@code /uploads/{id}/chunks/{index}}, then
+     * POST {@code /uploads/{id}/complete}.
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadSessionStatus> createUploadSession(
+            @RequestParam Long userId,
+            @RequestParam String filename,
+            @RequestParam long size,
+            @RequestParam(required = false) String description) {
+        try {
+            UploadSessionStatus session = uploadSessionService.createSession(userId, filename, description, size);
+            return ResponseEntity.created(URI.create("/api/v1/images/uploads/" + session.id())).body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Get the chunks received so far, so an interrupted upload can resume
+     */
+    @GetMapping("/uploads/{sessionId}")
+    public ResponseEntity<UploadSessionStatus> getUploadSession(@PathVariable String sessionId) {
+        return uploadSessionService.getStatus(sessionId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Upload one chunk of a resumable upload as the raw request body
+     */
+    @PutMapping(value = "/uploads/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionStatus> uploadChunk(
+            @PathVariable String sessionId,
+            @PathVariable int index,
+            InputStream content) {
+        try {
+            return uploadSessionService.writeChunk(sessionId, index, content)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Finish a resumable upload once every chunk has been received
+     */
+    @PostMapping("/uploads/{sessionId}/complete")
+    public ResponseEntity<Image> completeUploadSession(@PathVariable String sessionId) {
+        try {
+            return uploadSessionService.complete(sessionId)
+                .map(image -> ResponseEntity.status(HttpStatus.CREATED).body(image))
+                .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (UnsupportedImageTypeException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Abandon a resumable upload
+     */
+    @DeleteMapping("/uploads/{sessionId}")
+    public ResponseEntity<?> abortUploadSession(@PathVariable String sessionId) {
+        if (uploadSessionService.abort(sessionId)) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
     /**
      * Delete an image
      */
@@ -88,4 +238,27 @@ public class ImageController {
         }
         return ResponseEntity.notFound().build();
     }
+
+    private ResponseEntity<Resource> contentResponse(Image image, String contentType, String eTag, Resource content) {
+        CacheControl cacheControl = image.getVisibility() == Visibility.PUBLIC
+            ? CacheControl.noCache().cachePublic()
+            : CacheControl.noCache().cachePrivate();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(parseContentType(contentType))
+            .cacheControl(cacheControl)
+            .eTag(eTag)
+            .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (image.getUploadDate() != null) {
+            response.lastModified(image.getUploadDate().atZone(ZoneId.systemDefault()));
+        }
+        return response.body(content);
+    }
+
+    private MediaType parseContentType(String contentType) {
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (RuntimeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
 }
@@ -9,9 +9,8 @@ import com.ctang.zephyrcentrum.models.Item;
 import com.ctang.zephyrcentrum.models.Purchase;
 import com.ctang.zephyrcentrum.services.ItemService;
 import com.ctang.zephyrcentrum.services.PurchaseService;
+import com.ctang.zephyrcentrum.ratelimit.RateLimited;
 
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.ConsumptionProbe;
 import jakarta.validation.Valid;
 
 import java.util.List;
@@ -24,23 +23,15 @@ public class ItemController {
 
     private final ItemService itemService;
     private final PurchaseService purchaseService;
-    private final Bucket bucket;
 
-    public ItemController(ItemService itemService, PurchaseService purchaseService, Bucket bucket) {
+    public ItemController(ItemService itemService, PurchaseService purchaseService) {
         this.itemService = itemService;
         this.purchaseService = purchaseService;
-        this.bucket = bucket;
     }
 
     @GetMapping
+    @RateLimited(policy = "items-read", cost = 5)
     public ResponseEntity<List<Item>> getAllItems() {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             List<Item> items = itemService.getAllItems();
             return items.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(items);
@@ -50,14 +41,8 @@ public class ItemController {
     }
 
     @GetMapping("/{id}")
+    @RateLimited(policy = "items-read")
     public ResponseEntity<Item> getItemById(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             Item item = itemService.getItemById(id);
             return item == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(item);
@@ -67,14 +52,8 @@ public class ItemController {
     }
 
     @GetMapping("/search")
+    @RateLimited(policy = "items-read", cost = 3)
     public ResponseEntity<List<Item>> searchItems(@RequestParam String name) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             List<Item> items = itemService.getItemsByName(name);
             return items.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(items);
@@ -84,14 +63,8 @@ public class ItemController {
     }
     
     @GetMapping("/available")
+    @RateLimited(policy = "items-read", cost = 5)
     public ResponseEntity<List<Item>> getAvailableItems() {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             List<Item> items = itemService.getAvailableItems();
             return items.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(items);
@@ -101,14 +74,8 @@ public class ItemController {
     }
 
     @PostMapping
+    @RateLimited(policy = "items-write")
     public ResponseEntity<Item> createItem(@Valid @RequestBody Item item) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             Item newItem = itemService.createItem(item);
             return ResponseEntity.status(HttpStatus.CREATED).body(newItem);
@@ -118,31 +85,39 @@ public class ItemController {
     }
 
     @PutMapping("/{id}")
+    @RateLimited(policy = "items-write")
     public ResponseEntity<Item> updateItem(@PathVariable Long id, @Valid @RequestBody Item item) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             Item updatedItem = itemService.updateItem(id, item);
             return updatedItem == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(updatedItem);
+        } catch (IllegalStateException e) {
+            // The new stock is below what was sold since it was read
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PatchMapping("/{id}/stock")
+    @RateLimited(policy = "items-write")
+    public ResponseEntity<Void> addStock(@PathVariable Long id, @RequestParam int delta) {
+        try {
+            if (itemService.getItemById(id) == null) {
+                return ResponseEntity.notFound().build();
+            }
+            itemService.updateStock(id, delta);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalStateException e) {
+            // The delta would take more stock than is left
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
     @DeleteMapping("/{id}")
+    @RateLimited(policy = "items-write")
     public ResponseEntity<Void> deleteItem(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             Item item = itemService.getItemById(id);
             if (item == null) {
@@ -156,19 +131,12 @@ public class ItemController {
     }
 
     @PostMapping("/{itemId}/buy")
+    @RateLimited(policy = "items-write")
     public ResponseEntity<?> buyItem(
             @PathVariable Long itemId,
             @RequestParam Long userId,
             @RequestParam(defaultValue = "1") Integer quantity) {
         
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-        
         try {
             Purchase purchase = purchaseService.buyItem(userId, itemId, quantity);
             return ResponseEntity.status(HttpStatus.CREATED).body(purchase);
@@ -189,14 +157,8 @@ public class ItemController {
     }
     
     @GetMapping("/user/{userId}/purchases")
+    @RateLimited(policy = "items-read", cost = 3)
     public ResponseEntity<List<Purchase>> getUserPurchases(@PathVariable Long userId) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             List<Purchase> purchases = purchaseService.getPurchasesByUserId(userId);
             return purchases.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(purchases);
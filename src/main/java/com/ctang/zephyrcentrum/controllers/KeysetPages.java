@@ -0,0 +1,52 @@
+package com.ctang.zephyrcentrum.controllers;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.springframework.http.ResponseEntity;
+
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+
+/**
+ * Answers a keyset paginated listing: parses the {@code before} cursor,
+ * clamps the page size and, when the page is full, points at the next page
+ * through the X-Next-Cursor header.
+ */
+final class KeysetPages {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private KeysetPages() {
+    }
+
+    /**
+     * @param before the cursor the client passed, may be null
+     * @param limit the page size the client asked for
+     * @param maxPageSize the largest page size served
+     * @param loader loads the page after a cursor, or the first page for a null cursor
+     * @param cursorOf the position of a row in the listing
+     * @return the page, or 400 if the cursor is malformed
+     */
+    static <T> ResponseEntity<List<T>> page(
+            String before,
+            int limit,
+            int maxPageSize,
+            BiFunction<KeysetCursor, Integer, List<T>> loader,
+            Function<T, KeysetCursor> cursorOf) {
+        KeysetCursor cursor;
+        try {
+            cursor = KeysetCursor.parse(before);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        List<T> rows = loader.apply(cursor, pageSize);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (rows.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, cursorOf.apply(rows.get(rows.size() - 1)).toString());
+        }
+        return response.body(rows);
+    }
+}
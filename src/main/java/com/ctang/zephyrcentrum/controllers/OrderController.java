@@ -0,0 +1,54 @@
+package com.ctang.zephyrcentrum.controllers;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException;
+import com.ctang.zephyrcentrum.exceptions.HotItemCheckoutException;
+import com.ctang.zephyrcentrum.models.dtos.CheckoutRequest;
+import com.ctang.zephyrcentrum.models.dtos.Order;
+import com.ctang.zephyrcentrum.services.PurchaseService;
+import com.ctang.zephyrcentrum.ratelimit.RateLimited;
+
+import jakarta.validation.Valid;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/orders")
+@CrossOrigin(maxAge = 3600)
+public class OrderController {
+
+    private final PurchaseService purchaseService;
+
+    public OrderController(PurchaseService purchaseService) {
+        this.purchaseService = purchaseService;
+    }
+
+    @PostMapping
+    @RateLimited(policy = "items-write", cost = 2)
+    public ResponseEntity<?> checkout(@Valid @RequestBody CheckoutRequest request) {
+        try {
+            Order order = purchaseService.checkout(request.userId(), request.lines());
+            return ResponseEntity.status(HttpStatus.CREATED).body(order);
+        } catch (CheckoutFailedException e) {
+            Map<String, Object> error = Map.of(
+                "error", "Insufficient stock",
+                "lines", e.getFailures()
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (HotItemCheckoutException e) {
+            Map<String, Object> error = Map.of(
+                "error", "Hot items must be bought on their own",
+                "itemIds", e.getItemIds()
+            );
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
@@ -1,68 +1,105 @@
 package com.ctang.zephyrcentrum.controllers;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import com.ctang.zephyrcentrum.models.Comment;
 import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.CommentThread;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeNode;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
 import com.ctang.zephyrcentrum.services.CommentService;
+import com.ctang.zephyrcentrum.services.LikeService;
 import com.ctang.zephyrcentrum.services.PostService;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.ConsumptionProbe;
+import com.ctang.zephyrcentrum.services.TimelineService;
+import com.ctang.zephyrcentrum.utils.CommentPath;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+import com.ctang.zephyrcentrum.ratelimit.RateLimited;
 
 @RestController
 @RequestMapping("/api/v1/social")
 public class SocialController {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_THREAD_PAGE_SIZE = 1000;
+
     private final PostService postService;
-    private final Bucket bucket;
     private final CommentService commentService;
-
-    public SocialController(PostService postService, Bucket bucket, CommentService commentService) {
+    private final TimelineService timelineService;
+    private final LikeService likeService;
+
+    public SocialController(
+            PostService postService,
+            CommentService commentService,
+            TimelineService timelineService,
+            LikeService likeService) {
         this.postService = postService;
-        this.bucket = bucket;
         this.commentService = commentService;
+        this.timelineService = timelineService;
+        this.likeService = likeService;
     }
 
     @PostMapping("/posts")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Post> createPost(@RequestBody Post post) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         // Logic to set user from JWT and save post would go here
         Post createdPost = postService.createPost(post);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdPost);
     }
 
+    /**
+     * Get a page of the global feed, newest first.
+     * Pass the X-Next-Cursor header of a page as {@code before} to fetch the next one.
+     */
     @GetMapping("/posts")
-    public ResponseEntity<List<Post>> getAllPosts() {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
+    @RateLimited(policy = "social-read", cost = 2)
+    public ResponseEntity<List<PostFeedItem>> getFeed(
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+        return KeysetPages.page(before, limit, MAX_PAGE_SIZE, postService::getFeed,
+            post -> new KeysetCursor(post.createdDate(), post.id()));
+    }
+
+    /**
+     * Get a page of a user's home timeline: their own posts and those of everyone they follow, newest first.
+     * Pass the X-Next-Cursor header of a page as {@code before} to fetch the next one.
+     */
+    @GetMapping("/users/{userId}/timeline")
+    @RateLimited(policy = "social-read", cost = 2)
+    public ResponseEntity<List<PostFeedItem>> getHomeTimeline(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+        return KeysetPages.page(before, limit, MAX_PAGE_SIZE,
+            (cursor, pageSize) -> timelineService.getHomeTimeline(userId, cursor, pageSize),
+            post -> new KeysetCursor(post.createdDate(), post.id()));
+    }
+
+    @PutMapping("/users/{userId}/following/{followeeId}")
+    @RateLimited(policy = "social-write")
+    public ResponseEntity<Void> follow(@PathVariable Long userId, @PathVariable Long followeeId) {
+        try {
+            timelineService.follow(userId, followeeId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+        return ResponseEntity.noContent().build();
+    }
 
-        List<Post> posts = postService.getAllPosts();
-        return ResponseEntity.ok(posts);
+    @DeleteMapping("/users/{userId}/following/{followeeId}")
+    @RateLimited(policy = "social-write")
+    public ResponseEntity<Void> unfollow(@PathVariable Long userId, @PathVariable Long followeeId) {
+        if (!timelineService.unfollow(userId, followeeId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/posts/{id}")
+    @RateLimited(policy = "social-read")
     public ResponseEntity<Post> getPostById(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-        
         Post post = postService.getPostById(id);
         if (post == null) {
             return ResponseEntity.notFound().build();
@@ -71,15 +108,8 @@ public class SocialController {
     }
 
     @PatchMapping("/posts/{id}")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Post> updatePost(@PathVariable Long id, @RequestBody Post post) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         Post updatedPost = postService.updatePost(post);
         if (updatedPost == null) {
             return ResponseEntity.notFound().build();
@@ -88,15 +118,8 @@ public class SocialController {
     }
 
     @DeleteMapping("/posts/{id}")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Void> deletePost(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         boolean deleted = postService.deletePost(id);
         if (!deleted) {
             return ResponseEntity.notFound().build();
@@ -104,44 +127,101 @@ public class SocialController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Get the number of likes of a post. Served from the denormalised
+     * counter, so this stays cheap however many likes the post has.
+     */
+    @GetMapping("/posts/{id}/likes/count")
+    @RateLimited(policy = "social-read")
+    public ResponseEntity<Long> getLikeCount(@PathVariable Long id) {
+        return ResponseEntity.ok(likeService.getPostLikeCount(id));
+    }
+
+    /**
+     * Get which of the given posts a user likes, for marking a whole feed page in one request.
+     */
+    @GetMapping("/users/{userId}/likes")
+    @RateLimited(policy = "social-read", cost = 2)
+    public ResponseEntity<Set<Long>> getLikedPostIds(@PathVariable Long userId, @RequestParam List<Long> postIds) {
+        if (postIds.size() > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(likeService.likedPostIds(userId, postIds));
+    }
+
+    @PutMapping("/posts/{id}/likes/{userId}")
+    @RateLimited(policy = "social-write")
+    public ResponseEntity<Void> likePost(@PathVariable Long id, @PathVariable Long userId) {
+        try {
+            likeService.likePost(userId, id);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/posts/{id}/likes/{userId}")
+    @RateLimited(policy = "social-write")
+    public ResponseEntity<Void> unlikePost(@PathVariable Long id, @PathVariable Long userId) {
+        if (!likeService.unlikePost(userId, id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/posts/{id}/comments")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Comment> createComment(@RequestBody Comment comment, @PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         // Logic to set user from JWT and save post would go here
-        Comment createdComment = commentService.createComment(comment);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdComment);
+        try {
+            Comment createdComment = commentService.createComment(comment);
+            return ResponseEntity.status(HttpStatus.CREATED).body(createdComment);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/posts/{id}/comments")
+    @RateLimited(policy = "social-read", cost = 5)
     public ResponseEntity<List<Comment>> getAllComments(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         List<Comment> comments = commentService.getAllCommentsByPostId(id);
         return ResponseEntity.ok(comments);
     }
 
+    /**
+     * Get a page of a post's comments as nested threads, in thread order.
+     * With {@code root}, only that comment and its replies are returned; with
+     * {@code maxDepth}, replies nested deeper than that below the root (or below
+     * top-level comments) are left out.
+     * Pass the X-Next-Cursor header of a page as {@code after} to fetch the next one.
+     */
+    @GetMapping("/posts/{id}/comments/tree")
+    @RateLimited(policy = "social-read", cost = 5)
+    public ResponseEntity<List<CommentTreeNode>> getCommentTree(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long root,
+            @RequestParam(required = false) Integer maxDepth,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "500") int limit) {
+        if (after != null && !CommentPath.isValid(after)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_THREAD_PAGE_SIZE));
+        CommentThread thread = commentService.getCommentThread(id, root, maxDepth, after, pageSize);
+        if (thread == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (thread.nextCursor() != null) {
+            response.header(KeysetPages.NEXT_CURSOR_HEADER, thread.nextCursor());
+        }
+        return response.body(thread.comments());
+    }
+
     @GetMapping("/posts/{id}/comments/{commentId}")
+    @RateLimited(policy = "social-read")
     public ResponseEntity<Comment> getCommentById(@PathVariable Long id, @PathVariable Long commentId) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-        
         Comment comment = commentService.getCommentById(commentId);
         if (comment == null) {
             return ResponseEntity.notFound().build();
@@ -150,15 +230,8 @@ public class SocialController {
     }
 
     @PatchMapping("/posts/{id}/comments/{commentId}")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Comment> updateComment(@PathVariable Long id, @PathVariable Long commentId, @RequestBody Comment comment) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         Comment updatedComment = commentService.updateComment(commentId, comment.getContent());
         if (updatedComment == null) {
             return ResponseEntity.notFound().build();
@@ -167,15 +240,8 @@ public class SocialController {
     }
 
     @DeleteMapping("/posts/{id}/comments/{commentId}")
+    @RateLimited(policy = "social-write")
     public ResponseEntity<Void> deleteComment(@PathVariable Long id, @PathVariable Long commentId) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds",
-                String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         boolean deleted = commentService.deleteComment(commentId);
         if (!deleted) {
             return ResponseEntity.notFound().build();
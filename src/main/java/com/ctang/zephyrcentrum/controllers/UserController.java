@@ -1,19 +1,20 @@
 package com.ctang.zephyrcentrum.controllers;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 
+import com.ctang.zephyrcentrum.exceptions.PasswordHashingUnavailableException;
 import com.ctang.zephyrcentrum.exceptions.UsernameAlreadyExistsException;
 import com.ctang.zephyrcentrum.models.User;
 import com.ctang.zephyrcentrum.services.UserService;
 import com.ctang.zephyrcentrum.validators.UserUpdateValidator;
 import com.ctang.zephyrcentrum.validators.UserValidator;
+import com.ctang.zephyrcentrum.ratelimit.RateLimited;
 
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.ConsumptionProbe;
 import jakarta.validation.Valid;
 
 import java.util.List;
@@ -25,7 +26,6 @@ import java.util.Map;
 public class UserController {
 
     private final UserService userService;
-    private final Bucket bucket;
     private final UserValidator userValidator;
     private final UserUpdateValidator userUpdateValidator;  // Add this
 
@@ -39,25 +39,18 @@ public class UserController {
         binder.addValidators(userUpdateValidator);
     }
     
-    public UserController(UserService userService, Bucket bucket, 
+    public UserController(UserService userService, 
                          UserValidator userValidator, 
                          UserUpdateValidator userUpdateValidator) {  // Update constructor
         this.userService = userService;
-        this.bucket = bucket;
         this.userValidator = userValidator;
         this.userUpdateValidator = userUpdateValidator;
     }
 
     @GetMapping
     // @PreAuthorize("hasRole('USER')")
+    @RateLimited(policy = "users-read", cost = 5)
     public ResponseEntity<List<User>> getAllUsers() {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             List<User> users = userService.getAllUsers();
             return users.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(users);
@@ -68,14 +61,8 @@ public class UserController {
 
     @GetMapping("/{id}")
     // @PreAuthorize("hasRole('USER')")
+    @RateLimited(policy = "users-read")
     public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             User user = userService.getUserById(id);
             return user == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(user);
@@ -86,17 +73,16 @@ public class UserController {
     
     @PostMapping
     // @PreAuthorize("hasRole('ADMIN')")
+    @RateLimited(policy = "users-write")
     public ResponseEntity<User> createUser(@Valid @RequestBody User user) throws UsernameAlreadyExistsException {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
         try {
             User newUser = userService.createUser(user);
             return newUser == null ? ResponseEntity.badRequest().build() : ResponseEntity.ok(newUser);
+        } catch (UsernameAlreadyExistsException | DataIntegrityViolationException e) {
+            // The username or email was taken, possibly through another instance
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (PasswordHashingUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -104,18 +90,15 @@ public class UserController {
 
     @PatchMapping("/{id}")
     // @PreAuthorize("hasRole('ADMIN')")
+    @RateLimited(policy = "users-write")
     public ResponseEntity<User> updateUser(@PathVariable Long id, @RequestBody Map<String, Object> fields) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-                .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-        
         try {
             User updatedUser = userService.updateUser(id, fields);
             return updatedUser == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(updatedUser);
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (PasswordHashingUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -123,15 +106,8 @@ public class UserController {
 
     @DeleteMapping("/{id}")
     // @PreAuthorize("hasRole('ADMIN')")
+    @RateLimited(policy = "users-write")
     public ResponseEntity<Void> deleteUser(@Valid @PathVariable Long id) {
-        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
-        if (!probe.isConsumed()) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
-            .header("X-Rate-Limit-Retry-After-Seconds", 
-                        String.valueOf(probe.getNanosToWaitForRefill() / 1_000_000_000))
-                .build();
-        }
-
         try {
             User user = userService.getUserById(id);
             if (user == null) {
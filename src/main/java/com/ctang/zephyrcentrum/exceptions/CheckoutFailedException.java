@@ -0,0 +1,29 @@
+package com.ctang.zephyrcentrum.exceptions;
+
+import java.util.List;
+
+/**
+ * Thrown when some lines of a cart can't be bought, in which case none of
+ * them are.
+ */
+public class CheckoutFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<LineFailure> failures;
+
+    public CheckoutFailedException(List<LineFailure> failures) {
+        super(String.format("Insufficient stock for %d of the ordered items", failures.size()));
+        this.failures = List.copyOf(failures);
+    }
+
+    public List<LineFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * A line that couldn't be bought.
+     */
+    public record LineFailure(Long itemId, Integer requestedQuantity, Integer availableQuantity) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.ctang.zephyrcentrum.exceptions;
+
+import java.util.List;
+
+/**
+ * Thrown when a cart holds hot items. Their units are sold one purchase at
+ * a time from the inventory ledger, which can't take part in a cart's
+ * all-or-nothing transaction, so they have to be bought on their own.
+ */
+public class HotItemCheckoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Long> itemIds;
+
+    public HotItemCheckoutException(List<Long> itemIds) {
+        super("Hot items must be bought on their own, not in a cart: " + itemIds);
+        this.itemIds = List.copyOf(itemIds);
+    }
+
+    public List<Long> getItemIds() {
+        return itemIds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ctang.zephyrcentrum.exceptions;
+
+/**
+ * Thrown when a password can't be hashed or checked right now because the
+ * hashing pool is saturated. Callers should answer 503 and let the client retry.
+ */
+public class PasswordHashingUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+
+    public PasswordHashingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
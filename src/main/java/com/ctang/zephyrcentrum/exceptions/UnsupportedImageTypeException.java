@@ -0,0 +1,18 @@
+package com.ctang.zephyrcentrum.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception that throws when an uploaded file is not an image format we accept.
+ * HttpStatus.UNSUPPORTED_MEDIA_TYPE (415)
+ */
+@ResponseStatus(value = HttpStatus.UNSUPPORTED_MEDIA_TYPE, reason = "The uploaded file is not a supported image")
+public class UnsupportedImageTypeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedImageTypeException(String filename) {
+        super("File [" + filename + "] is not a supported image");
+    }
+}
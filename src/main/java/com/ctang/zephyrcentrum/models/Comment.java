@@ -3,16 +3,25 @@ package com.ctang.zephyrcentrum.models;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotNull;
@@ -21,18 +30,28 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "comments", schema = "system")
+@Table(name = "comments", schema = "system", indexes = {
+    @Index(name = "idx_comments_post_path", columnList = "post_id, path")
+})
+@NamedEntityGraph(name = "Comment.authors",
+    attributeNodes = {
+        @NamedAttributeNode("user"),
+        @NamedAttributeNode(value = "post", subgraph = "author"),
+        @NamedAttributeNode(value = "parentComment", subgraph = "author")
+    },
+    subgraphs = @NamedSubgraph(name = "author", attributeNodes = @NamedAttributeNode("user")))
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Getter @Setter @NoArgsConstructor
 public class Comment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "post_id", nullable = false)
     private Post post;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
@@ -44,10 +63,25 @@ public class Comment {
     @Column(name = "created_date")
     private LocalDateTime createdDate;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_comment_id")
     private Comment parentComment;
 
+    /**
+     * Materialized path from the top-level comment down to this one, see
+     * {@link com.ctang.zephyrcentrum.utils.CommentPath}. Assigned once the id is known.
+     */
+    @JsonIgnore
+    @Column(name = "path", length = 2048)
+    private String path;
+
+    @ColumnDefault("0")
+    @Column(name = "depth", nullable = false)
+    private int depth;
+
+    // Not part of the comment JSON: serializing it loaded each comment's children one by one,
+    // and looped back through parentComment. Nested replies come from /posts/{id}/comments/tree
+    @JsonIgnore
     @OneToMany(mappedBy = "parentComment", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Comment> replies;
 }
@@ -1,5 +1,7 @@
 package com.ctang.zephyrcentrum.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,7 +13,9 @@ import com.ctang.zephyrcentrum.types.Visibility;
 @Entity
 @Data
 @NoArgsConstructor
-@Table(name = "images", schema = "system")
+@Table(name = "images", schema = "system", indexes = {
+    @Index(name = "idx_images_user_upload_date_id", columnList = "user_id, upload_date DESC, id DESC")
+})
 public class Image {
     
     @Id
@@ -37,8 +41,13 @@ public class Image {
     @Column(name = "visibility")
     private Visibility visibility;
     
-    @Column(name = "data", columnDefinition = "BYTEA")
-    private byte[] data;
+    /**
+     * Key of the image bytes in the {@link com.ctang.zephyrcentrum.storage.ImageBlobStore}.
+     * The bytes themselves are never loaded with the entity.
+     */
+    @JsonIgnore
+    @Column(name = "storage_key")
+    private String storageKey;
     
     @Column(name = "user_id")
     private Long userId;
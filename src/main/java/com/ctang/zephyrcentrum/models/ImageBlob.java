@@ -0,0 +1,35 @@
+package com.ctang.zephyrcentrum.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * Reference count for a piece of content in the blob store. Every image or
+ * derivative pointing at the same hash shares one stored copy, which is only
+ * deleted once the last reference is released.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "image_blobs", schema = "system")
+public class ImageBlob {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @CreationTimestamp
+    @Column(name = "created_date")
+    private LocalDateTime createdDate;
+}
@@ -0,0 +1,50 @@
+package com.ctang.zephyrcentrum.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * A downscaled rendition of an {@link Image}, stored in the blob store next to the original.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "image_derivatives", schema = "system", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_image_derivatives_image_width", columnNames = {"image_id", "width"})
+})
+public class ImageDerivative {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "image_id", nullable = false)
+    private Long imageId;
+
+    @Column(name = "width", nullable = false)
+    private Integer width;
+
+    @Column(name = "height", nullable = false)
+    private Integer height;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "size")
+    private Long size;
+
+    @JsonIgnore
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    @CreationTimestamp
+    @Column(name = "created_date")
+    private LocalDateTime createdDate;
+}
@@ -0,0 +1,62 @@
+package com.ctang.zephyrcentrum.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import com.ctang.zephyrcentrum.types.JobStatus;
+
+/**
+ * A request to render one derivative width of an image. Jobs are persisted
+ * so that work queued before a restart is picked up again afterwards.
+ *
+ * A RUNNING job is leased to the instance rendering it until its lease
+ * expires; only expired leases are handed to another instance.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "image_derivative_jobs", schema = "system", indexes = {
+    @Index(name = "idx_image_derivative_jobs_status_id", columnList = "status, id")
+})
+public class ImageDerivativeJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "image_id", nullable = false)
+    private Long imageId;
+
+    @Column(name = "width", nullable = false)
+    private Integer width;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private JobStatus status = JobStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @CreationTimestamp
+    @Column(name = "created_date")
+    private LocalDateTime createdDate;
+
+    @UpdateTimestamp
+    @Column(name = "updated_date")
+    private LocalDateTime updatedDate;
+}
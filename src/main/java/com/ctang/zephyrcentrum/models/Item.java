@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
@@ -12,12 +13,15 @@ import jakarta.validation.constraints.Positive;
 import java.math.BigDecimal;
 import java.util.Objects;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
 @Table(name = "items", schema = "system")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Getter @Setter @NoArgsConstructor
 public class Item {
     @Id
@@ -40,6 +44,21 @@ public class Item {
     @Column(name = "stock")
     private Integer stock = 0;
 
+    /**
+     * Sold from an in-memory ledger, for limited drops that would otherwise
+     * queue on this row; {@code stock} is then what no instance has claimed yet.
+     * Null in an update that leaves the flag as it is.
+     */
+    @Column(name = "hot", nullable = false)
+    private Boolean hot;
+
+    @PrePersist
+    void defaultHot() {
+        if (hot == null) {
+            hot = false;
+        }
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(id, name, price);
@@ -61,7 +80,7 @@ public class Item {
 
     @Override
     public String toString() {
-        return String.format("Item [id=%d, name=%s, price=%s, stock=%d]", 
-                id, name, price, stock);
+        return String.format("Item [id=%d, name=%s, price=%s, stock=%d, hot=%b]", 
+                id, name, price, stock, hot);
     }
 } 
\ No newline at end of file
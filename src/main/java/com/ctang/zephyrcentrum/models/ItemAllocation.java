@@ -0,0 +1,52 @@
+package com.ctang.zephyrcentrum.models;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Stock of a hot item handed to one instance's in-memory ledger, see
+ * {@link com.ctang.zephyrcentrum.services.InventoryLedger}. The units are no
+ * longer in {@code items.stock}; they are either unsold in the ledger or sold
+ * in a journal entry not yet written to purchases. {@code flushedSequence}
+ * is the last journal entry for the item that has been, so a replay after a
+ * crash skips the entries already applied.
+ */
+@Entity
+@IdClass(ItemAllocation.Key.class)
+@Table(name = "item_allocations", schema = "system")
+@Getter @Setter @NoArgsConstructor
+public class ItemAllocation {
+    @Id
+    @Column(name = "journal_id", length = 36)
+    private String journalId;
+
+    @Id
+    @Column(name = "item_id")
+    private Long itemId;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+
+    @Column(name = "flushed_sequence", nullable = false)
+    private long flushedSequence;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String journalId;
+        private Long itemId;
+    }
+}
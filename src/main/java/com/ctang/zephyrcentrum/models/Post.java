@@ -8,15 +8,22 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 import org.hibernate.annotations.CreationTimestamp;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 @Entity
-@Table(name = "posts", schema = "system")
+@Table(name = "posts", schema = "system", indexes = {
+    @Index(name = "idx_posts_created_date_id", columnList = "created_date DESC, id DESC"),
+    @Index(name = "idx_posts_user_created_date_id", columnList = "user_id, created_date DESC, id DESC")
+})
+@NamedEntityGraph(name = "Post.user", attributeNodes = @NamedAttributeNode("user"))
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Getter @Setter @NoArgsConstructor
 public class Post {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
@@ -0,0 +1,31 @@
+package com.ctang.zephyrcentrum.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Denormalised counters for a post, so showing them never has to count the
+ * rows they summarise. Only ever changed by adding deltas, see
+ * {@link com.ctang.zephyrcentrum.services.PostStatsService}.
+ */
+@Entity
+@Table(name = "post_stats", schema = "system")
+@Getter @Setter @NoArgsConstructor
+public class PostStats {
+    @Id
+    @Column(name = "post_id")
+    private Long postId;
+
+    @Column(name = "like_count", nullable = false)
+    private long likeCount;
+
+    @Column(name = "updated_date")
+    private LocalDateTime updatedDate;
+}
@@ -0,0 +1,39 @@
+package com.ctang.zephyrcentrum.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The shared state of one client's token bucket for one policy, when rate
+ * limits are kept in the database. Only read and written through
+ * {@link com.ctang.zephyrcentrum.ratelimit.JdbcBucketProxyManager}, which
+ * swaps {@code state} only if {@code version} is still the one it read.
+ */
+@Entity
+@Table(name = "rate_limit_buckets", schema = "system", indexes = {
+    @Index(name = "idx_rate_limit_buckets_expires_at", columnList = "expires_at")
+})
+@Getter @Setter @NoArgsConstructor
+public class RateLimitBucket {
+    @Id
+    @Column(name = "bucket_key", length = 255)
+    private String bucketKey;
+
+    @Column(name = "state", nullable = false)
+    private byte[] state;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    /** When the bucket is full again, after which the row can go */
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
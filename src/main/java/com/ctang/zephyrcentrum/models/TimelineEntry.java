@@ -0,0 +1,42 @@
+package com.ctang.zephyrcentrum.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One post in one user's precomputed home timeline. {@code createdDate} is
+ * copied from the post so a timeline page is read from this table alone.
+ */
+@Entity
+@Table(name = "timeline_entries", schema = "system",
+    uniqueConstraints = @UniqueConstraint(name = "uk_timeline_entries_user_post", columnNames = {"user_id", "post_id"}),
+    indexes = {
+        @Index(name = "idx_timeline_entries_user_created_date_post", columnList = "user_id, created_date DESC, post_id DESC"),
+        @Index(name = "idx_timeline_entries_post_id", columnList = "post_id")
+    })
+@Getter @Setter @NoArgsConstructor
+public class TimelineEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "post_id", nullable = false)
+    private Long postId;
+
+    @Column(name = "created_date", nullable = false)
+    private LocalDateTime createdDate;
+}
@@ -0,0 +1,60 @@
+package com.ctang.zephyrcentrum.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+import com.ctang.zephyrcentrum.types.UploadStatus;
+
+/**
+ * A resumable upload in progress. The chunks are written into a temp file as
+ * they arrive, in any order; {@code receivedChunks} is a little-endian bitset
+ * with one bit per chunk, matching {@link java.util.BitSet#valueOf(byte[])}.
+ * {@code writers} counts the chunk writes in flight, and a session can only
+ * move to COMPLETING once there are none.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "upload_sessions", schema = "system", indexes = {
+    @Index(name = "idx_upload_sessions_updated_date", columnList = "updated_date")
+})
+public class UploadSession {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "description")
+    private String description;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "received_chunks", nullable = false)
+    private byte[] receivedChunks;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private UploadStatus status = UploadStatus.UPLOADING;
+
+    @Column(name = "writers", nullable = false)
+    private Integer writers = 0;
+
+    @Column(name = "created_date")
+    private LocalDateTime createdDate;
+
+    @Column(name = "updated_date")
+    private LocalDateTime updatedDate;
+}
@@ -11,6 +11,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
 
@@ -20,6 +21,7 @@ import java.util.Objects;
 import org.hibernate.annotations.CreationTimestamp;
 
 import com.ctang.zephyrcentrum.types.Roles;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -29,7 +31,11 @@ import lombok.Setter;
  * @author Colby Tang
  */
 @Entity
-@Table(name = "users", schema = "system")
+@Table(name = "users", schema = "system", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_users_username", columnNames = "username"),
+    @UniqueConstraint(name = "uk_users_email", columnNames = "email")
+})
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Getter @Setter @NoArgsConstructor
 public class User {
 	@Id
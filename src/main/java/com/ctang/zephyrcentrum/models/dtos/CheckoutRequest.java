@@ -0,0 +1,16 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * A cart to buy in one order.
+ */
+public record CheckoutRequest(
+    @NotNull Long userId,
+    @NotEmpty List<@Valid @NotNull LineItem> lines
+) {
+}
@@ -0,0 +1,12 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.util.List;
+
+/**
+ * A page of a comment thread.
+ *
+ * @param comments the comments on the page whose parent is not on it
+ * @param nextCursor the path to continue after, or null on the last page
+ */
+public record CommentThread(List<CommentTreeNode> comments, String nextCursor) {
+}
@@ -0,0 +1,19 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of a comment thread as it comes out of the path range scan,
+ * before it is assembled into a {@link CommentTreeNode}.
+ */
+public record CommentTreeItem(
+    Long id,
+    Long parentId,
+    String path,
+    int depth,
+    String content,
+    LocalDateTime createdDate,
+    Long authorId,
+    String authorUsername
+) {
+}
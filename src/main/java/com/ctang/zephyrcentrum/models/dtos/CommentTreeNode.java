@@ -0,0 +1,26 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A comment with its replies nested underneath it.
+ * {@code parentId} is kept so a reply whose parent is on an earlier page can
+ * still be attached by the client.
+ */
+public record CommentTreeNode(
+    Long id,
+    Long parentId,
+    int depth,
+    String content,
+    LocalDateTime createdDate,
+    Long authorId,
+    String authorUsername,
+    List<CommentTreeNode> replies
+) {
+    public static CommentTreeNode of(CommentTreeItem item) {
+        return new CommentTreeNode(item.id(), item.parentId(), item.depth(), item.content(),
+            item.createdDate(), item.authorId(), item.authorUsername(), new ArrayList<>());
+    }
+}
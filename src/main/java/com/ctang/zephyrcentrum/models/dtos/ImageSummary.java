@@ -0,0 +1,19 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.time.LocalDateTime;
+
+import com.ctang.zephyrcentrum.types.Visibility;
+
+/**
+ * Metadata-only view of an Image, used for listings so that the
+ * query never touches anything but the columns it returns.
+ */
+public record ImageSummary(
+    Long id,
+    String name,
+    String contentType,
+    Long size,
+    LocalDateTime uploadDate,
+    Visibility visibility
+) {
+}
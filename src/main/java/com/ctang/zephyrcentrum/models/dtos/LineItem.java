@@ -0,0 +1,13 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+/**
+ * One line of a cart: an item and how many of it to buy.
+ */
+public record LineItem(
+    @NotNull Long itemId,
+    @NotNull @Positive Integer quantity
+) {
+}
@@ -0,0 +1,14 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.ctang.zephyrcentrum.models.Purchase;
+
+/**
+ * A checked out cart: one purchase per item, in item id order.
+ *
+ * @param total the sum of the purchase prices
+ */
+public record Order(Long userId, List<Purchase> purchases, BigDecimal total) {
+}
@@ -0,0 +1,16 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * A post as shown in the feed, with only the author fields the feed needs,
+ * so the query never loads a full User entity.
+ */
+public record PostFeedItem(
+    Long id,
+    String content,
+    LocalDateTime createdDate,
+    Long authorId,
+    String authorUsername
+) {
+}
@@ -0,0 +1,23 @@
+package com.ctang.zephyrcentrum.models.dtos;
+
+import java.util.List;
+
+/**
+ * Progress of a resumable upload. Clients resume by sending every chunk
+ * that is not covered by {@code received}.
+ */
+public record UploadSessionStatus(
+    String id,
+    long totalSize,
+    int chunkSize,
+    int chunkCount,
+    List<ChunkRange> received,
+    boolean complete
+) {
+
+    /**
+     * An inclusive range of chunk indices.
+     */
+    public record ChunkRange(int first, int last) {
+    }
+}
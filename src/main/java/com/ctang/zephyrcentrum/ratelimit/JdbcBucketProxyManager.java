@@ -0,0 +1,151 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps token buckets in the rate_limit_buckets table, so every instance
+ * behind the load balancer takes from the same buckets.
+ *
+ * Each bucket is a row holding Bucket4j's serialized state and a version.
+ * An update reads the row, applies the command in memory and writes it back
+ * only if the version hasn't moved, retrying otherwise; no lock is held
+ * between the statements, and plain SQL works on PostgreSQL and the embedded
+ * test database alike. A row is only needed until its bucket has refilled,
+ * so it records when that is and {@link #deleteExpired()} drops it after.
+ */
+public class JdbcBucketProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcBucketProxyManager.class);
+
+    private static final String SELECT_SQL = "SELECT state, version FROM system.rate_limit_buckets WHERE bucket_key = ?";
+    private static final String INSERT_SQL = "INSERT INTO system.rate_limit_buckets (bucket_key, state, version, expires_at) "
+        + "VALUES (?, ?, 1, ?)";
+    private static final String UPDATE_SQL = "UPDATE system.rate_limit_buckets SET state = ?, version = version + 1, expires_at = ? "
+        + "WHERE bucket_key = ? AND version = ?";
+    private static final String DELETE_SQL = "DELETE FROM system.rate_limit_buckets WHERE bucket_key = ?";
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM system.rate_limit_buckets WHERE expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter roundTrips;
+    private final Counter conflicts;
+
+    public JdbcBucketProxyManager(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        super(ClientSideConfig.getDefault());
+        this.jdbcTemplate = jdbcTemplate;
+        this.roundTrips = Counter.builder("rate.limit.jdbc.round.trips")
+            .description("Bucket reads from the database")
+            .register(meterRegistry);
+        this.conflicts = Counter.builder("rate.limit.jdbc.conflicts")
+            .description("Bucket writes retried because another instance wrote first")
+            .register(meterRegistry);
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        return new Operation(key);
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        throw new UnsupportedOperationException("JDBC buckets are synchronous only");
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return false;
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        jdbcTemplate.update(DELETE_SQL, key);
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        throw new UnsupportedOperationException("JDBC buckets are synchronous only");
+    }
+
+    /**
+     * Deletes the buckets that have refilled since they were last used, which
+     * a client would get back as a new, full bucket anyway.
+     *
+     * @return the number of buckets deleted
+     */
+    @Scheduled(fixedDelayString = "${zephyr.rate-limit.cleanup-interval:60000}")
+    public int deleteExpired() {
+        int deleted = jdbcTemplate.update(DELETE_EXPIRED_SQL, new Timestamp(System.currentTimeMillis()));
+        if (deleted > 0) {
+            logger.debug("Deleted {} refilled rate limit buckets", deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * One attempt at updating a bucket, remembering the version it read.
+     */
+    private final class Operation implements CompareAndSwapOperation {
+        private final String key;
+        private long version;
+
+        private Operation(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public Optional<byte[]> getStateData() {
+            roundTrips.increment();
+            List<byte[]> states = jdbcTemplate.query(SELECT_SQL, (row, rowNum) -> {
+                version = row.getLong("version");
+                return row.getBytes("state");
+            }, key);
+            if (states.isEmpty()) {
+                version = 0;
+                return Optional.empty();
+            }
+            return Optional.of(states.get(0));
+        }
+
+        @Override
+        public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+            Timestamp expiresAt = expiresAt(newState);
+            boolean swapped;
+            if (version == 0) {
+                try {
+                    swapped = jdbcTemplate.update(INSERT_SQL, key, newData, expiresAt) == 1;
+                } catch (DuplicateKeyException e) {
+                    swapped = false;
+                }
+            } else {
+                swapped = jdbcTemplate.update(UPDATE_SQL, newData, expiresAt, key, version) == 1;
+            }
+            if (!swapped) {
+                conflicts.increment();
+            }
+            return swapped;
+        }
+
+        private static Timestamp expiresAt(RemoteBucketState state) {
+            long nowMillis = System.currentTimeMillis();
+            long refillNanos = state.calculateFullRefillingTime(TimeUnit.MILLISECONDS.toNanos(nowMillis));
+            return new Timestamp(nowMillis + TimeUnit.NANOSECONDS.toMillis(refillNanos) + 1);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import com.ctang.zephyrcentrum.ratelimit.RateLimiterRegistry.Quota;
+
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Applies {@link RateLimited} to incoming requests.
+ *
+ * The annotation of every handler method is resolved into its policy and
+ * cost once, when the context starts, so a request only costs a map lookup
+ * and a bucket update. Responses carry the RateLimit-Limit,
+ * RateLimit-Remaining, RateLimit-Reset and RateLimit-Policy headers of the
+ * IETF RateLimit fields draft; a refused request gets a 429 with
+ * Retry-After, plus the X-Rate-Limit-Retry-After-Seconds header clients
+ * already know.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final Rule UNLIMITED = new Rule(null, 0);
+
+    private final RateLimiterRegistry rateLimiterRegistry;
+    private final Map<Method, Rule> rules = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(RateLimiterRegistry rateLimiterRegistry) {
+        this.rateLimiterRegistry = rateLimiterRegistry;
+    }
+
+    /**
+     * Resolves the rules of all mapped handlers up front, which also fails
+     * startup on a cost no bucket of the policy could ever pay.
+     */
+    @EventListener
+    public void resolveRules(ContextRefreshedEvent event) {
+        event.getApplicationContext()
+            .getBeansOfType(RequestMappingHandlerMapping.class)
+            .values()
+            .forEach(mapping -> mapping.getHandlerMethods().values()
+                .forEach(handler -> rules.computeIfAbsent(handler.getMethod(), method -> resolve(handler))));
+    }
+
+    @Override
+    public boolean preHandle(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull Object handler
+    ) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        Rule rule = rules.get(handlerMethod.getMethod());
+        if (rule == null) {
+            rule = rules.computeIfAbsent(handlerMethod.getMethod(), method -> resolve(handlerMethod));
+        }
+        if (rule == UNLIMITED) {
+            return true;
+        }
+
+        Quota quota = rule.quota();
+        ConsumptionProbe probe = rateLimiterRegistry.tryConsume(quota, RateLimiterRegistry.clientOf(request), rule.cost());
+        response.setHeader("RateLimit-Limit", Long.toString(quota.limit()));
+        response.setHeader("RateLimit-Remaining", Long.toString(probe.getRemainingTokens()));
+        response.setHeader("RateLimit-Reset", Long.toString(toSeconds(probe.getNanosToWaitForReset())));
+        response.setHeader("RateLimit-Policy", quota.policyHeader());
+        if (probe.isConsumed()) {
+            return true;
+        }
+        String retryAfter = Long.toString(toSeconds(probe.getNanosToWaitForRefill()));
+        response.setHeader("Retry-After", retryAfter);
+        response.setHeader("X-Rate-Limit-Retry-After-Seconds", retryAfter);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        return false;
+    }
+
+    private Rule resolve(HandlerMethod handler) {
+        RateLimited limited = AnnotatedElementUtils.findMergedAnnotation(handler.getMethod(), RateLimited.class);
+        if (limited == null) {
+            limited = AnnotatedElementUtils.findMergedAnnotation(handler.getBeanType(), RateLimited.class);
+        }
+        if (limited == null) {
+            return UNLIMITED;
+        }
+        Quota quota = rateLimiterRegistry.quota(limited.policy());
+        if (limited.cost() < 1 || limited.cost() > quota.limit()) {
+            throw new IllegalStateException("Rate limit cost " + limited.cost() + " of " + handler
+                + " must be between 1 and the capacity " + quota.limit() + " of policy '" + quota.name() + "'");
+        }
+        return new Rule(quota, limited.cost());
+    }
+
+    /**
+     * Rounds up, so a client told to wait 0 seconds really can go ahead.
+     */
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private record Rule(Quota quota, long cost) {
+    }
+}
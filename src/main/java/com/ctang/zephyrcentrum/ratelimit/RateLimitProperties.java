@@ -0,0 +1,69 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Rate limits from {@code zephyr.rate-limit}.
+ *
+ * Each named policy is a set of token bucket limits, applied separately to
+ * every client: the signed-in user, or the IP address for anonymous
+ * requests. Endpoints refer to policies by name; an unknown name falls back
+ * to the {@code default} policy.
+ *
+ * With the {@code jdbc} backend the buckets live in the database and are
+ * shared by all instances. Each instance may then take a small share of a
+ * bucket's tokens before telling the database about them, so most requests
+ * are decided locally; the limit can be overrun by at most that share per
+ * instance.
+ *
+ * @param backend where the buckets live
+ * @param leaseRatio the share of a policy's smallest capacity an instance may take before synchronizing
+ * @param leaseTimeout the longest an instance holds tokens taken without synchronizing
+ * @param maxClients how many (policy, client) buckets are kept; the least recently used go first
+ * @param expireAfterAccess how long an idle client's bucket is kept, after which it starts full again
+ * @param policies the policies by name
+ */
+@ConfigurationProperties("zephyr.rate-limit")
+public record RateLimitProperties(
+    @DefaultValue("local") Backend backend,
+    @DefaultValue("0.1") double leaseRatio,
+    @DefaultValue("500ms") Duration leaseTimeout,
+    @DefaultValue("1000000") long maxClients,
+    @DefaultValue("10m") Duration expireAfterAccess,
+    Map<String, Policy> policies
+) {
+
+    public static final String DEFAULT_POLICY = "default";
+
+    public RateLimitProperties {
+        if (leaseRatio < 0 || leaseRatio > 1) {
+            throw new IllegalArgumentException("zephyr.rate-limit.lease-ratio must be between 0 and 1: " + leaseRatio);
+        }
+        policies = policies == null ? Map.of() : Map.copyOf(policies);
+    }
+
+    public enum Backend {
+        /** Buckets in this instance's memory, each instance enforcing the limits on its own */
+        LOCAL,
+        /** Buckets in the database, shared by all instances */
+        JDBC
+    }
+
+    /**
+     * @param limits the limits, all of which a request must pass
+     */
+    public record Policy(List<Limit> limits) {
+    }
+
+    /**
+     * A bucket of {@code capacity} tokens, refilled with {@code refillTokens}
+     * every {@code refillPeriod}, spread evenly over the period.
+     */
+    public record Limit(long capacity, long refillTokens, Duration refillPeriod) {
+    }
+}
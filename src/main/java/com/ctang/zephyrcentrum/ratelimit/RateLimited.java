@@ -0,0 +1,33 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Rate limits a handler method, or every handler of a controller, per client.
+ *
+ * Each request takes {@link #cost()} tokens from the client's bucket for
+ * {@link #policy()}, so expensive endpoints, such as ones returning whole
+ * tables, can cost more than point lookups under the same policy. An
+ * annotation on the method takes precedence over one on the class.
+ *
+ * @see RateLimitInterceptor
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface RateLimited {
+
+    /**
+     * The name of a policy under {@code zephyr.rate-limit.policies}.
+     */
+    String policy() default RateLimitProperties.DEFAULT_POLICY;
+
+    /**
+     * The tokens one request takes, at most the smallest capacity of the policy.
+     */
+    long cost() default 1;
+}
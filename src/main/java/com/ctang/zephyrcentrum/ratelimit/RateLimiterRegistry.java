@@ -0,0 +1,233 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConfigurationBuilder;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.distributed.proxy.RemoteBucketBuilder;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Token buckets per client and policy.
+ *
+ * A client is the signed-in user, keyed by the user id claim of their JWT or
+ * else their username, or the remote IP address for anonymous requests, so
+ * one noisy client only uses up its own tokens. Buckets live in a Caffeine
+ * cache bounded by size and idle time: memory stays flat however many
+ * distinct clients show up, and a client whose bucket was dropped simply
+ * starts again with a full one.
+ *
+ * With the {@code jdbc} backend the cached buckets are proxies of rows in
+ * the database, shared by all instances. Each proxy takes up to its lease,
+ * a share of the bucket's capacity, locally and writes the tokens it took
+ * back in one update when the lease is used up or times out, so only one
+ * request in that many waits on the database. A policy's stored limits are
+ * kept until its row has refilled and been cleaned up, so changed limits
+ * reach busy clients a little later.
+ */
+@Component
+public class RateLimiterRegistry {
+
+    private final Map<String, Quota> quotas = new HashMap<>();
+    private final Cache<ClientKey, Bucket> buckets;
+    private final JdbcBucketProxyManager proxyManager;
+    private final double leaseRatio;
+    private final Duration leaseTimeout;
+
+    public RateLimiterRegistry(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, null);
+    }
+
+    /**
+     * @param proxyManager the database buckets, required with the {@code jdbc} backend
+     */
+    @Autowired
+    public RateLimiterRegistry(
+        RateLimitProperties properties,
+        MeterRegistry meterRegistry,
+        @Nullable JdbcBucketProxyManager proxyManager
+    ) {
+        if (properties.backend() == RateLimitProperties.Backend.JDBC && proxyManager == null) {
+            throw new IllegalStateException("zephyr.rate-limit.backend is jdbc but there is no JdbcBucketProxyManager");
+        }
+        this.proxyManager = properties.backend() == RateLimitProperties.Backend.JDBC ? proxyManager : null;
+        this.leaseRatio = properties.leaseRatio();
+        this.leaseTimeout = properties.leaseTimeout();
+        properties.policies().forEach((name, policy) -> {
+            Counter rejected = Counter.builder("rate.limit.rejected")
+                .description("Requests refused by a rate limit")
+                .tag("policy", name)
+                .register(meterRegistry);
+            quotas.put(name, new Quota(name, toConfiguration(name, policy), rejected));
+        });
+        if (!quotas.containsKey(RateLimitProperties.DEFAULT_POLICY)) {
+            throw new IllegalStateException("zephyr.rate-limit.policies must define a '"
+                + RateLimitProperties.DEFAULT_POLICY + "' policy");
+        }
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(properties.maxClients())
+            .expireAfterAccess(properties.expireAfterAccess())
+            .build();
+        Gauge.builder("rate.limit.clients", buckets, Cache::estimatedSize)
+            .description("Clients with a rate limit bucket in memory")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Looks up a policy, meant to be done once rather than per request.
+     *
+     * @param policy the name of the policy, or of a missing one to use the default
+     */
+    public Quota quota(String policy) {
+        Quota quota = quotas.get(policy);
+        return quota != null ? quota : quotas.get(RateLimitProperties.DEFAULT_POLICY);
+    }
+
+    /**
+     * Takes tokens from a client's bucket for a policy.
+     *
+     * @param quota the policy
+     * @param client the client key, see {@link #clientOf(HttpServletRequest)}
+     * @param cost the number of tokens to take
+     * @return the outcome, with the tokens left or the time until enough are back
+     */
+    public ConsumptionProbe tryConsume(Quota quota, String client, long cost) {
+        Bucket bucket = buckets.get(new ClientKey(quota.name(), client), this::newBucket);
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(cost);
+        if (!probe.isConsumed()) {
+            quota.rejected().increment();
+        }
+        return probe;
+    }
+
+    /**
+     * Identifies the client of a request: "user:" and the user id or name
+     * when signed in, otherwise "ip:" and the remote address. Behind a
+     * trusted proxy the remote address is the one it forwarded, see
+     * server.tomcat.remoteip, rather than the proxy's own.
+     */
+    public static String clientOf(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            if (authentication instanceof JwtAuthenticationToken jwt && jwt.getToken().getClaim("userId") != null) {
+                return "user:" + jwt.getToken().getClaim("userId");
+            }
+            return "user:" + authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private Bucket newBucket(ClientKey key) {
+        Quota quota = quota(key.policy());
+        if (proxyManager != null) {
+            RemoteBucketBuilder<String> builder = proxyManager.builder();
+            long lease = (long) (quota.limit() * leaseRatio);
+            if (lease > 0 && !leaseTimeout.isZero()) {
+                builder.withOptimization(Optimizations.delaying(new DelayParameters(lease, leaseTimeout)));
+            }
+            return builder.build(key.policy() + "|" + key.client(), quota.configuration());
+        }
+        LocalBucketBuilder builder = Bucket.builder();
+        for (Bandwidth bandwidth : quota.configuration().getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+        return builder.build();
+    }
+
+    private static BucketConfiguration toConfiguration(String name, RateLimitProperties.Policy policy) {
+        if (policy.limits() == null || policy.limits().isEmpty()) {
+            throw new IllegalStateException("Rate limit policy '" + name + "' has no limits");
+        }
+        ConfigurationBuilder builder = BucketConfiguration.builder();
+        for (RateLimitProperties.Limit limit : policy.limits()) {
+            builder.addLimit(Bandwidth.classic(limit.capacity(),
+                Refill.greedy(limit.refillTokens(), limit.refillPeriod())));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A resolved policy, with what the RateLimit headers say about it.
+     */
+    public static final class Quota {
+        private final String name;
+        private final BucketConfiguration configuration;
+        private final Counter rejected;
+        private final long limit;
+        private final String policyHeader;
+
+        private Quota(String name, BucketConfiguration configuration, Counter rejected) {
+            this.name = name;
+            this.configuration = configuration;
+            this.rejected = rejected;
+            long smallest = Long.MAX_VALUE;
+            StringBuilder header = new StringBuilder();
+            for (Bandwidth bandwidth : configuration.getBandwidths()) {
+                smallest = Math.min(smallest, bandwidth.getCapacity());
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                // The time an empty bucket takes to fill up again
+                double refillNanos = (double) bandwidth.getCapacity() * bandwidth.getRefillPeriodNanos() / bandwidth.getRefillTokens();
+                long window = Math.max(1, (long) Math.ceil(refillNanos / TimeUnit.SECONDS.toNanos(1)));
+                header.append(bandwidth.getCapacity()).append(";w=").append(window);
+            }
+            this.limit = smallest;
+            this.policyHeader = header.toString();
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * The most tokens the client can have, the smallest capacity of the policy's limits.
+         */
+        public long limit() {
+            return limit;
+        }
+
+        /**
+         * The limits as a RateLimit-Policy header value, e.g. {@code 50;w=5, 600;w=60}.
+         */
+        public String policyHeader() {
+            return policyHeader;
+        }
+
+        private BucketConfiguration configuration() {
+            return configuration;
+        }
+
+        private Counter rejected() {
+            return rejected;
+        }
+    }
+
+    private record ClientKey(String policy, String client) {
+    }
+}
@@ -2,14 +2,47 @@ package com.ctang.zephyrcentrum.repositories;
 
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ctang.zephyrcentrum.models.Comment;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeItem;
 
 @Repository
-public interface CommentRepository extends JpaRepository<Comment, Long> {
+public interface CommentRepository extends JpaRepository<Comment, Long>, CommentRepositoryCustom {
+    @Override
+    @EntityGraph("Comment.authors")
+    List<Comment> findAll();
+
+    @EntityGraph("Comment.authors")
     List<Comment> findByPostId(Long postId);
+
+    @EntityGraph("Comment.authors")
     List<Comment> findByParentCommentId(Long parentCommentId);
+
+    @EntityGraph("Comment.authors")
     List<Comment> findByUserId(Long userId);
+
+    /**
+     * Lists the comments of a post whose paths lie in {@code [from, to)} and
+     * after {@code after}, in thread order. This is a single range scan of the
+     * {@code (post_id, path)} index.
+     */
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.CommentTreeItem("
+        + "c.id, c.parentComment.id, c.path, c.depth, c.content, c.createdDate, u.id, u.username) "
+        + "FROM Comment c JOIN c.user u "
+        + "WHERE c.post.id = :postId AND c.path >= :from AND c.path > :after AND c.path < :to "
+        + "AND c.depth <= :maxDepth "
+        + "ORDER BY c.path")
+    List<CommentTreeItem> findThread(
+        @Param("postId") Long postId,
+        @Param("from") String from,
+        @Param("after") String after,
+        @Param("to") String to,
+        @Param("maxDepth") int maxDepth,
+        Limit limit);
 }
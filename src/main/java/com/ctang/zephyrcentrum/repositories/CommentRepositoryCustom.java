@@ -0,0 +1,5 @@
+package com.ctang.zephyrcentrum.repositories;
+
+public interface CommentRepositoryCustom {
+    int backfillPaths();
+}
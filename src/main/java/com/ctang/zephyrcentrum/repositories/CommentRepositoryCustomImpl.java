@@ -0,0 +1,41 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Assigns materialized paths to comments written before comments had them,
+ * walking each thread with a recursive CTE so the whole backfill is one statement.
+ */
+public class CommentRepositoryCustomImpl implements CommentRepositoryCustom {
+
+    // Same encoding as CommentPath.segment: digit count in hex, then the id in hex
+    private static final String SEGMENT = "to_hex(length(to_hex(c.id))) || to_hex(c.id)";
+
+    private static final String BACKFILL_SQL = "WITH RECURSIVE tree (id, path, depth) AS ("
+        + "SELECT c.id, COALESCE(p.path, '') || " + SEGMENT + ", COALESCE(p.depth + 1, 0) "
+        + "FROM system.comments c LEFT JOIN system.comments p ON p.id = c.parent_comment_id "
+        + "WHERE c.path IS NULL AND (c.parent_comment_id IS NULL OR p.path IS NOT NULL) "
+        + "UNION ALL "
+        + "SELECT c.id, t.path || " + SEGMENT + ", t.depth + 1 "
+        + "FROM system.comments c JOIN tree t ON c.parent_comment_id = t.id"
+        + ") "
+        + "UPDATE system.comments c SET path = tree.path, depth = tree.depth "
+        + "FROM tree WHERE c.id = tree.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CommentRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Assigns a path and depth to every comment that has no path yet, along
+     * with everything below it.
+     *
+     * @return the number of comments updated
+     */
+    @Override
+    public int backfillPaths() {
+        return jdbcTemplate.update(BACKFILL_SQL);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.Follow;
+
+@Repository
+public interface FollowRepository extends JpaRepository<Follow, Long> {
+
+    boolean existsByFollowerIdAndFolloweeId(Long followerId, Long followeeId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Follow f WHERE f.followerId = :followerId AND f.followeeId = :followeeId")
+    int deleteByFollowerIdAndFolloweeId(@Param("followerId") Long followerId, @Param("followeeId") Long followeeId);
+
+    /**
+     * Narrows a set of users down to those the given user follows.
+     */
+    @Query("SELECT f.followeeId FROM Follow f WHERE f.followerId = :followerId AND f.followeeId IN :followeeIds")
+    List<Long> findFolloweeIdsIn(@Param("followerId") Long followerId, @Param("followeeIds") Collection<Long> followeeIds);
+
+    @Query("SELECT f.followeeId FROM Follow f GROUP BY f.followeeId HAVING COUNT(f) >= :threshold")
+    List<Long> findFolloweeIdsWithAtLeast(@Param("threshold") long threshold);
+}
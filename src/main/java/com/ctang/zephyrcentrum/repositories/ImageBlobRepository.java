@@ -0,0 +1,47 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.ctang.zephyrcentrum.models.ImageBlob;
+
+@Repository
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+    /**
+     * Counts a reference to content, creating its row for the first one. Both
+     * branches leave the row locked until the transaction ends.
+     *
+     * @return always 1
+     */
+    default int addReference(String hash, long size) {
+        // A concurrent first reference makes the insert do nothing, after which the row exists to update
+        while (incrementReference(hash) == 0) {
+            if (insertReference(hash, size) > 0) {
+                break;
+            }
+        }
+        return 1;
+    }
+
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int incrementReference(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = "INSERT INTO system.image_blobs (hash, size, ref_count, created_date) "
+        + "VALUES (:hash, :size, 1, now()) ON CONFLICT DO NOTHING",
+        nativeQuery = true)
+    int insertReference(@Param("hash") String hash, @Param("size") long size);
+
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash")
+    int removeReference(@Param("hash") String hash);
+
+    @Modifying
+    @Query("DELETE FROM ImageBlob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+}
@@ -0,0 +1,82 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.ImageDerivativeJob;
+import com.ctang.zephyrcentrum.types.JobStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ImageDerivativeJobRepository extends JpaRepository<ImageDerivativeJob, Long> {
+
+    List<ImageDerivativeJob> findByStatusOrderByIdAsc(JobStatus status, Limit limit);
+
+    /**
+     * Atomically moves a PENDING job to RUNNING, leased to one instance.
+     *
+     * @return the number of jobs updated, 0 if the job was not PENDING
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageDerivativeJob j SET j.status = com.ctang.zephyrcentrum.types.JobStatus.RUNNING, "
+        + "j.leaseOwner = :owner, j.leaseExpiresAt = :leaseExpiresAt "
+        + "WHERE j.id = :id AND j.status = com.ctang.zephyrcentrum.types.JobStatus.PENDING")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * Marks a job DONE if the instance still holds its lease and its image
+     * still exists.
+     *
+     * @return the number of jobs updated, 0 if the lease was lost or the job or image was deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageDerivativeJob j SET j.status = com.ctang.zephyrcentrum.types.JobStatus.DONE, "
+        + "j.leaseOwner = NULL, j.leaseExpiresAt = NULL "
+        + "WHERE j.id = :id AND j.status = com.ctang.zephyrcentrum.types.JobStatus.RUNNING AND j.leaseOwner = :owner "
+        + "AND EXISTS (SELECT 1 FROM Image i WHERE i.id = j.imageId)")
+    int complete(@Param("id") Long id, @Param("owner") String owner);
+
+    /**
+     * Counts a failed attempt of a job the instance still holds the lease of,
+     * putting it back to PENDING or, after the last attempt, FAILED.
+     *
+     * @return the number of jobs updated, 0 if the lease was lost or the job was deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageDerivativeJob j SET j.attempts = j.attempts + 1, j.lastError = :error, "
+        + "j.status = CASE WHEN j.attempts + 1 >= :maxAttempts THEN com.ctang.zephyrcentrum.types.JobStatus.FAILED "
+        + "ELSE com.ctang.zephyrcentrum.types.JobStatus.PENDING END, "
+        + "j.leaseOwner = NULL, j.leaseExpiresAt = NULL "
+        + "WHERE j.id = :id AND j.status = com.ctang.zephyrcentrum.types.JobStatus.RUNNING AND j.leaseOwner = :owner")
+    int fail(@Param("id") Long id, @Param("owner") String owner, @Param("maxAttempts") int maxAttempts,
+        @Param("error") String error);
+
+    /**
+     * Puts RUNNING jobs whose lease has expired, because the instance
+     * rendering them died, back to PENDING.
+     *
+     * @return the number of jobs updated
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImageDerivativeJob j SET j.status = com.ctang.zephyrcentrum.types.JobStatus.PENDING, "
+        + "j.leaseOwner = NULL, j.leaseExpiresAt = NULL "
+        + "WHERE j.status = com.ctang.zephyrcentrum.types.JobStatus.RUNNING "
+        + "AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < :now)")
+    int releaseExpiredLeases(@Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ImageDerivativeJob j WHERE j.imageId = :imageId")
+    int deleteByImageId(@Param("imageId") Long imageId);
+}
@@ -0,0 +1,28 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.ImageDerivative;
+
+import java.util.List;
+
+@Repository
+public interface ImageDerivativeRepository extends JpaRepository<ImageDerivative, Long> {
+    List<ImageDerivative> findByImageIdOrderByWidthAsc(Long imageId);
+
+    /**
+     * Deletes a derivative, telling whether this call deleted it, so that
+     * only one of two racing deletes releases its blob.
+     *
+     * @return 1 if the derivative was deleted, 0 if it was already gone
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ImageDerivative d WHERE d.id = :id")
+    int deleteIfPresent(@Param("id") Long id);
+}
@@ -1,13 +1,33 @@
 package com.ctang.zephyrcentrum.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.dtos.ImageSummary;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface ImageRepository extends JpaRepository<Image, Long> {
-    List<Image> findByUserId(Long userId);
-}
\ No newline at end of file
+public interface ImageRepository extends JpaRepository<Image, Long>, ImageRepositoryCustom {
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.ImageSummary("
+        + "i.id, i.name, i.contentType, i.size, i.uploadDate, i.visibility) "
+        + "FROM Image i WHERE i.userId = :userId "
+        + "ORDER BY i.uploadDate DESC, i.id DESC")
+    List<ImageSummary> findSummariesByUserId(@Param("userId") Long userId, Limit limit);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.ImageSummary("
+        + "i.id, i.name, i.contentType, i.size, i.uploadDate, i.visibility) "
+        + "FROM Image i WHERE i.userId = :userId "
+        + "AND (i.uploadDate < :uploadDate OR (i.uploadDate = :uploadDate AND i.id < :id)) "
+        + "ORDER BY i.uploadDate DESC, i.id DESC")
+    List<ImageSummary> findSummariesByUserIdBefore(
+        @Param("userId") Long userId,
+        @Param("uploadDate") LocalDateTime uploadDate,
+        @Param("id") Long id,
+        Limit limit);
+}
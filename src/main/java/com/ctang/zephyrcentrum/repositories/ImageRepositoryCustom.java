@@ -0,0 +1,9 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.List;
+
+import com.ctang.zephyrcentrum.models.Image;
+
+public interface ImageRepositoryCustom {
+    List<Image> insertAll(List<Image> images);
+}
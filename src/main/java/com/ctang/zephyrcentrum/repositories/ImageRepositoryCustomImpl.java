@@ -0,0 +1,65 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.Image;
+
+/**
+ * Hibernate can't batch inserts into IDENTITY tables, because it needs each
+ * generated id before it can move on to the next row. Album uploads go
+ * through plain JDBC instead, so the whole album is one batched round trip.
+ */
+public class ImageRepositoryCustomImpl implements ImageRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO system.images "
+        + "(name, content_type, size, description, upload_date, visibility, storage_key, user_id) "
+        + "VALUES (:name, :contentType, :size, :description, :uploadDate, :visibility, :storageKey, :userId)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ImageRepositoryCustomImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts all images in a single JDBC batch and fills in their generated ids.
+     *
+     * @param images the new images, without ids
+     * @return the same images, with ids set
+     */
+    @Override
+    @Transactional
+    public List<Image> insertAll(List<Image> images) {
+        if (images.isEmpty()) {
+            return images;
+        }
+        SqlParameterSource[] batch = images.stream()
+            .map(image -> new MapSqlParameterSource()
+                .addValue("name", image.getName())
+                .addValue("contentType", image.getContentType())
+                .addValue("size", image.getSize())
+                .addValue("description", image.getDescription())
+                .addValue("uploadDate", image.getUploadDate())
+                .addValue("visibility", image.getVisibility() != null ? image.getVisibility().name() : null)
+                .addValue("storageKey", image.getStorageKey())
+                .addValue("userId", image.getUserId()))
+            .toArray(SqlParameterSource[]::new);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, keyHolder, new String[] {"id"});
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < images.size(); i++) {
+            images.get(i).setId(((Number) keys.get(i).get("id")).longValue());
+        }
+        return images;
+    }
+}
@@ -1,19 +1,66 @@
 package com.ctang.zephyrcentrum.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ctang.zephyrcentrum.models.Item;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ItemRepository extends JpaRepository<Item, Long> {
+public interface ItemRepository extends JpaRepository<Item, Long>, ItemRepositoryCustom {
     
     Optional<Item> findByName(String name);
     
     List<Item> findByNameContainingIgnoreCase(String name);
     
     List<Item> findByStockGreaterThan(Integer minimumStock);
+
+    @Query("SELECT i.id FROM Item i WHERE i.hot = true")
+    List<Long> findHotItemIds();
+
+    @Query("SELECT i.id FROM Item i WHERE i.hot = true AND i.id IN :itemIds ORDER BY i.id")
+    List<Long> findHotItemIdsIn(@Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * Updates an item's details but not its stock, which buyers and ledgers
+     * change concurrently with relative updates a full-row write would undo.
+     *
+     * @return 1 if the item exists, else 0
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Item i SET i.name = :name, i.price = :price, i.description = :description, i.hot = :hot "
+        + "WHERE i.id = :itemId")
+    int updateDetails(
+        @Param("itemId") Long itemId,
+        @Param("name") String name,
+        @Param("price") BigDecimal price,
+        @Param("description") String description,
+        @Param("hot") boolean hot);
+
+    /**
+     * Takes stock from an item only if it has enough, in one statement, so
+     * concurrent buyers queue on the row instead of overselling it.
+     *
+     * @return 1 if the stock was taken, 0 if the item has too little or doesn't exist
+     */
+    @Modifying
+    @Query("UPDATE Item i SET i.stock = i.stock - :quantity WHERE i.id = :itemId AND i.stock >= :quantity")
+    int decrementStock(@Param("itemId") Long itemId, @Param("quantity") int quantity);
+
+    /**
+     * Adds a stock delta without reading the item first, unless it would
+     * take the stock below zero.
+     *
+     * @return 1 if the delta was added, 0 if the item has too little stock or doesn't exist
+     */
+    @Modifying
+    @Query("UPDATE Item i SET i.stock = i.stock + :delta WHERE i.id = :itemId AND i.stock + :delta >= 0")
+    int addStock(@Param("itemId") Long itemId, @Param("delta") int delta);
 } 
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.SortedMap;
+
+public interface ItemRepositoryCustom {
+    int[] decrementStocks(SortedMap<Long, Integer> quantities);
+}
@@ -0,0 +1,38 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Takes the stock of a whole cart in one JDBC batch, which JPA can't do for
+ * bulk updates.
+ */
+public class ItemRepositoryCustomImpl implements ItemRepositoryCustom {
+
+    private static final String DECREMENT_SQL = "UPDATE system.items SET stock = stock - ? WHERE id = ? AND stock >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ItemRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Takes stock from each item that has enough, like
+     * {@link ItemRepository#decrementStock(Long, int)}. The updates run in
+     * item id order, so two carts sharing items lock their rows in the same
+     * order and can't deadlock.
+     *
+     * @param quantities the quantity to take per item id
+     * @return per item, in id order, 1 if the stock was taken and 0 if the item has too little or doesn't exist
+     */
+    @Override
+    public int[] decrementStocks(SortedMap<Long, Integer> quantities) {
+        List<Object[]> args = new ArrayList<>(quantities.size());
+        quantities.forEach((itemId, quantity) -> args.add(new Object[] {quantity, itemId, quantity}));
+        return jdbcTemplate.batchUpdate(DECREMENT_SQL, args);
+    }
+}
@@ -1,18 +1,45 @@
 package com.ctang.zephyrcentrum.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ctang.zephyrcentrum.models.Like;
 
 @Repository
-public interface LikeRepository extends JpaRepository<Like, Long>{
+public interface LikeRepository extends JpaRepository<Like, Long>, LikeRepositoryCustom {
+    @EntityGraph("Like.authors")
     List<Like> findByPostId(Long postId);
+
+    @EntityGraph("Like.authors")
     List<Like> findByUserId(Long userId);
-    int countByPostId(Long postId);
+
     Optional<Like> findByUserIdAndPostId(Long userId, Long postId);
-    void deleteByUserIdAndPostId(Long userId, Long postId);
+    boolean existsByUserIdAndPostId(Long userId, Long postId);
+
+    /**
+     * Narrows a set of posts down to those the given user likes.
+     */
+    @Query("SELECT l.post.id FROM Like l WHERE l.user.id = :userId AND l.post.id IN :postIds")
+    List<Long> findLikedPostIdsIn(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+
+    /**
+     * Lists the posts a user likes, newest post first, from the (user_id, post_id) unique index.
+     */
+    @Query("SELECT l.post.id FROM Like l WHERE l.user.id = :userId ORDER BY l.post.id DESC")
+    List<Long> findLikedPostIds(@Param("userId") Long userId, Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Like l WHERE l.user.id = :userId AND l.post.id = :postId")
+    int deleteByUserIdAndPostId(@Param("userId") Long userId, @Param("postId") Long postId);
 }
@@ -0,0 +1,5 @@
+package com.ctang.zephyrcentrum.repositories;
+
+public interface LikeRepositoryCustom {
+    boolean insertIfAbsent(Long userId, Long postId);
+}
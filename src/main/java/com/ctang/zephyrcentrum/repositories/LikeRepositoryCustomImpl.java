@@ -0,0 +1,33 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Liking is an upsert against the (user_id, post_id) unique constraint, so
+ * concurrent likes of the same post by the same user can't race into
+ * duplicates, and the caller learns whether a row was actually added.
+ * The conflict target is left out since that constraint is the only one an
+ * insert can hit, which also keeps the statement runnable on H2 in tests.
+ */
+public class LikeRepositoryCustomImpl implements LikeRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO system.likes (user_id, post_id, created_date) "
+        + "VALUES (?, ?, CURRENT_TIMESTAMP) "
+        + "ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LikeRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds a like unless the user already likes the post.
+     *
+     * @return true if the like was added, false if it already existed
+     */
+    @Override
+    public boolean insertIfAbsent(Long userId, Long postId) {
+        return jdbcTemplate.update(INSERT_SQL, userId, postId) > 0;
+    }
+}
@@ -1,13 +1,59 @@
 package com.ctang.zephyrcentrum.repositories;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
+    @EntityGraph("Post.user")
     List<Post> findAllByUserId(Long userId);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.PostFeedItem("
+        + "p.id, p.content, p.createdDate, u.id, u.username) "
+        + "FROM Post p JOIN p.user u "
+        + "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostFeedItem> findFeed(Limit limit);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.PostFeedItem("
+        + "p.id, p.content, p.createdDate, u.id, u.username) "
+        + "FROM Post p JOIN p.user u "
+        + "WHERE p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id) "
+        + "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostFeedItem> findFeedBefore(
+        @Param("createdDate") LocalDateTime createdDate,
+        @Param("id") Long id,
+        Limit limit);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.PostFeedItem("
+        + "p.id, p.content, p.createdDate, u.id, u.username) "
+        + "FROM Post p JOIN p.user u WHERE p.id IN :ids")
+    List<PostFeedItem> findFeedItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.PostFeedItem("
+        + "p.id, p.content, p.createdDate, u.id, u.username) "
+        + "FROM Post p JOIN p.user u WHERE u.id IN :authorIds "
+        + "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostFeedItem> findFeedByAuthors(@Param("authorIds") Collection<Long> authorIds, Limit limit);
+
+    @Query("SELECT new com.ctang.zephyrcentrum.models.dtos.PostFeedItem("
+        + "p.id, p.content, p.createdDate, u.id, u.username) "
+        + "FROM Post p JOIN p.user u WHERE u.id IN :authorIds "
+        + "AND (p.createdDate < :createdDate OR (p.createdDate = :createdDate AND p.id < :id)) "
+        + "ORDER BY p.createdDate DESC, p.id DESC")
+    List<PostFeedItem> findFeedByAuthorsBefore(
+        @Param("authorIds") Collection<Long> authorIds,
+        @Param("createdDate") LocalDateTime createdDate,
+        @Param("id") Long id,
+        Limit limit);
 }
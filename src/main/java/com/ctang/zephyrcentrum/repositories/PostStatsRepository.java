@@ -0,0 +1,17 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.ctang.zephyrcentrum.models.PostStats;
+
+@Repository
+public interface PostStatsRepository extends JpaRepository<PostStats, Long>, PostStatsRepositoryCustom {
+
+    @Query("SELECT s.likeCount FROM PostStats s WHERE s.postId = :postId")
+    Optional<Long> findLikeCountByPostId(@Param("postId") Long postId);
+}
@@ -0,0 +1,9 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public interface PostStatsRepositoryCustom {
+    void addLikeCounts(Map<Long, Long> deltas);
+    int reconcileLikeCounts(LocalDateTime quietSince);
+}
@@ -0,0 +1,57 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Counter updates are relative upserts applied in batches, which JPA can't
+ * express, so they go through JDBC.
+ */
+public class PostStatsRepositoryCustomImpl implements PostStatsRepositoryCustom {
+
+    private static final String ADD_LIKES_SQL = "INSERT INTO system.post_stats (post_id, like_count, updated_date) "
+        + "VALUES (?, ?, now()) "
+        + "ON CONFLICT (post_id) DO UPDATE SET like_count = post_stats.like_count + EXCLUDED.like_count, "
+        + "updated_date = EXCLUDED.updated_date";
+
+    private static final String RECONCILE_LIKES_SQL = "INSERT INTO system.post_stats (post_id, like_count, updated_date) "
+        + "SELECT p.id, COUNT(l.id), now() FROM system.posts p "
+        + "LEFT JOIN system.likes l ON l.post_id = p.id GROUP BY p.id "
+        + "HAVING MAX(l.created_date) IS NULL OR MAX(l.created_date) < ? "
+        + "ON CONFLICT (post_id) DO UPDATE SET like_count = EXCLUDED.like_count, updated_date = EXCLUDED.updated_date "
+        + "WHERE post_stats.like_count <> EXCLUDED.like_count AND post_stats.updated_date < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PostStatsRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds a like count delta to each post in one batch, creating the
+     * counter rows that don't exist yet.
+     */
+    @Override
+    public void addLikeCounts(Map<Long, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((postId, delta) -> args.add(new Object[] {postId, delta}));
+        jdbcTemplate.batchUpdate(ADD_LIKES_SQL, args);
+    }
+
+    /**
+     * Recounts the likes of posts that have been quiet since the cutoff and
+     * corrects the counters that have drifted. Posts liked or flushed since
+     * then are skipped, as another instance may still hold deltas for them
+     * that the count would already include.
+     *
+     * @return the number of counters created or corrected
+     */
+    @Override
+    public int reconcileLikeCounts(LocalDateTime quietSince) {
+        return jdbcTemplate.update(RECONCILE_LIKES_SQL, quietSince, quietSince);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ctang.zephyrcentrum.repositories;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -10,11 +11,18 @@ import com.ctang.zephyrcentrum.models.Item;
 import java.util.List;
 
 @Repository
-public interface PurchaseRepository extends JpaRepository<Purchase, Long> {
+public interface PurchaseRepository extends JpaRepository<Purchase, Long>, PurchaseRepositoryCustom {
     
+    @Override
+    @EntityGraph("Purchase.userAndItem")
+    List<Purchase> findAll();
+
+    @EntityGraph("Purchase.userAndItem")
     List<Purchase> findByUser(User user);
     
+    @EntityGraph("Purchase.userAndItem")
     List<Purchase> findByUserOrderByPurchaseDateDesc(User user);
     
+    @EntityGraph("Purchase.userAndItem")
     List<Purchase> findByItem(Item item);
 } 
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.util.List;
+
+import com.ctang.zephyrcentrum.models.Purchase;
+
+public interface PurchaseRepositoryCustom {
+    void insertAll(List<Purchase> purchases);
+}
@@ -0,0 +1,61 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import com.ctang.zephyrcentrum.models.Purchase;
+
+/**
+ * Inserts the purchases of an order in one JDBC batch rather than one
+ * statement each, which identity ids keep Hibernate from batching.
+ */
+public class PurchaseRepositoryCustomImpl implements PurchaseRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO system.purchases "
+        + "(user_id, item_id, quantity, purchase_price, purchase_date) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PurchaseRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts new purchases and sets their generated ids. Each needs its user,
+     * item, quantity, price and date set.
+     */
+    @Override
+    public void insertAll(List<Purchase> purchases) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+            connection -> connection.prepareStatement(INSERT_SQL, new String[] {"id"}),
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement statement, int i) throws SQLException {
+                    Purchase purchase = purchases.get(i);
+                    statement.setLong(1, purchase.getUser().getId());
+                    statement.setLong(2, purchase.getItem().getId());
+                    statement.setInt(3, purchase.getQuantity());
+                    statement.setBigDecimal(4, purchase.getPurchasePrice());
+                    statement.setTimestamp(5, Timestamp.valueOf(purchase.getPurchaseDate()));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return purchases.size();
+                }
+            },
+            keys);
+        List<Map<String, Object>> ids = keys.getKeyList();
+        for (int i = 0; i < purchases.size(); i++) {
+            purchases.get(i).setId(((Number) ids.get(i).get("id")).longValue());
+        }
+    }
+}
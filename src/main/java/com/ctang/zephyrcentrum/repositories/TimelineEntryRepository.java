@@ -0,0 +1,45 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.TimelineEntry;
+
+@Repository
+public interface TimelineEntryRepository extends JpaRepository<TimelineEntry, Long>, TimelineEntryRepositoryCustom {
+
+    @Query("SELECT t FROM TimelineEntry t WHERE t.userId = :userId "
+        + "ORDER BY t.createdDate DESC, t.postId DESC")
+    List<TimelineEntry> findPage(@Param("userId") Long userId, Limit limit);
+
+    @Query("SELECT t FROM TimelineEntry t WHERE t.userId = :userId "
+        + "AND (t.createdDate < :createdDate OR (t.createdDate = :createdDate AND t.postId < :postId)) "
+        + "ORDER BY t.createdDate DESC, t.postId DESC")
+    List<TimelineEntry> findPageBefore(
+        @Param("userId") Long userId,
+        @Param("createdDate") LocalDateTime createdDate,
+        @Param("postId") Long postId,
+        Limit limit);
+
+    @Query("SELECT t.userId FROM TimelineEntry t WHERE t.postId = :postId")
+    List<Long> findUserIdsByPostId(@Param("postId") Long postId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.postId = :postId")
+    int deleteByPostId(@Param("postId") Long postId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TimelineEntry t WHERE t.userId = :userId "
+        + "AND t.postId IN (SELECT p.id FROM Post p WHERE p.user.id = :authorId)")
+    int deleteByUserIdAndAuthorId(@Param("userId") Long userId, @Param("authorId") Long authorId);
+}
@@ -0,0 +1,9 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TimelineEntryRepositoryCustom {
+    List<Long> fanOut(Long postId, LocalDateTime createdDate, Long authorId, boolean toFollowers);
+    int backfill(Long followerId, Long followeeId, int limit);
+}
@@ -0,0 +1,83 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+/**
+ * Timeline writes are set based, a single statement per post or follow, and
+ * read back the rows they inserted, so they go through JDBC rather than JPA.
+ * The inserted user ids are requested as generated keys, which the
+ * PostgreSQL driver turns into RETURNING user_id.
+ */
+public class TimelineEntryRepositoryCustomImpl implements TimelineEntryRepositoryCustom {
+
+    private static final String FAN_OUT_SQL = "INSERT INTO system.timeline_entries (user_id, post_id, created_date) "
+        + "SELECT f.follower_id, CAST(? AS BIGINT), CAST(? AS TIMESTAMP) FROM system.follows f WHERE f.followee_id = ? "
+        + "UNION ALL SELECT CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS TIMESTAMP) "
+        + "ON CONFLICT DO NOTHING";
+
+    private static final String AUTHOR_ONLY_SQL = "INSERT INTO system.timeline_entries (user_id, post_id, created_date) "
+        + "VALUES (?, ?, ?) "
+        + "ON CONFLICT DO NOTHING";
+
+    private static final String BACKFILL_SQL = "INSERT INTO system.timeline_entries (user_id, post_id, created_date) "
+        + "SELECT ?, p.id, p.created_date FROM system.posts p WHERE p.user_id = ? "
+        + "ORDER BY p.created_date DESC, p.id DESC LIMIT ? "
+        + "ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TimelineEntryRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Pushes a post into the timelines of its author and, unless disabled, of
+     * every follower of the author, in one INSERT ... SELECT.
+     *
+     * @return the ids of the users whose timelines received the post, without
+     *         those that already had it
+     */
+    @Override
+    public List<Long> fanOut(Long postId, LocalDateTime createdDate, Long authorId, boolean toFollowers) {
+        Timestamp timestamp = Timestamp.valueOf(createdDate);
+        if (!toFollowers) {
+            return insertReturningUserIds(AUTHOR_ONLY_SQL, authorId, postId, timestamp);
+        }
+        return insertReturningUserIds(FAN_OUT_SQL, postId, timestamp, authorId, authorId, postId, timestamp);
+    }
+
+    /**
+     * Copies the most recent posts of a newly followed user into the follower's timeline.
+     *
+     * @return the number of entries added
+     */
+    @Override
+    public int backfill(Long followerId, Long followeeId, int limit) {
+        return jdbcTemplate.update(BACKFILL_SQL, followerId, followeeId, limit);
+    }
+
+    private List<Long> insertReturningUserIds(String sql, Object... args) {
+        PreparedStatementCreator insert = connection -> connection.prepareStatement(sql, new String[] {"user_id"});
+        return jdbcTemplate.execute(insert, (PreparedStatementCallback<List<Long>>) statement -> {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            statement.executeUpdate();
+            List<Long> userIds = new ArrayList<>();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                while (keys.next()) {
+                    userIds.add(keys.getLong(1));
+                }
+            }
+            return userIds;
+        });
+    }
+}
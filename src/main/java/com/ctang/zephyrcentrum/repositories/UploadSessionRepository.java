@@ -0,0 +1,105 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    List<UploadSession> findByUpdatedDateBefore(LocalDateTime cutoff);
+
+    /**
+     * Registers a chunk write, which keeps the session from completing until
+     * {@link #finishChunkWrite} or {@link #abandonChunkWrite}.
+     *
+     * @return the number of sessions updated, 0 if the session no longer exists or is completing
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.writers = s.writers + 1, s.updatedDate = :now "
+        + "WHERE s.id = :id AND s.status = com.ctang.zephyrcentrum.types.UploadStatus.UPLOADING")
+    int beginChunkWrite(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    /**
+     * Sets the bit of a received chunk in place, so chunks uploaded in
+     * parallel never overwrite each other's progress, and ends its write.
+     *
+     * @return the number of sessions updated, 0 if the session no longer exists
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE system.upload_sessions "
+        + "SET received_chunks = set_bit(received_chunks, :chunk, 1), writers = writers - 1, updated_date = :now "
+        + "WHERE id = :id",
+        nativeQuery = true)
+    int finishChunkWrite(@Param("id") String id, @Param("chunk") int chunk, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.writers = s.writers - 1 WHERE s.id = :id")
+    int abandonChunkWrite(@Param("id") String id);
+
+    /**
+     * Moves a session to COMPLETING, so only one request completes it and no
+     * chunk is written while its file is stored. Writes and completions with
+     * no activity since {@code stalled} are assumed to have died with their
+     * instance.
+     *
+     * @return the number of sessions updated, 0 if the session is gone, completing or being written to
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.status = com.ctang.zephyrcentrum.types.UploadStatus.COMPLETING, "
+        + "s.writers = 0, s.updatedDate = :now "
+        + "WHERE s.id = :id AND (s.updatedDate < :stalled "
+        + "OR (s.status = com.ctang.zephyrcentrum.types.UploadStatus.UPLOADING AND s.writers = 0))")
+    int claimCompletion(@Param("id") String id, @Param("now") LocalDateTime now, @Param("stalled") LocalDateTime stalled);
+
+    /**
+     * Puts a session whose completion failed back to UPLOADING, so it can be
+     * completed again.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = com.ctang.zephyrcentrum.types.UploadStatus.UPLOADING "
+        + "WHERE s.id = :id AND s.status = com.ctang.zephyrcentrum.types.UploadStatus.COMPLETING")
+    int revertCompletion(@Param("id") String id);
+
+    /**
+     * @return the number of sessions deleted, 0 if another request got there first
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id")
+    int deleteSessionById(@Param("id") String id);
+
+    /**
+     * Deletes a session that is not being completed.
+     *
+     * @return the number of sessions deleted, 0 if the session is gone or completing
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id "
+        + "AND s.status = com.ctang.zephyrcentrum.types.UploadStatus.UPLOADING")
+    int deleteUploadingSessionById(@Param("id") String id);
+
+    /**
+     * Deletes a session that has seen no activity since the cutoff.
+     *
+     * @return the number of sessions deleted, 0 if the session is gone or was active again
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id AND s.updatedDate < :cutoff")
+    int deleteStaleSessionById(@Param("id") String id, @Param("cutoff") LocalDateTime cutoff);
+}
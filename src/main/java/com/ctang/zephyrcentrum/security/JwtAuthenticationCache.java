@@ -0,0 +1,204 @@
+package com.ctang.zephyrcentrum.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+
+import com.ctang.zephyrcentrum.services.AuthenticationService;
+import com.ctang.zephyrcentrum.services.UserChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+/**
+ * Remembers the authentication of recently seen JWT cookies.
+ *
+ * Verifying a token's RSA signature and loading its user costs a signature
+ * check and a query on every request, for the same answer each time. Once a
+ * token has been verified, its {@link Authentication} is kept, keyed by the
+ * SHA-256 of the token so the cache never holds usable credentials, until
+ * the token's {@code exp} or for at most the configured max age, whichever
+ * comes first. Tokens without an expiry are never cached.
+ *
+ * Entries are dropped when their user is updated or deleted, via a
+ * {@link UserChangedEvent}. A verification that raced such a change is
+ * not cached, so a stale authentication can't be put back after the drop.
+ * The event only reaches this instance; the max age bounds how long other
+ * instances keep authenticating a user that was deleted or demoted here.
+ */
+@Component
+public class JwtAuthenticationCache {
+
+    private final AuthenticationService authenticationService;
+    private final UserDetailsService userDetailsService;
+    private final Cache<String, Entry> authentications;
+    // Token hashes per username, to drop a user's entries without scanning the cache
+    private final ConcurrentHashMap<String, Set<String>> keysByUsername = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public JwtAuthenticationCache(
+        AuthenticationService authenticationService,
+        UserDetailsService userDetailsService,
+        @Value("${zephyr.security.token-cache.enabled:true}") boolean enabled,
+        @Value("${zephyr.security.token-cache.max-size:100000}") long maxSize,
+        @Value("${zephyr.security.token-cache.max-age:30000}") long maxAge
+    ) {
+        this.authenticationService = authenticationService;
+        this.userDetailsService = userDetailsService;
+        this.authentications = enabled
+            ? Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilTokenExpiry(Duration.ofMillis(maxAge)))
+                .<String, Entry>removalListener((key, entry, cause) -> {
+                    if (cause != RemovalCause.REPLACED && key != null && entry != null) {
+                        forget(entry.username(), key);
+                    }
+                })
+                .build()
+            : null;
+    }
+
+    /**
+     * Returns the authentication for a token, verifying it only if it hasn't
+     * been seen before.
+     *
+     * @param token the JWT token
+     * @return the authentication, or null if the token is invalid or its user doesn't exist
+     */
+    public Authentication authenticate(String token) {
+        if (authentications == null) {
+            Entry entry = verify(token);
+            return entry == null ? null : entry.authentication();
+        }
+        String key = hash(token);
+        Entry cached = authentications.getIfPresent(key);
+        if (cached != null) {
+            return cached.authentication();
+        }
+
+        long seen = invalidations.get();
+        Entry entry = verify(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() != null) {
+            keysByUsername.compute(entry.username(), (username, keys) -> {
+                // Serialized with invalidate() for the same user
+                if (invalidations.get() != seen) {
+                    return keys;
+                }
+                Set<String> updated = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                updated.add(key);
+                authentications.put(key, entry);
+                return updated;
+            });
+        }
+        return entry.authentication();
+    }
+
+    /**
+     * Drops every cached authentication of a user.
+     */
+    public void invalidate(String username) {
+        if (authentications == null || username == null) {
+            return;
+        }
+        keysByUsername.compute(username, (name, keys) -> {
+            invalidations.incrementAndGet();
+            if (keys != null) {
+                authentications.invalidateAll(keys);
+            }
+            return null;
+        });
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.username());
+    }
+
+    private Entry verify(String token) {
+        Jwt jwt = authenticationService.decodeToken(token);
+        if (jwt == null) {
+            return null;
+        }
+        UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername(jwt.getSubject());
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+            userDetails,
+            null,
+            userDetails.getAuthorities()
+        );
+        return new Entry(jwt.getSubject(), authentication, jwt.getExpiresAt());
+    }
+
+    private void forget(String username, String key) {
+        keysByUsername.computeIfPresent(username, (name, keys) -> {
+            // The listener runs later; the same token may have been cached again since
+            if (!authentications.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record Entry(String username, Authentication authentication, Instant expiresAt) {
+    }
+
+    /**
+     * Keeps each entry until its token expires, or for the max age if sooner.
+     */
+    private static final class UntilTokenExpiry implements Expiry<String, Entry> {
+        private final long maxAge;
+
+        private UntilTokenExpiry(Duration maxAge) {
+            this.maxAge = maxAge.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            long untilExpiry = Duration.between(Instant.now(), entry.expiresAt()).toNanos();
+            return Math.max(0, Math.min(untilExpiry, maxAge));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
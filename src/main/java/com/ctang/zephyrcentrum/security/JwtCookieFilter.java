@@ -2,16 +2,11 @@ package com.ctang.zephyrcentrum.security;
 
 import java.io.IOException;
 
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.ctang.zephyrcentrum.models.User;
-import com.ctang.zephyrcentrum.services.AuthenticationService;
-
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -22,15 +17,10 @@ import org.springframework.lang.NonNull;
 @Component
 public class JwtCookieFilter extends OncePerRequestFilter {
 
-    private final AuthenticationService authenticationService;
-    private final UserDetailsService userDetailsService;
+    private final JwtAuthenticationCache authenticationCache;
 
-    public JwtCookieFilter(
-        AuthenticationService authenticationService,
-        UserDetailsService userDetailsService
-    ) {
-        this.authenticationService = authenticationService;
-        this.userDetailsService = userDetailsService;
+    public JwtCookieFilter(JwtAuthenticationCache authenticationCache) {
+        this.authenticationCache = authenticationCache;
     }
 
     @Override
@@ -46,19 +36,10 @@ public class JwtCookieFilter extends OncePerRequestFilter {
         
         // If token exists and is valid, set authentication
         if (token != null) {
-            User user = authenticationService.validateToken(token);
+            // Verified tokens are remembered until they expire
+            Authentication authentication = authenticationCache.authenticate(token);
             
-            if (user != null) {
-                // Load UserDetails and set authentication
-                UserDetails userDetails = userDetailsService.loadUserByUsername(user.getUsername());
-                
-                UsernamePasswordAuthenticationToken authentication = 
-                    new UsernamePasswordAuthenticationToken(
-                        userDetails, 
-                        null, 
-                        userDetails.getAuthorities()
-                    );
-                
+            if (authentication != null) {
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             }
         }
@@ -0,0 +1,150 @@
+package com.ctang.zephyrcentrum.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.ctang.zephyrcentrum.exceptions.PasswordHashingUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs a slow {@link PasswordEncoder}, such as BCrypt, on its own small pool.
+ *
+ * Every hash costs hundreds of milliseconds of CPU. Run on request threads, a
+ * burst of logins takes every core and every worker, and requests that never
+ * touch a password queue behind them. Here hashing runs on at most one
+ * thread per core, behind a bounded queue; the request thread only waits.
+ * When the queue is full, or a hash waits longer than the timeout, the call
+ * fails fast with {@link PasswordHashingUnavailableException}, which the
+ * controllers turn into a 503.
+ */
+public class OffloadingPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    /**
+     * @param delegate the encoder doing the actual work
+     * @param workers the number of hashing threads, 0 for one per core
+     * @param queueCapacity how many hashes may wait for a thread
+     * @param timeoutMillis how long a caller waits for its hash, queueing included
+     */
+    public OffloadingPasswordEncoder(
+        PasswordEncoder delegate,
+        int workers,
+        int queueCapacity,
+        long timeoutMillis,
+        MeterRegistry meterRegistry
+    ) {
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("security.password.hash")
+            .description("Time spent hashing a password")
+            .tag("operation", "encode")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.matchesTimer = Timer.builder("security.password.hash")
+            .description("Time spent checking a password against its hash")
+            .tag("operation", "matches")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder("security.password.wait")
+            .description("Time a request waited for its password hash, queueing included")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.rejected = Counter.builder("security.password.rejected")
+            .description("Password hashes refused because the pool was saturated or too slow")
+            .register(meterRegistry);
+        Gauge.builder("security.password.queue.depth", executor, pool -> pool.getQueue().size())
+            .description("Password hashes waiting for a thread")
+            .register(meterRegistry);
+        Gauge.builder("security.password.active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Password hashes being computed")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> matchesTimer.recordCallable(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // Only inspects the hash's prefix, cheap enough for the caller's thread
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Stops the hashing threads, called by Spring when the context closes.
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private <T> T run(Callable<T> task) {
+        long start = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException("Too many passwords are being hashed", e);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Gives up the queue slot if the hash hasn't started yet
+            future.cancel(false);
+            executor.remove((Runnable) future);
+            rejected.increment();
+            throw new PasswordHashingUnavailableException("Password hashing timed out", e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
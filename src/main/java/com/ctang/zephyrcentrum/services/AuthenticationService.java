@@ -87,13 +87,28 @@ public class AuthenticationService {
      * @return The User if valid, null otherwise
      */
     public User validateToken(String token) {
+        Jwt jwt = decodeToken(token);
+        if (jwt == null) {
+            return null;
+        }
+        
+        // Get the user
+        return userService.getUserByUsername(jwt.getSubject());
+    }
+
+    /**
+     * Verifies a JWT token's signature and expiry without looking up its user
+     * 
+     * @param token The JWT token to verify
+     * @return The decoded token if valid and it names a user, null otherwise
+     */
+    public Jwt decodeToken(String token) {
         try {
             // Decode and validate the token
             Jwt jwt = jwtDecoder.decode(token);
             
             // Get username from subject claim
-            String username = jwt.getSubject();
-            if (username == null) {
+            if (jwt.getSubject() == null) {
                 return null;
             }
             
@@ -103,8 +118,7 @@ public class AuthenticationService {
                 return null;
             }
             
-            // Get the user
-            return userService.getUserByUsername(username);
+            return jwt;
         } catch (JwtException e) {
             // Invalid token
             return null;
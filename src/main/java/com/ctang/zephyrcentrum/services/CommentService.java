@@ -3,9 +3,11 @@ package com.ctang.zephyrcentrum.services;
 import java.util.List;
 
 import com.ctang.zephyrcentrum.models.Comment;
+import com.ctang.zephyrcentrum.models.dtos.CommentThread;
 
 public interface CommentService {
     List<Comment> getAllCommentsByPostId(Long postId);
+    CommentThread getCommentThread(Long postId, Long rootCommentId, Integer maxDepth, String after, int limit);
     List<Comment> getAllCommentsByUserId(Long userId);
     List<Comment> getAllComments();
     Comment getCommentById(Long commentId);
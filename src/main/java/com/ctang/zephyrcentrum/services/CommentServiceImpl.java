@@ -1,21 +1,62 @@
 package com.ctang.zephyrcentrum.services;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.ctang.zephyrcentrum.models.Comment;
+import com.ctang.zephyrcentrum.models.dtos.CommentThread;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeItem;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeNode;
 import com.ctang.zephyrcentrum.repositories.CommentRepository;
+import com.ctang.zephyrcentrum.utils.CommentPath;
 
 import jakarta.transaction.Transactional;
 
 @Service
 public class CommentServiceImpl implements CommentService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CommentServiceImpl.class);
+
+    /**
+     * Deepest reply allowed, so a path always fits in the column and in a
+     * single index entry even with the longest segments.
+     */
+    public static final int MAX_DEPTH = 127;
+
     private final CommentRepository commentRepository;
+    private final boolean backfillPaths;
 
-    public CommentServiceImpl(CommentRepository commentRepository) {
+    public CommentServiceImpl(
+        CommentRepository commentRepository,
+        @Value("${zephyr.social.comments.backfill-paths:true}") boolean backfillPaths
+    ) {
         this.commentRepository = commentRepository;
+        this.backfillPaths = backfillPaths;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillPathsOnStartup() {
+        if (!backfillPaths) {
+            return;
+        }
+        try {
+            int updated = commentRepository.backfillPaths();
+            if (updated > 0) {
+                logger.info("Assigned thread paths to {} comments", updated);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to backfill comment paths, older comments will be missing from threads", e);
+        }
     }
 
     @Override
@@ -23,6 +64,52 @@ public class CommentServiceImpl implements CommentService {
         return commentRepository.findByPostId(postId);
     }
 
+    /**
+     * Loads a page of a comment thread in one range scan of the post's paths
+     * and nests each reply under its parent in a single pass.
+     *
+     * @param postId the ID of the post
+     * @param rootCommentId the comment whose subtree to load, or null for every thread of the post
+     * @param maxDepth how many levels below the root (or below top-level comments) to include, or null for all
+     * @param after the cursor of the previous page, or null for the first page
+     * @param limit the maximum number of comments to return
+     * @return the page, or null if the root comment does not belong to the post
+     */
+    @Override
+    public CommentThread getCommentThread(Long postId, Long rootCommentId, Integer maxDepth, String after, int limit) {
+        String from = "";
+        int baseDepth = 0;
+        if (rootCommentId != null) {
+            Comment root = commentRepository.findById(rootCommentId).orElse(null);
+            if (root == null || root.getPath() == null || !root.getPost().getId().equals(postId)) {
+                return null;
+            }
+            from = root.getPath();
+            baseDepth = root.getDepth();
+        }
+        int depthLimit = maxDepth == null ? Integer.MAX_VALUE : baseDepth + Math.max(0, maxDepth);
+
+        List<CommentTreeItem> items = commentRepository.findThread(
+            postId, from, after == null ? "" : after, CommentPath.upperBound(from), depthLimit, Limit.of(limit));
+
+        // Rows come in path order, so a parent is always seen before its replies
+        Map<Long, CommentTreeNode> nodes = new HashMap<>(items.size() * 2);
+        List<CommentTreeNode> roots = new ArrayList<>();
+        for (CommentTreeItem item : items) {
+            CommentTreeNode node = CommentTreeNode.of(item);
+            nodes.put(item.id(), node);
+            CommentTreeNode parent = item.parentId() == null ? null : nodes.get(item.parentId());
+            if (parent == null) {
+                roots.add(node);
+            } else {
+                parent.replies().add(node);
+            }
+        }
+
+        String nextCursor = items.size() == limit ? items.get(items.size() - 1).path() : null;
+        return new CommentThread(roots, nextCursor);
+    }
+
     @Override
     public List<Comment> getAllCommentsByUserId(Long userId) {
         return commentRepository.findByUserId(userId);
@@ -41,7 +128,31 @@ public class CommentServiceImpl implements CommentService {
     @Override
     @Transactional
     public Comment createComment(Comment comment) {
-        return commentRepository.save(comment);
+        Comment parent = null;
+        if (comment.getParentComment() != null) {
+            parent = commentRepository.findById(comment.getParentComment().getId())
+                .orElseThrow(() -> new IllegalArgumentException("Parent comment not found"));
+            if (comment.getPost() == null) {
+                comment.setPost(parent.getPost());
+            } else if (!parent.getPost().getId().equals(comment.getPost().getId())) {
+                throw new IllegalArgumentException("Parent comment belongs to another post");
+            }
+            if (parent.getDepth() >= MAX_DEPTH) {
+                throw new IllegalArgumentException("Reply is nested too deeply");
+            }
+            comment.setParentComment(parent);
+        }
+
+        Comment savedComment = commentRepository.save(comment);
+        if (parent == null) {
+            savedComment.setPath(CommentPath.child(null, savedComment.getId()));
+        } else if (parent.getPath() != null) {
+            // The path ends with the comment's own id, which the insert has just assigned
+            savedComment.setPath(CommentPath.child(parent.getPath(), savedComment.getId()));
+            savedComment.setDepth(parent.getDepth() + 1);
+        }
+        // Otherwise the parent predates paths and the backfill assigns both
+        return savedComment;
     }
 
     @Override
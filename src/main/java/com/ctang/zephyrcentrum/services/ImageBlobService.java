@@ -0,0 +1,15 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+
+public interface ImageBlobService {
+    StoredBlob retain(InputStream content) throws IOException;
+    StoredBlob retain(InputStream content, Consumer<StoredBlob> owner) throws IOException;
+    StoredBlob retain(Path file) throws IOException;
+    void release(String key);
+}
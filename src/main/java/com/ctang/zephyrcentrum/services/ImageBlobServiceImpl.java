@@ -0,0 +1,221 @@
+package com.ctang.zephyrcentrum.services;
+
+import com.ctang.zephyrcentrum.repositories.ImageBlobRepository;
+import com.ctang.zephyrcentrum.storage.ImageBlobStore;
+import com.ctang.zephyrcentrum.storage.StagedBlob;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed, reference counted access to the blob store.
+ *
+ * Uploads are hashed while they stream into the staging area. Instances share
+ * the store, so the {@code image_blobs} row of a hash is what serializes them:
+ * a retain counts its reference before committing the bytes and a release
+ * deletes the bytes before its transaction commits, each holding the row's
+ * lock until then. A concurrent retain therefore either keeps the row alive
+ * or waits for the delete and writes the bytes again, and can never end up
+ * referencing content that another instance has just deleted.
+ */
+@Service
+public class ImageBlobServiceImpl implements ImageBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBlobServiceImpl.class);
+
+    private final ImageBlobStore imageBlobStore;
+    private final ImageBlobRepository imageBlobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter dedupHits;
+    private final Counter dedupBytes;
+    private final AtomicLong logicalBytes = new AtomicLong();
+    private final AtomicLong physicalBytes = new AtomicLong();
+
+    public ImageBlobServiceImpl(
+        ImageBlobStore imageBlobStore,
+        ImageBlobRepository imageBlobRepository,
+        JdbcTemplate jdbcTemplate,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry
+    ) {
+        this.imageBlobStore = imageBlobStore;
+        this.imageBlobRepository = imageBlobRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.dedupHits = Counter.builder("images.storage.dedup.hits")
+            .description("Uploads whose content was already stored")
+            .register(meterRegistry);
+        this.dedupBytes = Counter.builder("images.storage.dedup.bytes")
+            .description("Bytes not written because identical content was already stored")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("images.storage.logical.bytes", logicalBytes, AtomicLong::get)
+            .description("Bytes referenced by images and derivatives")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("images.storage.physical.bytes", physicalBytes, AtomicLong::get)
+            .description("Bytes actually held in the blob store")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("images.storage.saved.bytes", this, service -> service.logicalBytes.get() - service.physicalBytes.get())
+            .description("Bytes saved by deduplication")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("images.storage.dedup.ratio", this, ImageBlobServiceImpl::dedupRatio)
+            .description("Logical bytes per physically stored byte")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Stores content, or adds a reference to identical content that is already stored.
+     *
+     * @param content the bytes to store, read until EOF but not closed
+     * @return the stored blob
+     * @throws IOException if the content could not be written
+     */
+    @Override
+    public StoredBlob retain(InputStream content) throws IOException {
+        return retainStaged(imageBlobStore.stage(content), null);
+    }
+
+    /**
+     * Like {@link #retain(InputStream)}, and records the blob on its owner in
+     * the same transaction as the reference, so neither commits without the
+     * other.
+     *
+     * @param owner points the owning row at the blob, using the caller's JDBC or JPA resources
+     * @throws RuntimeException whatever {@code owner} threw, after undoing the reference
+     */
+    @Override
+    public StoredBlob retain(InputStream content, Consumer<StoredBlob> owner) throws IOException {
+        return retainStaged(imageBlobStore.stage(content), owner);
+    }
+
+    /**
+     * Like {@link #retain(InputStream)}, but moves an already assembled file
+     * into the store instead of copying it.
+     *
+     * @param file the file to store, moved away on success
+     * @return the stored blob
+     * @throws IOException if the file could not be read or moved
+     */
+    @Override
+    public StoredBlob retain(Path file) throws IOException {
+        return retainStaged(imageBlobStore.stage(file), null);
+    }
+
+    /**
+     * Drops one reference to stored content, deleting the bytes with the last one.
+     *
+     * @param key the key returned by {@link #retain(InputStream)}
+     */
+    @Override
+    public void release(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Locks the row until the bytes are gone
+                boolean unreferenced = imageBlobRepository.removeReference(key) == 0
+                    // Stored before reference counting existed, so it was never shared
+                    || imageBlobRepository.deleteIfUnreferenced(key) > 0;
+                if (unreferenced) {
+                    deleteContent(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Failed to release image blob {}", key, e);
+        }
+    }
+
+    /**
+     * Refreshes the storage gauges. Summing over the tables is too expensive
+     * to do on every scrape, so it runs on a fixed schedule instead.
+     */
+    @Scheduled(fixedDelayString = "${zephyr.images.storage.stats-interval:60000}")
+    public void refreshStorageStats() {
+        Long physical = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(size), 0) FROM system.image_blobs", Long.class);
+        Long logical = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(i.size), 0) FROM system.images i "
+                + "JOIN system.image_blobs b ON b.hash = i.storage_key", Long.class);
+        Long derived = jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(d.size), 0) FROM system.image_derivatives d "
+                + "JOIN system.image_blobs b ON b.hash = d.storage_key", Long.class);
+        physicalBytes.set(physical == null ? 0 : physical);
+        logicalBytes.set((logical == null ? 0 : logical) + (derived == null ? 0 : derived));
+    }
+
+    private StoredBlob retainStaged(StagedBlob staged, Consumer<StoredBlob> owner) throws IOException {
+        try {
+            // Counted first, so the row stays locked until the bytes are in place
+            boolean written = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                imageBlobRepository.addReference(staged.hash(), staged.size());
+                boolean stored;
+                try {
+                    stored = imageBlobStore.commit(staged);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (owner != null) {
+                    try {
+                        owner.accept(new StoredBlob(staged.hash(), staged.size(), !stored));
+                    } catch (RuntimeException e) {
+                        // Still under the row lock, so nobody can have started sharing the new bytes
+                        if (stored) {
+                            deleteContent(staged.hash());
+                        }
+                        throw e;
+                    }
+                }
+                return stored;
+            }));
+            if (!written) {
+                dedupHits.increment();
+                dedupBytes.increment(staged.size());
+            }
+            return new StoredBlob(staged.hash(), staged.size(), !written);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            imageBlobStore.discard(staged);
+        }
+    }
+
+    private void deleteContent(String key) {
+        try {
+            imageBlobStore.delete(key);
+        } catch (IOException e) {
+            // Unreferenced either way, a later upload of the same content just reuses the file
+            logger.warn("Failed to delete unreferenced image blob {}", key, e);
+        }
+    }
+
+    private double dedupRatio() {
+        long physical = physicalBytes.get();
+        return physical == 0 ? 1.0 : (double) logicalBytes.get() / physical;
+    }
+}
@@ -0,0 +1,15 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.util.Optional;
+
+import org.springframework.core.io.Resource;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.ImageDerivative;
+
+public interface ImageDerivativeService {
+    void scheduleDerivatives(Image image);
+    Optional<ImageDerivative> getClosestDerivative(Long imageId, int width);
+    Optional<Resource> getDerivativeContent(ImageDerivative derivative);
+    void deleteDerivatives(Long imageId);
+}
@@ -0,0 +1,308 @@
+package com.ctang.zephyrcentrum.services;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.ImageDerivative;
+import com.ctang.zephyrcentrum.models.ImageDerivativeJob;
+import com.ctang.zephyrcentrum.repositories.ImageDerivativeJobRepository;
+import com.ctang.zephyrcentrum.repositories.ImageDerivativeRepository;
+import com.ctang.zephyrcentrum.repositories.ImageRepository;
+import com.ctang.zephyrcentrum.storage.ImageBlobStore;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+import com.ctang.zephyrcentrum.types.JobStatus;
+import com.ctang.zephyrcentrum.utils.ImageScaler;
+import com.ctang.zephyrcentrum.utils.ImageScaler.ScaledImage;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders downscaled derivatives of uploaded images in the background.
+ *
+ * Each (image, width) pair is a row in {@code image_derivative_jobs}. New jobs
+ * are handed straight to a fixed-size worker pool with a bounded queue; when
+ * the queue is full the job simply stays PENDING and the poller feeds it in
+ * once there is room, so uploads never block on rendering.
+ *
+ * Instances share the job table, so a job is claimed with a lease naming
+ * this instance. Only leases that have expired, because the instance holding
+ * them died, are put back to PENDING, on startup and by every poll. A job
+ * only completes while it still holds its lease and its image still exists;
+ * a derivative rendered for an image deleted meanwhile is removed again.
+ */
+@Service
+public class ImageDerivativeServiceImpl implements ImageDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeServiceImpl.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final ImageRepository imageRepository;
+    private final ImageDerivativeRepository derivativeRepository;
+    private final ImageDerivativeJobRepository jobRepository;
+    private final ImageBlobStore imageBlobStore;
+    private final ImageBlobService imageBlobService;
+    private final List<Integer> widths;
+    private final int maxAttempts;
+    private final long leaseDuration;
+    private final String owner = UUID.randomUUID().toString();
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean recovered;
+
+    public ImageDerivativeServiceImpl(
+        ImageRepository imageRepository,
+        ImageDerivativeRepository derivativeRepository,
+        ImageDerivativeJobRepository jobRepository,
+        ImageBlobStore imageBlobStore,
+        ImageBlobService imageBlobService,
+        @Value("${zephyr.images.derivatives.widths:256,512,1024}") List<Integer> widths,
+        @Value("${zephyr.images.derivatives.workers:2}") int workers,
+        @Value("${zephyr.images.derivatives.queue-capacity:100}") int queueCapacity,
+        @Value("${zephyr.images.derivatives.max-attempts:3}") int maxAttempts,
+        @Value("${zephyr.images.derivatives.lease-duration:300000}") long leaseDuration
+    ) {
+        this.imageRepository = imageRepository;
+        this.derivativeRepository = derivativeRepository;
+        this.jobRepository = jobRepository;
+        this.imageBlobStore = imageBlobStore;
+        this.imageBlobService = imageBlobService;
+        this.widths = List.copyOf(widths);
+        this.maxAttempts = maxAttempts;
+        this.leaseDuration = leaseDuration;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "image-derivative-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Persists one job per configured width and queues them for rendering.
+     * Images of a type that can't be decoded are always served as uploaded,
+     * rather than queueing jobs that could only fail.
+     *
+     * @param image the freshly stored image
+     */
+    @Override
+    public void scheduleDerivatives(Image image) {
+        if (widths.isEmpty() || !ImageScaler.canRead(image.getContentType())) {
+            return;
+        }
+        List<ImageDerivativeJob> jobs = widths.stream().map(width -> {
+            ImageDerivativeJob job = new ImageDerivativeJob();
+            job.setImageId(image.getId());
+            job.setWidth(width);
+            return job;
+        }).toList();
+
+        List<ImageDerivativeJob> saved = jobRepository.saveAll(jobs);
+        Runnable submitAll = () -> saved.forEach(job -> submit(job.getId()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Saved in the caller's transaction, the workers can't claim the jobs before it commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submitAll.run();
+                }
+            });
+        } else {
+            submitAll.run();
+        }
+    }
+
+    /**
+     * Finds the smallest derivative that is at least as wide as requested.
+     *
+     * @param imageId the ID of the original image
+     * @param width the width the client wants to display
+     * @return the closest derivative, or empty if the original should be served
+     */
+    @Override
+    public Optional<ImageDerivative> getClosestDerivative(Long imageId, int width) {
+        return derivativeRepository.findByImageIdOrderByWidthAsc(imageId).stream()
+            .filter(derivative -> derivative.getWidth() >= width)
+            .findFirst();
+    }
+
+    @Override
+    public Optional<Resource> getDerivativeContent(ImageDerivative derivative) {
+        Resource content = imageBlobStore.getResource(derivative.getStorageKey());
+        return content.exists() ? Optional.of(content) : Optional.empty();
+    }
+
+    /**
+     * Removes all pending jobs and rendered derivatives of an image. A job
+     * rendering right now can no longer complete and removes its derivative
+     * itself.
+     *
+     * @param imageId the ID of the original image
+     */
+    @Override
+    public void deleteDerivatives(Long imageId) {
+        jobRepository.deleteByImageId(imageId);
+        for (ImageDerivative derivative : derivativeRepository.findByImageIdOrderByWidthAsc(imageId)) {
+            discard(derivative);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJobs() {
+        recovered = true;
+        pollPendingJobs();
+    }
+
+    /**
+     * Re-queues jobs whose lease expired and feeds PENDING jobs into the
+     * worker queue as capacity frees up.
+     */
+    @Scheduled(fixedDelayString = "${zephyr.images.derivatives.poll-interval:5000}")
+    public void pollPendingJobs() {
+        if (!recovered) {
+            return;
+        }
+        int reset = jobRepository.releaseExpiredLeases(LocalDateTime.now());
+        if (reset > 0) {
+            logger.info("Re-queued {} derivative jobs whose lease expired", reset);
+        }
+        int capacity = executor.getQueue().remainingCapacity();
+        if (capacity == 0) {
+            return;
+        }
+        for (ImageDerivativeJob job : jobRepository.findByStatusOrderByIdAsc(JobStatus.PENDING, Limit.of(capacity))) {
+            if (!inFlight.contains(job.getId()) && !submit(job.getId())) {
+                break;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private boolean submit(Long jobId) {
+        if (!inFlight.add(jobId)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> run(jobId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Queue is full, the job stays PENDING and the poller will pick it up
+            inFlight.remove(jobId);
+            return false;
+        }
+    }
+
+    private void run(Long jobId) {
+        try {
+            LocalDateTime leaseExpiresAt = LocalDateTime.now().plus(Duration.ofMillis(leaseDuration));
+            if (jobRepository.claim(jobId, owner, leaseExpiresAt) == 0) {
+                return;
+            }
+            Optional<ImageDerivativeJob> job = jobRepository.findById(jobId);
+            if (job.isPresent()) {
+                ImageDerivative derivative = render(job.get());
+                if (jobRepository.complete(jobId, owner) == 0 && imageDeleted(job.get())) {
+                    // The image was deleted while rendering, maybe after its derivatives were cleaned up
+                    jobRepository.deleteByImageId(job.get().getImageId());
+                    if (derivative != null) {
+                        discard(derivative);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Derivative job {} failed", jobId, e);
+            recordFailure(jobId, e);
+        } finally {
+            inFlight.remove(jobId);
+        }
+    }
+
+    /**
+     * @return the derivative this run saved, or null if it saved none
+     */
+    private ImageDerivative render(ImageDerivativeJob job) throws IOException {
+        Optional<Image> imageOptional = imageRepository.findById(job.getImageId());
+        if (imageOptional.isEmpty() || imageOptional.get().getStorageKey() == null) {
+            return null; // Image was deleted in the meantime
+        }
+        Image image = imageOptional.get();
+
+        ScaledImage scaled;
+        try (InputStream original = imageBlobStore.open(image.getStorageKey())) {
+            scaled = ImageScaler.scale(original, job.getWidth(), image.getContentType());
+        }
+        if (scaled == null) {
+            return null; // Original is already narrower than this derivative
+        }
+
+        StoredBlob blob = imageBlobService.retain(new ByteArrayInputStream(scaled.data()));
+        ImageDerivative derivative = new ImageDerivative();
+        derivative.setImageId(image.getId());
+        derivative.setWidth(scaled.width());
+        derivative.setHeight(scaled.height());
+        derivative.setContentType(scaled.contentType());
+        derivative.setSize((long) scaled.data().length);
+        derivative.setStorageKey(blob.key());
+        try {
+            return derivativeRepository.save(derivative);
+        } catch (DataIntegrityViolationException e) {
+            // Already rendered by an earlier run of the same job
+            imageBlobService.release(blob.key());
+            return null;
+        }
+    }
+
+    private boolean imageDeleted(ImageDerivativeJob job) {
+        // Deleting an image deletes its jobs first, so a missing job means the image is on its way out
+        return !jobRepository.existsById(job.getId()) || !imageRepository.existsById(job.getImageId());
+    }
+
+    private void discard(ImageDerivative derivative) {
+        // Only the delete that removed the row releases the blob
+        if (derivativeRepository.deleteIfPresent(derivative.getId()) > 0) {
+            imageBlobService.release(derivative.getStorageKey());
+        }
+    }
+
+    private void recordFailure(Long jobId, Exception cause) {
+        String message = String.valueOf(cause.getMessage());
+        jobRepository.fail(jobId, owner, maxAttempts,
+            message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+    }
+}
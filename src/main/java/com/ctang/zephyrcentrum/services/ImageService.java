@@ -1,17 +1,23 @@
 package com.ctang.zephyrcentrum.services;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.dtos.ImageSummary;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
 
 public interface ImageService {
-    public List<Image> getAllImagesByUserId(Long userId);
+    public List<ImageSummary> getImageSummariesByUserId(Long userId, KeysetCursor before, int limit);
     public Optional<Image> getImageById(Long id);
+    public Optional<Resource> getImageContent(Image image);
     public Image storeImage(MultipartFile file, Long userId, String description) throws IOException;
+    public Image storeImage(Path file, String filename, Long userId, String description) throws IOException;
     public Image updateImage(Long imageId, Image image);
     public List<Image> storeMultipleImages(MultipartFile[] files, Long userId) throws IOException;
     public boolean deleteImage(Long imageId);
@@ -1,73 +1,203 @@
 package com.ctang.zephyrcentrum.services;
 
+import com.ctang.zephyrcentrum.exceptions.UnsupportedImageTypeException;
 import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.dtos.ImageSummary;
 import com.ctang.zephyrcentrum.repositories.ImageRepository;
+import com.ctang.zephyrcentrum.storage.ImageBlobStore;
+import com.ctang.zephyrcentrum.storage.ImageCache;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
 import com.ctang.zephyrcentrum.types.Visibility;
+import com.ctang.zephyrcentrum.utils.ImageTypeDetector;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class ImageServiceImpl implements ImageService {
 
-    @Autowired
-    private ImageRepository imageRepository;
+    private static final Logger logger = LoggerFactory.getLogger(ImageServiceImpl.class);
+
+    private final ImageRepository imageRepository;
+    private final ImageBlobStore imageBlobStore;
+    private final ImageBlobService imageBlobService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final ImageCache imageCache;
+    private final ExecutorService uploadExecutor;
+    private final Semaphore uploadPermits;
+
+    public ImageServiceImpl(
+        ImageRepository imageRepository,
+        ImageBlobStore imageBlobStore,
+        ImageBlobService imageBlobService,
+        ImageDerivativeService imageDerivativeService,
+        ImageCache imageCache,
+        @Value("${zephyr.images.upload.concurrency:8}") int uploadConcurrency
+    ) {
+        this.imageRepository = imageRepository;
+        this.imageBlobStore = imageBlobStore;
+        this.imageBlobService = imageBlobService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.imageCache = imageCache;
+        // Uploads are I/O bound, so virtual threads are cheap; the semaphore
+        // bounds how many files are streamed and hashed at once across requests
+        this.uploadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("image-upload-", 0).factory());
+        this.uploadPermits = new Semaphore(uploadConcurrency);
+    }
     
     /**
-     * Retrieves all images associated with a specific user ID.
+     * Retrieves a page of image metadata for a specific user, newest first.
      *
      * @param userId the ID of the user whose images are to be retrieved
-     * @return a list of images belonging to the specified user
+     * @param before the cursor of the last image of the previous page, or null for the first page
+     * @param limit the maximum number of images to return
+     * @return a page of image summaries belonging to the specified user
      */
     @Override
-    public List<Image> getAllImagesByUserId(Long userId) {
-        return imageRepository.findByUserId(userId);
+    public List<ImageSummary> getImageSummariesByUserId(Long userId, KeysetCursor before, int limit) {
+        if (before == null) {
+            return imageRepository.findSummariesByUserId(userId, Limit.of(limit));
+        }
+        return imageRepository.findSummariesByUserIdBefore(userId, before.timestamp(), before.id(), Limit.of(limit));
     }
     
     /**
-     * Retrieves an image by its ID.
+     * Retrieves an image by its ID, from the cache if it is public and was
+     * read recently.
      *
      * @param id the ID of the image to retrieve
      * @return an Optional containing the image if found, or empty if not found
      */
     @Override
     public Optional<Image> getImageById(Long id) {
-        return imageRepository.findById(id);
+        Optional<Image> cached = imageCache.getImage(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        long generation = imageCache.generation(id);
+        Optional<Image> image = imageRepository.findById(id);
+        image.ifPresent(found -> imageCache.putImage(found, generation));
+        return image;
     }
     
     /**
-     * Stores a single image file in the database.
+     * Retrieves the stored bytes of an image. Small images are served from the
+     * in-memory cache, anything else is streamed from the blob store.
+     *
+     * @param image the image whose content to retrieve
+     * @return an Optional containing the content if it is stored, or empty if not
+     */
+    @Override
+    public Optional<Resource> getImageContent(Image image) {
+        if (image.getStorageKey() == null) {
+            return Optional.empty();
+        }
+        try {
+            Optional<Resource> cached = imageCache.getContent(image);
+            if (cached.isPresent()) {
+                return cached;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to cache content of image {}", image.getId(), e);
+        }
+        Resource content = imageBlobStore.getResource(image.getStorageKey());
+        return content.exists() ? Optional.of(content) : Optional.empty();
+    }
+
+    /**
+     * Stores a single image file. The bytes are streamed into the blob store,
+     * only the metadata is written to the database.
      *
      * @param file the image file to store
      * @param userId the ID of the user uploading the image
      * @param description a description of the image
      * @return the saved Image entity
      * @throws IOException if there is an error reading the file
+     * @throws UnsupportedImageTypeException if the file is not a supported image
      */
     @Override
     public Image storeImage(MultipartFile file, Long userId, String description) throws IOException {
-        String originalFilename = file.getOriginalFilename();
-        String filename = originalFilename != null ? StringUtils.cleanPath(originalFilename) : "unknown";
-        
-        Image image = new Image();
-        image.setName(filename);
-        image.setContentType(file.getContentType());
-        image.setData(file.getBytes());
-        image.setSize(file.getSize());
-        image.setDescription(description);
-        image.setUserId(userId);
-        image.setUploadDate(LocalDateTime.now());
-        image.setVisibility(Visibility.PRIVATE); // Default visibility set to PRIVATE
-        
-        return imageRepository.save(image);
+        return saveImage(prepareImage(file, userId, description));
+    }
+
+    /**
+     * Stores an image that was assembled on disk, such as a completed chunked
+     * upload. The file is moved into the blob store rather than copied.
+     *
+     * @param file the assembled image file, moved away on success
+     * @param filename the original name of the file
+     * @param userId the ID of the user uploading the image
+     * @param description a description of the image
+     * @return the saved Image entity
+     * @throws IOException if there is an error reading or moving the file
+     * @throws UnsupportedImageTypeException if the file is not a supported image
+     */
+    @Override
+    public Image storeImage(Path file, String filename, Long userId, String description) throws IOException {
+        String cleanFilename = filename != null ? StringUtils.cleanPath(filename) : "unknown";
+        byte[] header;
+        try (InputStream content = Files.newInputStream(file)) {
+            header = content.readNBytes(ImageTypeDetector.HEADER_LENGTH);
+        }
+        String contentType = ImageTypeDetector.detect(header);
+        if (contentType == null) {
+            throw new UnsupportedImageTypeException(cleanFilename);
+        }
+        StoredBlob blob = imageBlobService.retain(file);
+        return saveImage(newImage(cleanFilename, contentType, blob, userId, description));
+    }
+
+    private Image saveImage(Image image) {
+        Image savedImage;
+        try {
+            savedImage = imageRepository.save(image);
+        } catch (RuntimeException e) {
+            // Don't leave orphaned bytes behind if the metadata row could not be written
+            imageBlobService.release(image.getStorageKey());
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Saved in a caller's transaction, such as an upload's completion, while the
+            // blob reference was committed on its own; give it back if the row never commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        imageBlobService.release(image.getStorageKey());
+                    }
+                }
+            });
+        }
+
+        scheduleDerivatives(savedImage);
+        return savedImage;
     }
 
     /**
@@ -86,48 +216,146 @@ public class ImageServiceImpl implements ImageService {
                 throw new IllegalArgumentException("User does not have permission to update this image");
             }
             imageToUpdate.setName(image.getName());
-            imageToUpdate.setContentType(image.getContentType());
-            imageToUpdate.setData(image.getData());
-            imageToUpdate.setSize(image.getSize());
+            // The content type stays the one detected from the stored bytes
             imageToUpdate.setDescription(image.getDescription());
             imageToUpdate.setVisibility(image.getVisibility());
             imageRepository.save(imageToUpdate);
+            imageCache.invalidate(imageId);
             return imageToUpdate;
         }
         return null;
     }
 
     /**
-     * Stores multiple image files in the database.
+     * Stores multiple image files at once. The files are streamed into the blob
+     * store concurrently and their metadata is inserted as a single batch.
+     * Either every file is stored or none is: if any file fails, the content
+     * already retained for the others is released again.
      *
      * @param files an array of image files to store
      * @param userId the ID of the user uploading the images
-     * @return a list of saved Image entities
+     * @return a list of saved Image entities, in the order of the files
      * @throws IOException if there is an error reading any of the files
+     * @throws UnsupportedImageTypeException if any file is not a supported image
      */
     @Override
     public List<Image> storeMultipleImages(MultipartFile[] files, Long userId) throws IOException {
-        List<Image> savedImages = new ArrayList<>();
-        
+        List<Future<Image>> futures = new ArrayList<>(files.length);
         for (MultipartFile file : files) {
-            savedImages.add(storeImage(file, userId, null));
+            futures.add(uploadExecutor.submit(() -> {
+                uploadPermits.acquire();
+                try {
+                    return prepareImage(file, userId, null);
+                } finally {
+                    uploadPermits.release();
+                }
+            }));
+        }
+
+        // Wait for every file, even after a failure, so nothing retained is left behind
+        List<Image> images = new ArrayList<>(files.length);
+        Throwable failure = null;
+        for (Future<Image> future : futures) {
+            try {
+                images.add(future.get());
+            } catch (ExecutionException e) {
+                failure = failure == null ? e.getCause() : failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            }
+        }
+
+        if (failure == null) {
+            try {
+                imageRepository.insertAll(images);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            images.forEach(image -> imageBlobService.release(image.getStorageKey()));
+            if (failure instanceof IOException e) {
+                throw e;
+            }
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            }
+            throw new IOException("Failed to store images", failure);
         }
-        
-        return savedImages;
+
+        images.forEach(this::scheduleDerivatives);
+        return images;
     }
-    
+
     /**
-     * Deletes an image from the database by its ID.
+     * Deletes an image by its ID, releasing its reference to the stored bytes.
      *
      * @param imageId the ID of the image to delete
      * @return true if the image was found and deleted, false otherwise
      */
     @Override
     public boolean deleteImage(Long imageId) {
-        if (imageRepository.existsById(imageId)) {
+        Optional<Image> imageOptional = imageRepository.findById(imageId);
+        if (imageOptional.isPresent()) {
+            imageDerivativeService.deleteDerivatives(imageId);
             imageRepository.deleteById(imageId);
+            imageCache.invalidate(imageId);
+            imageBlobService.release(imageOptional.get().getStorageKey());
             return true;
         }
         return false;
     }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
+    }
+
+    /**
+     * Validates a file and streams it into the blob store. The format is
+     * checked against the leading magic bytes, then the rest of the upload is
+     * hashed on its way to the store without ever being held in memory, so
+     * content that is already stored is shared rather than copied.
+     *
+     * @return an unsaved image referencing the retained content
+     */
+    private Image prepareImage(MultipartFile file, Long userId, String description) throws IOException {
+        String originalFilename = file.getOriginalFilename();
+        String filename = originalFilename != null ? StringUtils.cleanPath(originalFilename) : "unknown";
+
+        String contentType;
+        StoredBlob blob;
+        try (InputStream content = file.getInputStream()) {
+            byte[] header = content.readNBytes(ImageTypeDetector.HEADER_LENGTH);
+            contentType = ImageTypeDetector.detect(header);
+            if (contentType == null) {
+                throw new UnsupportedImageTypeException(filename);
+            }
+            blob = imageBlobService.retain(new SequenceInputStream(new ByteArrayInputStream(header), content));
+        }
+        return newImage(filename, contentType, blob, userId, description);
+    }
+
+    private Image newImage(String filename, String contentType, StoredBlob blob, Long userId, String description) {
+        Image image = new Image();
+        image.setName(filename);
+        image.setContentType(contentType);
+        image.setStorageKey(blob.key());
+        image.setSize(blob.size());
+        image.setDescription(description);
+        image.setUserId(userId);
+        image.setUploadDate(LocalDateTime.now());
+        image.setVisibility(Visibility.PRIVATE); // Default visibility set to PRIVATE
+        return image;
+    }
+
+    private void scheduleDerivatives(Image image) {
+        try {
+            imageDerivativeService.scheduleDerivatives(image);
+        } catch (RuntimeException e) {
+            // Derivatives are an optimisation, the upload itself already succeeded
+            logger.warn("Failed to schedule derivatives for image {}", image.getId(), e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,543 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ctang.zephyrcentrum.exceptions.InsufficientStockException;
+import com.ctang.zephyrcentrum.models.Item;
+import com.ctang.zephyrcentrum.models.Purchase;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.repositories.ItemRepository;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+import com.ctang.zephyrcentrum.utils.StripedStock;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Sells hot items from memory.
+ *
+ * Even a single conditional update per purchase queues every buyer of a
+ * limited drop on one row. For items flagged {@link Item#getHot() hot}, this
+ * instance instead claims stock from {@code items.stock} in chunks, moving
+ * it to its row in item_allocations, and hands it out from a
+ * {@link StripedStock}. A purchase is confirmed once it has been forced to
+ * disk in the {@link PurchaseJournal}, with concurrent purchases sharing one
+ * sync; a scheduled flush then inserts the journalled purchases and takes
+ * them off the allocation, all in one transaction.
+ *
+ * Every claimed unit is thus either unsold in memory, or sold in the
+ * journal and not yet flushed, and the allocation row counts both. On
+ * shutdown the unsold units go back to {@code items.stock}. If the process
+ * dies instead, its journal is replayed by the next instance to start from
+ * the same directory: entries newer than the allocation's flushed sequence
+ * become purchases, and whatever is left of the allocation is returned.
+ * Each instance holds a lock on its own journal while it runs, and only
+ * journals nobody holds are replayed, so instances may share the directory
+ * as long as its filesystem supports locks. Nothing can be sold twice; a
+ * crash only keeps claimed units from being sold until that replay.
+ */
+@Service
+public class InventoryLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryLedger.class);
+
+    private static final String INSERT_PURCHASE_SQL = "INSERT INTO system.purchases "
+        + "(user_id, item_id, quantity, purchase_price, purchase_date) VALUES (?, ?, ?, ?, ?)";
+    private static final String APPLY_SQL = "UPDATE system.item_allocations "
+        + "SET quantity = quantity - ?, flushed_sequence = ? WHERE journal_id = ? AND item_id = ?";
+    private static final String CLAIM_SQL = "UPDATE system.items SET stock = stock - ? WHERE id = ? AND stock >= ?";
+    private static final String RETURN_SQL = "UPDATE system.items SET stock = stock + ? WHERE id = ?";
+    private static final String ALLOCATE_SQL = "UPDATE system.item_allocations SET quantity = quantity + ? "
+        + "WHERE journal_id = ? AND item_id = ?";
+    private static final String INSERT_ALLOCATION_SQL = "INSERT INTO system.item_allocations "
+        + "(journal_id, item_id, quantity, flushed_sequence) VALUES (?, ?, ?, 0)";
+    private static final String RELEASE_SQL = "UPDATE system.item_allocations SET quantity = quantity - ? "
+        + "WHERE journal_id = ? AND item_id = ?";
+
+    private final ItemRepository itemRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path journalDir;
+    private final int stripes;
+    private final int allocationSize;
+    private final Cache<Long, User> users;
+    private final Counter dropped;
+
+    private final String journalId = UUID.randomUUID().toString();
+    private final PurchaseJournal journal;
+    private final Set<Long> hotItemIds = ConcurrentHashMap.newKeySet();
+    private final Map<Long, HotItem> items = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<PurchaseJournal.Entry> pending = new ConcurrentLinkedQueue<>();
+    // Entries of a flush that failed, retried first on the next one
+    private List<PurchaseJournal.Entry> unflushed = new ArrayList<>();
+    private long flushedSequence;
+    private volatile boolean closed;
+
+    public InventoryLedger(
+        ItemRepository itemRepository,
+        UserRepository userRepository,
+        JdbcTemplate jdbcTemplate,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${zephyr.items.hot.journal-dir:data/journal}") String journalDir,
+        @Value("${zephyr.items.hot.stripes:16}") int stripes,
+        @Value("${zephyr.items.hot.allocation-size:1000}") int allocationSize,
+        @Value("${zephyr.items.hot.cached-users:100000}") long cachedUsers,
+        @Value("${zephyr.items.hot.user-cache-expire-after-write:60000}") long userCacheExpireAfterWrite
+    ) throws IOException {
+        this.itemRepository = itemRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        // Its own transactions, so a claim commits even if the caller's rolls back
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.journalDir = Paths.get(journalDir);
+        this.stripes = stripes;
+        this.allocationSize = allocationSize;
+        this.users = Caffeine.newBuilder()
+            .maximumSize(cachedUsers)
+            .expireAfterWrite(Duration.ofMillis(userCacheExpireAfterWrite))
+            .build();
+        this.journal = PurchaseJournal.create(this.journalDir.resolve(journalId + PurchaseJournal.SUFFIX));
+        Gauge.builder("items.hot.pending", pending, ConcurrentLinkedQueue::size)
+            .description("Purchases confirmed from memory and not yet written to the database")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("items.hot.purchases.dropped")
+            .description("Purchases confirmed from memory that could not be written, their units put back on sale")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return true if purchases of the item are sold from memory
+     */
+    public boolean isHot(Long itemId) {
+        return hotItemIds.contains(itemId);
+    }
+
+    /**
+     * Buys a hot item from memory. The purchase is confirmed once journalled
+     * and written to the database by a later {@link #flush()}, so it has no
+     * id yet.
+     *
+     * @return the purchase, or null if the item isn't hot and has to be bought from the database
+     * @throws IllegalArgumentException if the user doesn't exist
+     * @throws InsufficientStockException if the item has less stock than the quantity
+     * @throws UncheckedIOException if the purchase couldn't be journalled; if only the sync failed
+     *         it may still be written by a later flush, like a request that timed out
+     */
+    public Purchase buy(Long userId, Long itemId, int quantity) {
+        if (closed || !hotItemIds.contains(itemId)) {
+            return null;
+        }
+        HotItem hot = items.computeIfAbsent(itemId, this::loadHotItem);
+        if (hot == null) {
+            return null;
+        }
+        User user = users.get(userId, id -> userRepository.findById(id).orElse(null));
+        if (user == null) {
+            throw new IllegalArgumentException("User not found with ID: " + userId);
+        }
+        if (!hot.stock.tryTake(quantity, missing -> claim(hot, missing))) {
+            if (hot.retired) {
+                return null;
+            }
+            throw new InsufficientStockException(itemId, quantity, hot.stock.available());
+        }
+
+        Item item = hot.item;
+        BigDecimal price = item.getPrice().multiply(BigDecimal.valueOf(quantity));
+        LocalDateTime purchasedAt = LocalDateTime.now();
+        PurchaseJournal.Entry entry;
+        try {
+            // Appended and queued together, so flushes see entries in sequence order
+            synchronized (journal) {
+                entry = journal.append(userId, itemId, quantity, price, purchasedAt);
+                pending.add(entry);
+            }
+        } catch (IOException e) {
+            hot.stock.add(quantity);
+            throw new UncheckedIOException("Failed to journal purchase of item " + itemId, e);
+        }
+        try {
+            journal.sync(entry.sequence());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync purchase of item " + itemId + " to the journal", e);
+        }
+
+        Purchase purchase = new Purchase();
+        purchase.setUser(user);
+        purchase.setItem(item);
+        purchase.setQuantity(quantity);
+        purchase.setPurchasePrice(price);
+        purchase.setPurchaseDate(purchasedAt);
+        return purchase;
+    }
+
+    /**
+     * The units of an item held in memory, on top of its {@code items.stock}.
+     */
+    public int available(Long itemId) {
+        HotItem hot = items.get(itemId);
+        return hot == null ? 0 : hot.stock.available();
+    }
+
+    /**
+     * Follows a created or updated item: starts or stops selling it from
+     * memory, and picks up its new price.
+     */
+    public void itemChanged(Item item) {
+        if (Boolean.TRUE.equals(item.getHot())) {
+            hotItemIds.add(item.getId());
+            HotItem hot = items.get(item.getId());
+            if (hot != null) {
+                hot.item = item;
+            }
+        } else {
+            itemRemoved(item.getId());
+        }
+    }
+
+    /**
+     * Stops selling an item from memory, returning its unsold units.
+     */
+    public void itemRemoved(Long itemId) {
+        hotItemIds.remove(itemId);
+        HotItem hot = items.remove(itemId);
+        if (hot != null) {
+            release(hot);
+        }
+    }
+
+    /**
+     * Reloads which items are hot, for flags changed on other instances.
+     */
+    @Scheduled(fixedDelayString = "${zephyr.items.hot.refresh-interval:10000}")
+    public void refreshHotItems() {
+        Set<Long> current = new HashSet<>(itemRepository.findHotItemIds());
+        hotItemIds.addAll(current);
+        for (Long itemId : List.copyOf(hotItemIds)) {
+            if (!current.contains(itemId)) {
+                itemRemoved(itemId);
+            }
+        }
+    }
+
+    /**
+     * Writes the journalled purchases to the database. If the write fails
+     * they stay pending and are retried on the next flush.
+     *
+     * @return the number of purchases written or dropped
+     */
+    @Scheduled(fixedDelayString = "${zephyr.items.hot.flush-interval:200}")
+    public synchronized int flush() {
+        List<PurchaseJournal.Entry> batch = unflushed;
+        boolean retry = !batch.isEmpty();
+        unflushed = new ArrayList<>();
+        for (PurchaseJournal.Entry entry; (entry = pending.poll()) != null; ) {
+            batch.add(entry);
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            journal.sync();
+            // A failed flush may have written some entries one by one before failing
+            apply(journalId, retry ? unapplied(journalId, batch) : batch);
+        } catch (IOException | RuntimeException e) {
+            unflushed = batch;
+            logger.warn("Failed to flush {} hot item purchases, retrying", batch.size(), e);
+            return 0;
+        }
+        flushedSequence = batch.get(batch.size() - 1).sequence();
+        try {
+            journal.truncateIfFlushed(flushedSequence);
+        } catch (IOException e) {
+            logger.warn("Failed to truncate purchase journal {}", journal.path(), e);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Replays the journals dead runs left in the journal directory, skipping
+     * those of instances still running.
+     *
+     * @return the number of purchases written from them
+     */
+    public int recover() throws IOException {
+        if (!Files.isDirectory(journalDir)) {
+            return 0;
+        }
+        List<Path> journals = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir, "*" + PurchaseJournal.SUFFIX)) {
+            files.forEach(journals::add);
+        }
+        int recovered = 0;
+        for (Path path : journals) {
+            if (path.equals(journal.path())) {
+                continue;
+            }
+            FileChannel abandoned = PurchaseJournal.lockAbandoned(path);
+            if (abandoned == null) {
+                continue;
+            }
+            // Held until the journal is deleted, so nobody else replays it too
+            try (abandoned) {
+                recovered += recover(path);
+            }
+        }
+        return recovered;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startUp() {
+        try {
+            int recovered = recover();
+            if (recovered > 0) {
+                logger.info("Recovered {} hot item purchases from old journals", recovered);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to recover hot item purchase journals", e);
+        }
+        try {
+            refreshHotItems();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to load hot items, selling all items from the database", e);
+        }
+    }
+
+    /**
+     * Stops selling from memory, writes what was sold and returns the rest.
+     * The journal is only deleted if all of that succeeded; otherwise the
+     * next start replays it.
+     */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        closed = true;
+        try {
+            for (Long itemId : List.copyOf(items.keySet())) {
+                itemRemoved(itemId);
+            }
+            flush();
+            boolean flushed;
+            synchronized (this) {
+                flushed = unflushed.isEmpty() && pending.isEmpty();
+            }
+            if (flushed) {
+                returnAllocations(journalId);
+                Files.deleteIfExists(journal.path());
+            }
+        } finally {
+            // Only now, so the journal can't be replayed while it is still being flushed
+            journal.close();
+        }
+    }
+
+    /**
+     * Stops without writing or returning anything, as if the process died.
+     */
+    void abandon() throws IOException {
+        closed = true;
+        journal.close();
+    }
+
+    private HotItem loadHotItem(Long itemId) {
+        Item item = itemRepository.findById(itemId).orElse(null);
+        return item == null || !Boolean.TRUE.equals(item.getHot()) ? null : new HotItem(item, new StripedStock(stripes));
+    }
+
+    /**
+     * Moves up to a chunk of units from {@code items.stock} to this instance's
+     * allocation. Runs under the item's stock lock.
+     *
+     * @return the units claimed, 0 if there aren't enough for the missing ones
+     */
+    private int claim(HotItem hot, int missing) {
+        if (hot.retired) {
+            return 0;
+        }
+        Long itemId = hot.item.getId();
+        Integer claimed = transactionTemplate.execute(status -> {
+            int wanted = Math.max(missing, allocationSize);
+            while (jdbcTemplate.update(CLAIM_SQL, wanted, itemId, wanted) == 0) {
+                Integer stock = jdbcTemplate.queryForObject("SELECT stock FROM system.items WHERE id = ?",
+                    Integer.class, itemId);
+                if (stock == null || stock < missing) {
+                    return 0;
+                }
+                wanted = stock;
+            }
+            if (jdbcTemplate.update(ALLOCATE_SQL, wanted, journalId, itemId) == 0) {
+                jdbcTemplate.update(INSERT_ALLOCATION_SQL, journalId, itemId, wanted);
+            }
+            return wanted;
+        });
+        return claimed == null ? 0 : claimed;
+    }
+
+    private void release(HotItem hot) {
+        int unsold;
+        // The stock's lock, so no claim can add units once they have been drained
+        synchronized (hot.stock) {
+            hot.retired = true;
+            unsold = hot.stock.drain();
+        }
+        if (unsold > 0) {
+            Long itemId = hot.item.getId();
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(RETURN_SQL, unsold, itemId);
+                jdbcTemplate.update(RELEASE_SQL, unsold, journalId, itemId);
+            });
+        }
+    }
+
+    /**
+     * Writes journal entries as purchases and takes them off their
+     * allocations. If a purchase can't be written, say because its user has
+     * been deleted since, the entries are written one by one. Those that
+     * still fail can't be kept anywhere: they are logged and counted, and
+     * their units go back to {@code items.stock}.
+     */
+    private void apply(String journalId, List<PurchaseJournal.Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(journalId, entries, true));
+        } catch (DataIntegrityViolationException e) {
+            for (PurchaseJournal.Entry entry : entries) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(journalId, List.of(entry), true));
+                } catch (DataIntegrityViolationException failed) {
+                    logger.error("Dropped confirmed purchase {} of {} x item {} by user {} at {} from journal {}",
+                        entry.sequence(), entry.quantity(), entry.itemId(), entry.userId(), entry.purchasedAt(),
+                        journalId, failed);
+                    transactionTemplate.executeWithoutResult(status -> write(journalId, List.of(entry), false));
+                    dropped.increment();
+                }
+            }
+        }
+    }
+
+    private void write(String journalId, List<PurchaseJournal.Entry> entries, boolean insert) {
+        if (insert) {
+            List<Object[]> purchases = new ArrayList<>(entries.size());
+            for (PurchaseJournal.Entry entry : entries) {
+                purchases.add(new Object[] {entry.userId(), entry.itemId(), entry.quantity(), entry.price(),
+                    Timestamp.valueOf(entry.purchasedAt())});
+            }
+            jdbcTemplate.batchUpdate(INSERT_PURCHASE_SQL, purchases);
+        }
+        // Per item, the units taken off the allocation and the last entry, in item order
+        Map<Long, long[]> sold = new LinkedHashMap<>();
+        entries.stream()
+            .sorted((a, b) -> Long.compare(a.itemId(), b.itemId()))
+            .forEach(entry -> {
+                long[] totals = sold.computeIfAbsent(entry.itemId(), id -> new long[2]);
+                totals[0] += entry.quantity();
+                totals[1] = Math.max(totals[1], entry.sequence());
+            });
+        List<Object[]> allocations = new ArrayList<>(sold.size());
+        sold.forEach((itemId, totals) -> allocations.add(new Object[] {totals[0], totals[1], journalId, itemId}));
+        jdbcTemplate.batchUpdate(APPLY_SQL, allocations);
+        if (!insert) {
+            // Not sold after all
+            List<Object[]> returned = new ArrayList<>(sold.size());
+            sold.forEach((itemId, totals) -> returned.add(new Object[] {totals[0], itemId}));
+            jdbcTemplate.batchUpdate(RETURN_SQL, returned);
+        }
+    }
+
+    private int recover(Path path) throws IOException {
+        String deadJournalId = path.getFileName().toString().replace(PurchaseJournal.SUFFIX, "");
+        List<PurchaseJournal.Entry> replay = unapplied(deadJournalId, PurchaseJournal.read(path));
+        apply(deadJournalId, replay);
+        returnAllocations(deadJournalId);
+        Files.deleteIfExists(path);
+        logger.info("Replayed {} purchases from journal {}", replay.size(), path);
+        return replay.size();
+    }
+
+    /**
+     * Returns what is left of a journal's allocations to {@code items.stock}
+     * and deletes them. Only once every entry of the journal is written.
+     */
+    private void returnAllocations(String journalId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT item_id, quantity FROM system.item_allocations WHERE journal_id = ?",
+                row -> {
+                    jdbcTemplate.update(RETURN_SQL, row.getInt("quantity"), row.getLong("item_id"));
+                }, journalId);
+            jdbcTemplate.update("DELETE FROM system.item_allocations WHERE journal_id = ?", journalId);
+        });
+    }
+
+    /**
+     * Narrows journal entries down to those not yet written, by the flushed
+     * sequence of their allocations. Entries of items without an allocation
+     * row have nothing left to sell from.
+     */
+    private List<PurchaseJournal.Entry> unapplied(String journalId, List<PurchaseJournal.Entry> entries) {
+        Map<Long, Long> flushed = new HashMap<>();
+        jdbcTemplate.query("SELECT item_id, flushed_sequence FROM system.item_allocations WHERE journal_id = ?",
+            row -> {
+                flushed.put(row.getLong("item_id"), row.getLong("flushed_sequence"));
+            }, journalId);
+        List<PurchaseJournal.Entry> unapplied = new ArrayList<>();
+        for (PurchaseJournal.Entry entry : entries) {
+            Long last = flushed.get(entry.itemId());
+            if (last != null && entry.sequence() > last) {
+                unapplied.add(entry);
+            }
+        }
+        return unapplied;
+    }
+
+    private static final class HotItem {
+        private final StripedStock stock;
+        private volatile Item item;
+        private volatile boolean retired;
+
+        private HotItem(Item item, StripedStock stock) {
+            this.item = item;
+            this.stock = stock;
+        }
+    }
+}
@@ -2,20 +2,24 @@ package com.ctang.zephyrcentrum.services;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.ctang.zephyrcentrum.models.Item;
 import com.ctang.zephyrcentrum.repositories.ItemRepository;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
 
 @Service
 public class ItemServiceImpl implements ItemService {
 
     private final ItemRepository itemRepository;
+    private final InventoryLedger inventoryLedger;
 
-    public ItemServiceImpl(ItemRepository itemRepository) {
+    public ItemServiceImpl(ItemRepository itemRepository, InventoryLedger inventoryLedger) {
         this.itemRepository = itemRepository;
+        this.inventoryLedger = inventoryLedger;
     }
 
     @Override
@@ -41,44 +45,78 @@ public class ItemServiceImpl implements ItemService {
     @Override
     @Transactional
     public Item createItem(Item item) {
-        return itemRepository.save(item);
+        Item created = itemRepository.save(item);
+        afterCommit(() -> inventoryLedger.itemChanged(created));
+        return created;
     }
 
+    /**
+     * Replaces an item's details, leaving its hot flag alone if the update
+     * doesn't set it. The stock is never written back as read: an item's
+     * stock is changed by the difference from the stored value, and a hot
+     * item's only with {@link #updateStock}, since its row holds just what
+     * no ledger has claimed and moves with every claim.
+     *
+     * @throws IllegalStateException if the new stock of an item is below what it has sold since
+     */
     @Override
     @Transactional
     public Item updateItem(Long id, Item item) {
-        Optional<Item> existingItemOpt = itemRepository.findById(id);
-        if (existingItemOpt.isPresent()) {
-            Item existingItem = existingItemOpt.get();
-            existingItem.setName(item.getName());
-            existingItem.setPrice(item.getPrice());
-            existingItem.setDescription(item.getDescription());
-            existingItem.setStock(item.getStock());
-            return itemRepository.save(existingItem);
+        Item existingItem = itemRepository.findById(id).orElse(null);
+        if (existingItem == null) {
+            return null;
         }
-        return null;
+        boolean hot = item.getHot() != null ? item.getHot() : existingItem.getHot();
+        itemRepository.updateDetails(id, item.getName(), item.getPrice(), item.getDescription(), hot);
+        if (!Boolean.TRUE.equals(existingItem.getHot()) && item.getStock() != null
+                && !Objects.equals(item.getStock(), existingItem.getStock())) {
+            updateStock(id, item.getStock() - existingItem.getStock());
+        }
+        Item updated = itemRepository.findById(id).orElseThrow();
+        // A ledger dropping the item returns its unsold units in a transaction of its own,
+        // which would wait on this one's lock on the row
+        afterCommit(() -> inventoryLedger.itemChanged(updated));
+        return updated;
     }
 
     @Override
     @Transactional
     public void deleteItem(Long id) {
+        inventoryLedger.itemRemoved(id);
         itemRepository.deleteById(id);
     }
 
     @Override
     public boolean isItemInStock(Long itemId, Integer quantity) {
         Item item = getItemById(itemId);
-        return item != null && item.getStock() >= quantity;
+        // A hot item's units held in memory are no longer in its row
+        return item != null && item.getStock() + inventoryLedger.available(itemId) >= quantity;
     }
 
+    /**
+     * Adds a relative change to an item's stock.
+     *
+     * @throws IllegalStateException if the change would take the stock below zero
+     */
     @Override
     @Transactional
     public void updateStock(Long itemId, Integer quantity) {
-        Optional<Item> itemOpt = itemRepository.findById(itemId);
-        if (itemOpt.isPresent()) {
-            Item item = itemOpt.get();
-            item.setStock(item.getStock() + quantity);
-            itemRepository.save(item);
+        // Relative, so concurrent updates can't overwrite each other
+        if (itemRepository.addStock(itemId, quantity) == 0) {
+            throw new IllegalStateException("The stock of item " + itemId + " can't go below zero");
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
     }
-} 
\ No newline at end of file
+}
@@ -1,8 +1,12 @@
 package com.ctang.zephyrcentrum.services;
 
+import java.util.Collection;
+import java.util.Set;
+
 public interface LikeService {
-    void likePost(Long userId, Long postId);
-    void unlikePost(Long userId, Long postId);
+    boolean likePost(Long userId, Long postId);
+    boolean unlikePost(Long userId, Long postId);
     boolean isPostLiked(Long userId, Long postId);
-    int getPostLikeCount(Long postId);
+    Set<Long> likedPostIds(Long userId, Collection<Long> postIds);
+    long getPostLikeCount(Long postId);
 }
@@ -1,38 +1,181 @@
 package com.ctang.zephyrcentrum.services;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.ctang.zephyrcentrum.repositories.LikeRepository;
-import com.ctang.zephyrcentrum.models.Like;
+import com.ctang.zephyrcentrum.utils.SortedLongSet;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
+/**
+ * Likes, with an optional in-memory copy of each active user's most recent likes.
+ *
+ * For a user who asked recently, the ids of the newest posts they like are
+ * held as a {@link SortedLongSet}, together with the smallest post id the
+ * set is complete from. Feed pages show recent posts, so "did I like these"
+ * is usually answered from memory, and only posts older than that id are
+ * looked up, in one query for the whole page. Likes and unlikes made here
+ * update the set; entries expire so changes made by other instances are
+ * picked up eventually.
+ */
 @Service
 public class LikeServiceImpl implements LikeService {
 
     private final LikeRepository likeRepository;
+    private final PostStatsService postStatsService;
+    private final Cache<Long, LikedPosts> likedPosts;
+    private final int maxPostsPerUser;
 
-    public LikeServiceImpl(LikeRepository likeRepository) {
+    public LikeServiceImpl(
+        LikeRepository likeRepository,
+        PostStatsService postStatsService,
+        @Value("${zephyr.social.likes.cache.enabled:true}") boolean cacheEnabled,
+        @Value("${zephyr.social.likes.cache.cached-users:10000}") long cachedUsers,
+        @Value("${zephyr.social.likes.cache.max-posts-per-user:1000}") int maxPostsPerUser,
+        @Value("${zephyr.social.likes.cache.expire-after-write:300000}") long expireAfterWrite
+    ) {
         this.likeRepository = likeRepository;
+        this.postStatsService = postStatsService;
+        this.maxPostsPerUser = maxPostsPerUser;
+        this.likedPosts = cacheEnabled && maxPostsPerUser > 0
+            ? Caffeine.newBuilder()
+                .maximumSize(cachedUsers)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWrite))
+                .build()
+            : null;
     }
 
     @Override
     public boolean isPostLiked(Long userId, Long postId) {
-        return likeRepository.findByUserIdAndPostId(userId, postId).isPresent();
+        return likedPostIds(userId, List.of(postId)).contains(postId);
+    }
+
+    /**
+     * Narrows a page of posts down to those the user likes, with at most one
+     * query however many posts are asked about.
+     *
+     * @param userId the ID of the user
+     * @param postIds the IDs of the posts
+     * @return the IDs of the posts the user likes
+     */
+    @Override
+    public Set<Long> likedPostIds(Long userId, Collection<Long> postIds) {
+        Set<Long> liked = new HashSet<>();
+        List<Long> unknown = new ArrayList<>();
+        LikedPosts recent = likedPosts == null ? null : likedPosts.get(userId, this::loadLikedPosts);
+        for (Long postId : postIds) {
+            if (recent != null && postId >= recent.from()) {
+                if (recent.ids().contains(postId)) {
+                    liked.add(postId);
+                }
+            } else {
+                unknown.add(postId);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            liked.addAll(likeRepository.findLikedPostIdsIn(userId, unknown));
+        }
+        return liked;
     }
 
+    /**
+     * Likes a post. Liking a post twice is a no-op, and the like counter only
+     * moves when a like was actually added.
+     *
+     * @return true if the post was not liked by the user before
+     * @throws IllegalArgumentException if the user or the post does not exist
+     */
     @Override
-    public void likePost(Long userId, Long postId) {
-        // likeRepository.save(new Like(userId, postId));
-        
+    public boolean likePost(Long userId, Long postId) {
+        boolean added;
+        try {
+            added = likeRepository.insertIfAbsent(userId, postId);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("User or post not found", e);
+        }
+        if (added) {
+            postStatsService.addLikes(postId, 1);
+        }
+        // Either way the post is liked now
+        updateLikedPosts(userId, recent -> recent.with(postId, maxPostsPerUser));
+        return added;
     }
 
+    /**
+     * Unlikes a post. The like counter only moves when a like was actually removed.
+     *
+     * @return true if the post was liked by the user before
+     */
     @Override
-    public void unlikePost(Long userId, Long postId) {
-        likeRepository.deleteByUserIdAndPostId(userId, postId);
+    public boolean unlikePost(Long userId, Long postId) {
+        boolean removed = likeRepository.deleteByUserIdAndPostId(userId, postId) > 0;
+        if (removed) {
+            postStatsService.addLikes(postId, -1);
+        }
+        updateLikedPosts(userId, recent -> recent.without(postId));
+        return removed;
     }
 
     @Override
-    public int getPostLikeCount(Long postId) {
-        return likeRepository.countByPostId(postId);
+    public long getPostLikeCount(Long postId) {
+        return postStatsService.getLikeCount(postId);
+    }
+
+    private LikedPosts loadLikedPosts(Long userId) {
+        List<Long> ids = likeRepository.findLikedPostIds(userId, Limit.of(maxPostsPerUser + 1));
+        if (ids.size() <= maxPostsPerUser) {
+            return new LikedPosts(Long.MIN_VALUE, SortedLongSet.of(toArray(ids)));
+        }
+        // Newest first, so the set is complete down to the last id kept
+        SortedLongSet kept = SortedLongSet.of(toArray(ids.subList(0, maxPostsPerUser)));
+        return new LikedPosts(kept.min(), kept);
+    }
+
+    private void updateLikedPosts(Long userId, UnaryOperator<LikedPosts> update) {
+        if (likedPosts != null) {
+            // Waits for a concurrent load of the same user, so the change can't be lost under it
+            likedPosts.asMap().computeIfPresent(userId, (id, recent) -> update.apply(recent));
+        }
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] values = new long[ids.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ids.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * The posts a user likes among all posts with an id of at least {@code from}.
+     */
+    private record LikedPosts(long from, SortedLongSet ids) {
+
+        LikedPosts with(long postId, int maxSize) {
+            if (postId < from) {
+                return this;
+            }
+            SortedLongSet added = ids.with(postId);
+            if (added.size() <= maxSize) {
+                return new LikedPosts(from, added);
+            }
+            SortedLongSet trimmed = added.withoutSmallest(added.size() - maxSize);
+            return new LikedPosts(trimmed.min(), trimmed);
+        }
+
+        LikedPosts without(long postId) {
+            return new LikedPosts(from, ids.without(postId));
+        }
     }
-    
 }
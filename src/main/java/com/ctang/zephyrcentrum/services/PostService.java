@@ -3,12 +3,14 @@ package com.ctang.zephyrcentrum.services;
 import java.util.List;
 
 import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
 
 public interface PostService {
     Post createPost(Post post);
     Post getPostById(Long id);
     List<Post> getAllPostsByUserId(Long userId);
-    List<Post> getAllPosts();
+    List<PostFeedItem> getFeed(KeysetCursor before, int limit);
     Post updatePost(Post post);
     boolean deletePost(Long id);
 }
@@ -2,25 +2,32 @@ package com.ctang.zephyrcentrum.services;
 
 import java.util.List;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
 import com.ctang.zephyrcentrum.repositories.PostRepository;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
 
 import jakarta.transaction.Transactional;
 
 @Service
 public class PostServiceImpl implements PostService {
     private final PostRepository postRepository;
+    private final TimelineService timelineService;
 
-    public PostServiceImpl(PostRepository postRepository) {
+    public PostServiceImpl(PostRepository postRepository, TimelineService timelineService) {
         this.postRepository = postRepository;
+        this.timelineService = timelineService;
     }
     
     @Override
     @Transactional
     public Post createPost(Post post) {
-        return postRepository.save(post);
+        Post savedPost = postRepository.save(post);
+        timelineService.publish(savedPost);
+        return savedPost;
     }
 
     @Override
@@ -33,9 +40,19 @@ public class PostServiceImpl implements PostService {
         return postRepository.findAllByUserId(userId);
     }
 
+    /**
+     * Retrieves a page of the global feed, newest first.
+     *
+     * @param before the cursor of the last post of the previous page, or null for the first page
+     * @param limit the maximum number of posts to return
+     * @return a page of feed items
+     */
     @Override
-    public List<Post> getAllPosts() {
-        return postRepository.findAll();
+    public List<PostFeedItem> getFeed(KeysetCursor before, int limit) {
+        if (before == null) {
+            return postRepository.findFeed(Limit.of(limit));
+        }
+        return postRepository.findFeedBefore(before.timestamp(), before.id(), Limit.of(limit));
     }
 
     @Override
@@ -47,6 +64,7 @@ public class PostServiceImpl implements PostService {
     @Override
     @Transactional
     public boolean deletePost(Long id) {
+        timelineService.retract(id);
         postRepository.deleteById(id);
         if (postRepository.findById(id).isPresent()) {
             return false;
@@ -0,0 +1,8 @@
+package com.ctang.zephyrcentrum.services;
+
+public interface PostStatsService {
+    void addLikes(Long postId, long delta);
+    long getLikeCount(Long postId);
+    void flush();
+    int reconcile();
+}
@@ -0,0 +1,212 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ctang.zephyrcentrum.repositories.PostStatsRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Like counters kept in the post_stats table and updated in batches.
+ *
+ * Likes and unlikes are added to a {@link LongAdder} per post, so a burst on
+ * a popular post is absorbed in memory instead of queueing on one counter
+ * row. A scheduled flush writes the accumulated delta of every post in one
+ * batch of upserts. Reads add the unflushed delta to the stored counter and
+ * never count the likes table.
+ *
+ * An adder is never reset, since increments racing a reset would be lost;
+ * instead each counter remembers how much of its sum has been flushed. A
+ * counter that has been idle for a few flushes is retired and removed from
+ * the map. Writers skip retired counters, and a retired counter keeps being
+ * drained for a grace period to pick up any increment from a thread that
+ * checked it just before it was retired.
+ *
+ * Deltas still in memory when the process dies are lost, so the counters
+ * are recounted from the likes table on startup. Other instances keep
+ * flushing deltas the recount would already include, so only posts with no
+ * like and no flush for the quiet period are recounted. An unlike leaves no
+ * row to date it, so one on another instance within the last flush interval
+ * of a quiet post can still be counted twice; with several instances, turn
+ * reconcile-on-startup off if that matters.
+ */
+@Service
+public class PostStatsServiceImpl implements PostStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostStatsServiceImpl.class);
+    private static final int IDLE_FLUSHES_BEFORE_EVICTION = 3;
+    private static final long EVICTION_GRACE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final PostStatsRepository postStatsRepository;
+    private final boolean reconcileOnStartup;
+    private final long reconcileQuietPeriod;
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+    private List<Counter> evicted = new ArrayList<>();
+
+    public PostStatsServiceImpl(
+        PostStatsRepository postStatsRepository,
+        @Value("${zephyr.social.stats.reconcile-on-startup:true}") boolean reconcileOnStartup,
+        @Value("${zephyr.social.stats.reconcile-quiet-period:10000}") long reconcileQuietPeriod
+    ) {
+        this.postStatsRepository = postStatsRepository;
+        this.reconcileOnStartup = reconcileOnStartup;
+        this.reconcileQuietPeriod = reconcileQuietPeriod;
+    }
+
+    @Override
+    public void addLikes(Long postId, long delta) {
+        while (true) {
+            Counter counter = counters.computeIfAbsent(postId, Counter::new);
+            if (!counter.retired) {
+                counter.likes.add(delta);
+                return;
+            }
+            // Retired by a concurrent flush and about to leave the map
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public long getLikeCount(Long postId) {
+        long stored = postStatsRepository.findLikeCountByPostId(postId).orElse(0L);
+        Counter counter = counters.get(postId);
+        return counter == null ? stored : stored + counter.pending();
+    }
+
+    /**
+     * Writes the unflushed like deltas of every post in one batch. If the
+     * write fails the deltas stay pending and are retried on the next flush.
+     */
+    @Override
+    @Scheduled(fixedDelayString = "${zephyr.social.stats.flush-interval:1000}")
+    public synchronized void flush() {
+        List<Counter> retired = evicted;
+        evicted = new ArrayList<>();
+        List<Counter> flushed = new ArrayList<>();
+        List<Long> sums = new ArrayList<>();
+        // Sorted, so concurrent flushes from several instances lock rows in the same order
+        Map<Long, Long> deltas = new TreeMap<>();
+
+        long now = System.nanoTime();
+        for (Counter counter : retired) {
+            collect(counter, flushed, sums, deltas);
+            if (now - counter.retiredAt < EVICTION_GRACE_NANOS) {
+                evicted.add(counter);
+            }
+        }
+        for (Counter counter : counters.values()) {
+            if (collect(counter, flushed, sums, deltas)) {
+                counter.idleFlushes = 0;
+            } else if (++counter.idleFlushes >= IDLE_FLUSHES_BEFORE_EVICTION) {
+                counter.retired = true;
+                counter.retiredAt = now;
+                counters.remove(counter.postId, counter);
+                evicted.add(counter);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            postStatsRepository.addLikeCounts(deltas);
+        } catch (RuntimeException e) {
+            // Nothing was marked as flushed; keep the drained counters around for the retry
+            for (Counter counter : retired) {
+                if (counter.pending() != 0 && !evicted.contains(counter)) {
+                    evicted.add(counter);
+                }
+            }
+            logger.warn("Failed to flush like counts for {} posts", deltas.size(), e);
+            return;
+        }
+        for (int i = 0; i < flushed.size(); i++) {
+            flushed.get(i).flushed = sums.get(i);
+        }
+    }
+
+    /**
+     * Recounts the likes of posts that have been quiet for the quiet period
+     * and corrects counters that drifted, e.g. because deltas were still in
+     * memory when an instance stopped.
+     *
+     * @return the number of counters corrected
+     */
+    @Override
+    public int reconcile() {
+        LocalDateTime quietSince = LocalDateTime.now().minus(Duration.ofMillis(reconcileQuietPeriod));
+        int corrected = postStatsRepository.reconcileLikeCounts(quietSince);
+        if (corrected > 0) {
+            logger.info("Corrected the like counts of {} posts", corrected);
+        }
+        return corrected;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (!reconcileOnStartup) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reconcile like counts", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Adds a counter's unflushed delta, if any, to the batch.
+     *
+     * @return true if the counter had a delta
+     */
+    private static boolean collect(Counter counter, List<Counter> flushed, List<Long> sums, Map<Long, Long> deltas) {
+        long sum = counter.likes.sum();
+        long delta = sum - counter.flushed;
+        if (delta == 0) {
+            return false;
+        }
+        flushed.add(counter);
+        sums.add(sum);
+        deltas.merge(counter.postId, delta, Long::sum);
+        return true;
+    }
+
+    private static final class Counter {
+        private final Long postId;
+        private final LongAdder likes = new LongAdder();
+        // Only written by the flushing thread, read by getLikeCount
+        private volatile long flushed;
+        private volatile boolean retired;
+        private long retiredAt;
+        private int idleFlushes;
+
+        private Counter(Long postId) {
+            this.postId = postId;
+        }
+
+        private long pending() {
+            return likes.sum() - flushed;
+        }
+    }
+}
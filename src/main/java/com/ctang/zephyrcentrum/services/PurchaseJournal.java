@@ -0,0 +1,237 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of purchases confirmed from memory and not yet
+ * written to the purchases table, so they survive the process dying.
+ *
+ * Each entry is its length, its fields and a CRC32. Reading stops at the
+ * first entry that is cut short or fails its checksum, which is where a
+ * write was interrupted. Sequence numbers keep growing when the file is
+ * emptied, so they stay comparable with the ones recorded in the database.
+ *
+ * The process writing a journal holds an exclusive lock on it until it is
+ * closed, which the operating system also releases if the process dies. A
+ * journal whose lock can be taken is therefore one left by a dead run.
+ */
+final class PurchaseJournal implements Closeable {
+
+    static final String SUFFIX = ".journal";
+
+    private static final String CREATING_SUFFIX = ".creating";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Object syncLock = new Object();
+    private long nextSequence = 1;
+    private volatile long syncedSequence;
+
+    private PurchaseJournal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a new, empty journal and locks it. It is locked under another
+     * name first, so it never shows up unlocked in the directory.
+     */
+    static PurchaseJournal create(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path creating = path.resolveSibling(path.getFileName() + CREATING_SUFFIX);
+        FileChannel channel = FileChannel.open(creating, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+            // The lock belongs to the file, not its name
+            Files.move(creating, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(creating);
+            throw e;
+        }
+        return new PurchaseJournal(path, channel);
+    }
+
+    /**
+     * Locks a journal left by another run, to replay it.
+     *
+     * @return the locked journal, to close once it has been replayed and
+     *         deleted, or null if a running instance still holds it
+     */
+    static FileChannel lockAbandoned(Path path) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return null; // Replayed by someone else in the meantime
+        }
+        try {
+            FileLock lock = channel.tryLock();
+            // Whoever replayed it last deleted it before letting go
+            if (lock != null && Files.exists(path)) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by a ledger in this process
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * Writes an entry, numbering it after the previous one. The entry is not
+     * durable until {@link #sync(long)} returns for it.
+     */
+    synchronized Entry append(long userId, long itemId, int quantity, BigDecimal price, LocalDateTime purchasedAt)
+            throws IOException {
+        Entry entry = new Entry(nextSequence, userId, itemId, quantity, price, purchasedAt);
+        ByteBuffer buffer = encode(entry);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        nextSequence++;
+        return entry;
+    }
+
+    /**
+     * Forces the entries written so far to disk.
+     */
+    void sync() throws IOException {
+        synchronized (syncLock) {
+            long written;
+            synchronized (this) {
+                written = nextSequence - 1;
+            }
+            channel.force(false);
+            syncedSequence = written;
+        }
+    }
+
+    /**
+     * Forces an entry to disk, unless it already is. Callers waiting here at
+     * the same time are covered by one force, so concurrent purchases share
+     * the cost of a sync instead of queueing a sync each.
+     *
+     * @param sequence the entry that must be on disk
+     */
+    void sync(long sequence) throws IOException {
+        if (syncedSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSequence < sequence) {
+                sync();
+            }
+        }
+    }
+
+    /**
+     * Empties the file if every entry in it has been written to the database.
+     *
+     * @param flushedSequence the last entry written to the database
+     * @return true if the file was emptied
+     */
+    synchronized boolean truncateIfFlushed(long flushedSequence) throws IOException {
+        if (flushedSequence != nextSequence - 1) {
+            return false;
+        }
+        channel.truncate(0);
+        channel.position(0);
+        return true;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Closes the journal, releasing its lock.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the complete entries of a journal file.
+     */
+    static List<Entry> read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<Entry> entries = new ArrayList<>();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length < 0 || buffer.remaining() < length + Integer.BYTES) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), buffer.position(), length);
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                break;
+            }
+            entries.add(decode(body));
+        }
+        return entries;
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        byte[] unscaled = entry.price().unscaledValue().toByteArray();
+        int length = Long.BYTES * 4 + Integer.BYTES * 3 + unscaled.length;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+        buffer.putInt(length)
+            .putLong(entry.sequence())
+            .putLong(entry.userId())
+            .putLong(entry.itemId())
+            .putInt(entry.quantity())
+            .putLong(entry.purchasedAt().toInstant(ZoneOffset.UTC).toEpochMilli())
+            .putInt(entry.price().scale())
+            .putInt(unscaled.length)
+            .put(unscaled);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, length);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static Entry decode(ByteBuffer body) {
+        long sequence = body.getLong();
+        long userId = body.getLong();
+        long itemId = body.getLong();
+        int quantity = body.getInt();
+        LocalDateTime purchasedAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZoneOffset.UTC);
+        int scale = body.getInt();
+        byte[] unscaled = new byte[body.getInt()];
+        body.get(unscaled);
+        return new Entry(sequence, userId, itemId, quantity, new BigDecimal(new BigInteger(unscaled), scale), purchasedAt);
+    }
+
+    /**
+     * A purchase confirmed from memory.
+     *
+     * @param price the price of the whole purchase
+     */
+    record Entry(long sequence, long userId, long itemId, int quantity, BigDecimal price, LocalDateTime purchasedAt) {
+    }
+}
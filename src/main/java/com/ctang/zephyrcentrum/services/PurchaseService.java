@@ -3,6 +3,9 @@ package com.ctang.zephyrcentrum.services;
 import java.util.List;
 
 import com.ctang.zephyrcentrum.models.Purchase;
+import com.ctang.zephyrcentrum.models.dtos.LineItem;
+import com.ctang.zephyrcentrum.models.dtos.Order;
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException;
 import com.ctang.zephyrcentrum.exceptions.InsufficientStockException;
 
 public interface PurchaseService {
@@ -16,4 +19,6 @@ public interface PurchaseService {
     List<Purchase> getPurchasesByItemId(Long itemId);
     
     Purchase buyItem(Long userId, Long itemId, Integer quantity) throws InsufficientStockException;
+
+    Order checkout(Long userId, List<LineItem> lines) throws CheckoutFailedException;
 } 
\ No newline at end of file
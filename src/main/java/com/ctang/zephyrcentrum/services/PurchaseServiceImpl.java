@@ -1,17 +1,31 @@
 package com.ctang.zephyrcentrum.services;
 
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException;
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException.LineFailure;
+import com.ctang.zephyrcentrum.exceptions.HotItemCheckoutException;
 import com.ctang.zephyrcentrum.exceptions.InsufficientStockException;
 import com.ctang.zephyrcentrum.models.Item;
 import com.ctang.zephyrcentrum.models.Purchase;
 import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.models.dtos.LineItem;
+import com.ctang.zephyrcentrum.models.dtos.Order;
 import com.ctang.zephyrcentrum.repositories.ItemRepository;
 import com.ctang.zephyrcentrum.repositories.PurchaseRepository;
 import com.ctang.zephyrcentrum.repositories.UserRepository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class PurchaseServiceImpl implements PurchaseService {
@@ -19,17 +33,20 @@ public class PurchaseServiceImpl implements PurchaseService {
     private final PurchaseRepository purchaseRepository;
     private final UserRepository userRepository;
     private final ItemRepository itemRepository;
-    private final ItemService itemService;
+    private final InventoryLedger inventoryLedger;
+    private final TransactionTemplate transactionTemplate;
 
     public PurchaseServiceImpl(
             PurchaseRepository purchaseRepository,
             UserRepository userRepository,
             ItemRepository itemRepository,
-            ItemService itemService) {
+            InventoryLedger inventoryLedger,
+            PlatformTransactionManager transactionManager) {
         this.purchaseRepository = purchaseRepository;
         this.userRepository = userRepository;
         this.itemRepository = itemRepository;
-        this.itemService = itemService;
+        this.inventoryLedger = inventoryLedger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     @Override
@@ -60,33 +77,137 @@ public class PurchaseServiceImpl implements PurchaseService {
         return purchaseRepository.findByItem(item);
     }
 
+    /**
+     * Buys an item. Hot items are sold from the {@link InventoryLedger}
+     * without a transaction here; the purchase returned then has no id yet.
+     * Otherwise the stock is taken with one conditional update, which holds
+     * the item's row until the purchase commits, so concurrent buyers can
+     * never take more than there is; the item is only read afterwards, for
+     * its price.
+     *
+     * @throws IllegalArgumentException if the quantity isn't positive, or the user or item doesn't exist
+     * @throws InsufficientStockException if the item has less stock than the quantity
+     */
     @Override
-    @Transactional
     public Purchase buyItem(Long userId, Long itemId, Integer quantity) throws InsufficientStockException {
-        // Validate user exists
+        if (quantity == null || quantity < 1) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        Purchase purchase = inventoryLedger.buy(userId, itemId, quantity);
+        if (purchase != null) {
+            return purchase;
+        }
+        return transactionTemplate.execute(status -> buyFromStock(userId, itemId, quantity));
+    }
+
+    private Purchase buyFromStock(Long userId, Long itemId, int quantity) {
+        // Before taking stock, so a bad user id doesn't lock the item
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
-        
-        // Validate item exists
-        Item item = itemRepository.findById(itemId)
-                .orElseThrow(() -> new IllegalArgumentException("Item not found with ID: " + itemId));
-        
-        // Check if there's enough stock
-        if (!itemService.isItemInStock(itemId, quantity)) {
+
+        if (itemRepository.decrementStock(itemId, quantity) == 0) {
+            Item item = itemRepository.findById(itemId)
+                    .orElseThrow(() -> new IllegalArgumentException("Item not found with ID: " + itemId));
             throw new InsufficientStockException(itemId, quantity, item.getStock());
         }
-        
-        // Create purchase record
+        // Loaded after the update, so it shows the stock left
+        Item item = itemRepository.findById(itemId).orElseThrow();
+
         Purchase purchase = new Purchase();
         purchase.setUser(user);
         purchase.setItem(item);
         purchase.setQuantity(quantity);
-        purchase.setPurchasePrice(item.getPrice().multiply(java.math.BigDecimal.valueOf(quantity)));
-        
-        // Update stock
-        itemService.updateStock(itemId, -quantity);
-        
-        // Save and return purchase
+        purchase.setPurchasePrice(item.getPrice().multiply(BigDecimal.valueOf(quantity)));
         return purchaseRepository.save(purchase);
     }
-} 
\ No newline at end of file
+
+    /**
+     * Buys every line of a cart or none of them. Lines for the same item are
+     * merged. The stock of all items is taken in one batch of conditional
+     * updates in item id order, so carts sharing items lock their rows in the
+     * same order and can't deadlock, and the purchases are inserted in one
+     * batch, so a cart costs the same few round trips whatever its size.
+     * Hot items are refused: their row only holds what no ledger has claimed,
+     * and a ledger purchase can't be rolled back with the rest of the cart.
+     *
+     * @return the order, with its purchases in item id order
+     * @throws IllegalArgumentException if a line has no item or a quantity that isn't positive, or the user or an item doesn't exist
+     * @throws HotItemCheckoutException if some items are hot, listing each of them
+     * @throws CheckoutFailedException if some items have less stock than ordered, listing each of them
+     */
+    @Override
+    public Order checkout(Long userId, List<LineItem> lines) throws CheckoutFailedException {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one line");
+        }
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (LineItem line : lines) {
+            if (line == null || line.itemId() == null) {
+                throw new IllegalArgumentException("Line has no item: " + line);
+            }
+            if (line.quantity() == null || line.quantity() < 1) {
+                throw new IllegalArgumentException("Quantity must be positive: " + line.quantity());
+            }
+            quantities.merge(line.itemId(), line.quantity(), Math::addExact);
+        }
+        // Read from the database rather than the ledger, which only learns of flags set elsewhere on its refresh
+        List<Long> hot = itemRepository.findHotItemIdsIn(quantities.keySet());
+        if (!hot.isEmpty()) {
+            throw new HotItemCheckoutException(hot);
+        }
+        return transactionTemplate.execute(status -> checkoutFromStock(userId, quantities));
+    }
+
+    private Order checkoutFromStock(Long userId, SortedMap<Long, Integer> quantities) {
+        // Before taking stock, so a bad user id doesn't lock the items
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
+
+        int[] updated = itemRepository.decrementStocks(quantities);
+        List<Long> itemIds = new ArrayList<>(quantities.keySet());
+        List<Long> refused = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                refused.add(itemIds.get(i));
+            }
+        }
+        if (!refused.isEmpty()) {
+            // Thrown out of the transaction, so the stock taken for the other lines is given back
+            throw refusal(refused, quantities);
+        }
+
+        // Loaded after the updates, so they show the stock left
+        Map<Long, Item> items = itemRepository.findAllById(itemIds).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        LocalDateTime now = LocalDateTime.now();
+        List<Purchase> purchases = new ArrayList<>(quantities.size());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Item item = items.get(line.getKey());
+            Purchase purchase = new Purchase();
+            purchase.setUser(user);
+            purchase.setItem(item);
+            purchase.setQuantity(line.getValue());
+            purchase.setPurchasePrice(item.getPrice().multiply(BigDecimal.valueOf(line.getValue())));
+            purchase.setPurchaseDate(now);
+            purchases.add(purchase);
+            total = total.add(purchase.getPurchasePrice());
+        }
+        purchaseRepository.insertAll(purchases);
+        return new Order(user.getId(), purchases, total);
+    }
+
+    private RuntimeException refusal(List<Long> refused, SortedMap<Long, Integer> quantities) {
+        Map<Long, Item> items = itemRepository.findAllById(refused).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        List<LineFailure> failures = new ArrayList<>(refused.size());
+        for (Long itemId : refused) {
+            Item item = items.get(itemId);
+            if (item == null) {
+                return new IllegalArgumentException("Item not found with ID: " + itemId);
+            }
+            failures.add(new LineFailure(itemId, quantities.get(itemId), item.getStock()));
+        }
+        return new CheckoutFailedException(failures);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.util.List;
+
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+
+public interface TimelineService {
+    void follow(Long followerId, Long followeeId);
+    boolean unfollow(Long followerId, Long followeeId);
+    void publish(Post post);
+    void retract(Long postId);
+    List<PostFeedItem> getHomeTimeline(Long userId, KeysetCursor before, int limit);
+}
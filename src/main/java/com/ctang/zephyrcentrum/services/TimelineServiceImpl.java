@@ -0,0 +1,246 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.ctang.zephyrcentrum.models.Follow;
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.TimelineEntry;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+import com.ctang.zephyrcentrum.repositories.FollowRepository;
+import com.ctang.zephyrcentrum.repositories.PostRepository;
+import com.ctang.zephyrcentrum.repositories.TimelineEntryRepository;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+import com.ctang.zephyrcentrum.utils.TimelineRing;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Precomputed home timelines with hybrid fan-out.
+ *
+ * When a post is created its id is pushed into the timeline of every
+ * follower of the author with a single INSERT ... SELECT, so reading a home
+ * timeline is a page of one user's own entries rather than a join over all
+ * posts. Authors with more followers than the celebrity threshold are not
+ * fanned out; their recent posts are merged in when a follower reads.
+ *
+ * The newest entries of recently active users are also held in memory, in
+ * one bounded {@link TimelineRing} per user, and fan-out updates the rings
+ * of those users once the post is committed. The timeline_entries table is
+ * the source of truth and rings are rebuilt from it on demand.
+ */
+@Service
+public class TimelineServiceImpl implements TimelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimelineServiceImpl.class);
+    private static final Comparator<PostFeedItem> NEWEST_FIRST = Comparator
+        .comparing(PostFeedItem::createdDate, Comparator.reverseOrder())
+        .thenComparing(PostFeedItem::id, Comparator.reverseOrder());
+
+    private final TimelineEntryRepository timelineEntryRepository;
+    private final FollowRepository followRepository;
+    private final PostRepository postRepository;
+    private final Cache<Long, TimelineRing> rings;
+    private final int ringCapacity;
+    private final long celebrityThreshold;
+    private final int backfillSize;
+    private volatile Set<Long> celebrities = Set.of();
+
+    public TimelineServiceImpl(
+        TimelineEntryRepository timelineEntryRepository,
+        FollowRepository followRepository,
+        PostRepository postRepository,
+        @Value("${zephyr.social.timeline.capacity:200}") int ringCapacity,
+        @Value("${zephyr.social.timeline.cached-users:10000}") long cachedUsers,
+        @Value("${zephyr.social.timeline.expire-after-access:1800000}") long expireAfterAccess,
+        @Value("${zephyr.social.timeline.celebrity-threshold:10000}") long celebrityThreshold,
+        @Value("${zephyr.social.timeline.backfill:50}") int backfillSize
+    ) {
+        this.timelineEntryRepository = timelineEntryRepository;
+        this.followRepository = followRepository;
+        this.postRepository = postRepository;
+        this.ringCapacity = ringCapacity;
+        this.celebrityThreshold = celebrityThreshold;
+        this.backfillSize = backfillSize;
+        this.rings = Caffeine.newBuilder()
+            .maximumSize(cachedUsers)
+            .expireAfterAccess(Duration.ofMillis(expireAfterAccess))
+            .build();
+    }
+
+    /**
+     * Follows a user and copies their recent posts into the follower's timeline.
+     *
+     * @throws IllegalArgumentException if a user tries to follow themselves
+     */
+    @Override
+    public void follow(Long followerId, Long followeeId) {
+        if (followerId.equals(followeeId)) {
+            throw new IllegalArgumentException("Users can't follow themselves");
+        }
+        if (followRepository.existsByFollowerIdAndFolloweeId(followerId, followeeId)) {
+            return;
+        }
+        Follow follow = new Follow();
+        follow.setFollowerId(followerId);
+        follow.setFolloweeId(followeeId);
+        try {
+            followRepository.save(follow);
+        } catch (DataIntegrityViolationException e) {
+            return; // Followed concurrently
+        }
+        if (!celebrities.contains(followeeId)) {
+            timelineEntryRepository.backfill(followerId, followeeId, backfillSize);
+        }
+        rings.invalidate(followerId);
+    }
+
+    @Override
+    public boolean unfollow(Long followerId, Long followeeId) {
+        if (followRepository.deleteByFollowerIdAndFolloweeId(followerId, followeeId) == 0) {
+            return false;
+        }
+        timelineEntryRepository.deleteByUserIdAndAuthorId(followerId, followeeId);
+        rings.invalidate(followerId);
+        return true;
+    }
+
+    /**
+     * Fans a newly created post out to its author's followers. Should run in
+     * the transaction that created the post; the in-memory timelines are
+     * only touched after it commits.
+     *
+     * @param post the saved post
+     */
+    @Override
+    public void publish(Post post) {
+        Long authorId = post.getUser().getId();
+        boolean toFollowers = !celebrities.contains(authorId);
+        List<Long> recipients = timelineEntryRepository.fanOut(post.getId(), post.getCreatedDate(), authorId, toFollowers);
+
+        Runnable updateRings = () -> {
+            for (Long userId : recipients) {
+                TimelineRing ring = rings.getIfPresent(userId);
+                if (ring != null) {
+                    ring.add(post.getId(), post.getCreatedDate());
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    updateRings.run();
+                }
+            });
+        } else {
+            updateRings.run();
+        }
+    }
+
+    /**
+     * Removes a post from every timeline it was pushed into. Only the rings
+     * of the users whose timelines held the post are touched, found through
+     * the post_id index rather than by scanning every cached ring.
+     *
+     * @param postId the id of the post being deleted
+     */
+    @Override
+    public void retract(Long postId) {
+        List<Long> userIds = timelineEntryRepository.findUserIdsByPostId(postId);
+        timelineEntryRepository.deleteByPostId(postId);
+        for (Long userId : userIds) {
+            TimelineRing ring = rings.getIfPresent(userId);
+            if (ring != null) {
+                ring.remove(postId);
+            }
+        }
+    }
+
+    /**
+     * Reads a page of a user's home timeline, newest first.
+     *
+     * @param userId the user whose timeline to read
+     * @param before the cursor of the last post of the previous page, or null for the first page
+     * @param limit the maximum number of posts to return
+     * @return a page of the posts of the user and everyone they follow
+     */
+    @Override
+    public List<PostFeedItem> getHomeTimeline(Long userId, KeysetCursor before, int limit) {
+        TimelineRing ring = rings.get(userId, this::loadRing);
+        List<TimelineRing.Entry> entries = ring.page(before, limit);
+        if (entries == null) {
+            entries = loadPage(userId, before, limit);
+        }
+
+        Map<Long, PostFeedItem> byId = entries.isEmpty() ? Map.of()
+            : postRepository.findFeedItemsByIdIn(entries.stream().map(TimelineRing.Entry::postId).toList()).stream()
+                .collect(Collectors.toMap(PostFeedItem::id, Function.identity()));
+        Map<Long, PostFeedItem> page = new LinkedHashMap<>();
+        for (TimelineRing.Entry entry : entries) {
+            PostFeedItem item = byId.get(entry.postId());
+            if (item != null) {
+                page.put(item.id(), item);
+            }
+        }
+
+        Set<Long> celebrityIds = celebrities;
+        if (celebrityIds.isEmpty()) {
+            return new ArrayList<>(page.values());
+        }
+        List<Long> followedCelebrities = followRepository.findFolloweeIdsIn(userId, celebrityIds);
+        if (followedCelebrities.isEmpty()) {
+            return new ArrayList<>(page.values());
+        }
+        List<PostFeedItem> celebrityPosts = before == null
+            ? postRepository.findFeedByAuthors(followedCelebrities, Limit.of(limit))
+            : postRepository.findFeedByAuthorsBefore(followedCelebrities, before.timestamp(), before.id(), Limit.of(limit));
+        celebrityPosts.forEach(item -> page.putIfAbsent(item.id(), item));
+        return page.values().stream().sorted(NEWEST_FIRST).limit(limit).toList();
+    }
+
+    /**
+     * Recomputes which authors are merged at read time instead of fanned out.
+     * Posts an author made while above the threshold are not in their
+     * followers' timelines, so an author who later drops below it only shows
+     * up there again with new posts.
+     */
+    @Scheduled(fixedDelayString = "${zephyr.social.timeline.celebrity-refresh-interval:300000}")
+    public void refreshCelebrities() {
+        Set<Long> refreshed = new HashSet<>(followRepository.findFolloweeIdsWithAtLeast(celebrityThreshold));
+        if (!refreshed.equals(celebrities)) {
+            logger.info("{} authors are above the fan-out threshold of {} followers", refreshed.size(), celebrityThreshold);
+        }
+        celebrities = Set.copyOf(refreshed);
+    }
+
+    private TimelineRing loadRing(Long userId) {
+        List<TimelineRing.Entry> entries = loadPage(userId, null, ringCapacity);
+        return new TimelineRing(ringCapacity, entries, entries.size() < ringCapacity);
+    }
+
+    private List<TimelineRing.Entry> loadPage(Long userId, KeysetCursor before, int limit) {
+        List<TimelineEntry> rows = before == null
+            ? timelineEntryRepository.findPage(userId, Limit.of(limit))
+            : timelineEntryRepository.findPageBefore(userId, before.timestamp(), before.id(), Limit.of(limit));
+        return rows.stream().map(row -> new TimelineRing.Entry(row.getPostId(), row.getCreatedDate())).toList();
+    }
+}
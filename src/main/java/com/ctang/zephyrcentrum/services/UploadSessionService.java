@@ -0,0 +1,16 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus;
+
+public interface UploadSessionService {
+    public UploadSessionStatus createSession(Long userId, String filename, String description, long totalSize) throws IOException;
+    public Optional<UploadSessionStatus> getStatus(String sessionId);
+    public Optional<UploadSessionStatus> writeChunk(String sessionId, int index, InputStream content) throws IOException;
+    public Optional<Image> complete(String sessionId) throws IOException;
+    public boolean abort(String sessionId);
+}
@@ -0,0 +1,303 @@
+package com.ctang.zephyrcentrum.services;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.UploadSession;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus.ChunkRange;
+import com.ctang.zephyrcentrum.repositories.UploadSessionRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable, chunked image uploads.
+ *
+ * A session owns a temp file that grows as chunks arrive. Each chunk is
+ * written straight to its offset in that file through a {@link FileChannel},
+ * so chunks may arrive in any order, in parallel, and be retried. Completing
+ * the session first moves it to COMPLETING, which waits for chunk writes in
+ * flight and refuses new ones, then stores a link to the file as the image.
+ * The session row is deleted in the transaction that inserts the image, so
+ * a completion either leaves an image and no session or a session and no
+ * image; if it fails the session goes back to UPLOADING and can be completed
+ * again without storing the upload twice. Sessions that see no activity for the configured TTL are garbage
+ * collected.
+ */
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionServiceImpl.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ImageService imageService;
+    private final TransactionTemplate transactionTemplate;
+    private final Path sessionsDir;
+    private final int chunkSize;
+    private final long maxSize;
+    private final long sessionTtl;
+    private final long chunkWriteTimeout;
+
+    public UploadSessionServiceImpl(
+        UploadSessionRepository uploadSessionRepository,
+        ImageService imageService,
+        PlatformTransactionManager transactionManager,
+        @Value("${zephyr.images.upload.sessions-dir:data/uploads}") String sessionsDir,
+        @Value("${zephyr.images.upload.chunk-size:5242880}") int chunkSize,
+        @Value("${zephyr.images.upload.max-size:524288000}") long maxSize,
+        @Value("${zephyr.images.upload.session-ttl:86400000}") long sessionTtl,
+        @Value("${zephyr.images.upload.chunk-write-timeout:600000}") long chunkWriteTimeout
+    ) throws IOException {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.imageService = imageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sessionsDir = Paths.get(sessionsDir).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+        this.sessionTtl = sessionTtl;
+        this.chunkWriteTimeout = chunkWriteTimeout;
+        Files.createDirectories(this.sessionsDir);
+    }
+
+    /**
+     * Starts a new upload of the given size.
+     *
+     * @throws IllegalArgumentException if the size is not within the upload limit
+     */
+    @Override
+    public UploadSessionStatus createSession(Long userId, String filename, String description, long totalSize) throws IOException {
+        if (totalSize <= 0 || totalSize > maxSize) {
+            throw new IllegalArgumentException("Upload size must be between 1 and " + maxSize + " bytes");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setFilename(filename);
+        session.setDescription(description);
+        session.setTotalSize(totalSize);
+        session.setChunkSize(chunkSize);
+        // Sized up front, set_bit can't grow the column
+        session.setReceivedChunks(new byte[(chunkCount(session) + 7) / 8]);
+        session.setCreatedDate(now);
+        session.setUpdatedDate(now);
+
+        Path file = fileOf(session.getId());
+        Files.createFile(file);
+        try {
+            return toStatus(uploadSessionRepository.save(session));
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<UploadSessionStatus> getStatus(String sessionId) {
+        return uploadSessionRepository.findById(sessionId).map(this::toStatus);
+    }
+
+    /**
+     * Writes one chunk at its offset in the session's file. Chunks are
+     * idempotent: resending a chunk simply overwrites it.
+     *
+     * @param content the chunk, which must be exactly one chunk long (the last one may be shorter)
+     * @return the updated status, or empty if the session does not exist
+     * @throws IllegalArgumentException if the index is out of range or the chunk has the wrong length
+     * @throws IllegalStateException if the session is being completed
+     */
+    @Override
+    public Optional<UploadSessionStatus> writeChunk(String sessionId, int index, InputStream content) throws IOException {
+        Optional<UploadSession> sessionOptional = uploadSessionRepository.findById(sessionId);
+        if (sessionOptional.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = sessionOptional.get();
+        if (index < 0 || index >= chunkCount(session)) {
+            throw new IllegalArgumentException("Chunk index " + index + " is out of range");
+        }
+
+        if (uploadSessionRepository.beginChunkWrite(sessionId, LocalDateTime.now()) == 0) {
+            if (!uploadSessionRepository.existsById(sessionId)) {
+                return Optional.empty();
+            }
+            throw new IllegalStateException("Upload " + sessionId + " is being completed");
+        }
+
+        long offset = (long) index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        try (FileChannel channel = FileChannel.open(fileOf(sessionId), StandardOpenOption.WRITE)) {
+            long written = channel.transferFrom(Channels.newChannel(content), offset, expected);
+            if (written != expected || content.read() != -1) {
+                throw new IllegalArgumentException("Chunk " + index + " must be exactly " + expected + " bytes");
+            }
+            // Only acknowledge chunks that would survive a crash
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            uploadSessionRepository.abandonChunkWrite(sessionId);
+            throw e;
+        }
+
+        if (uploadSessionRepository.finishChunkWrite(sessionId, index, LocalDateTime.now()) == 0) {
+            return Optional.empty();
+        }
+        return getStatus(sessionId);
+    }
+
+    /**
+     * Turns a fully received session into an image.
+     *
+     * @return the stored image, or empty if the session does not exist
+     * @throws IllegalStateException if some chunks have not been received yet, or are being written,
+     *                               or another request is completing the session
+     */
+    @Override
+    public Optional<Image> complete(String sessionId) throws IOException {
+        Optional<UploadSession> sessionOptional = uploadSessionRepository.findById(sessionId);
+        if (sessionOptional.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession session = sessionOptional.get();
+        if (BitSet.valueOf(session.getReceivedChunks()).cardinality() < chunkCount(session)) {
+            throw new IllegalStateException("Upload " + sessionId + " is missing chunks");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (uploadSessionRepository.claimCompletion(sessionId, now, now.minus(Duration.ofMillis(chunkWriteTimeout))) == 0) {
+            if (!uploadSessionRepository.existsById(sessionId)) {
+                return Optional.empty();
+            }
+            throw new IllegalStateException("Upload " + sessionId + " is being written to or completed");
+        }
+
+        // The image store moves its file away, a link keeps the upload in case storing fails
+        Path link = sessionsDir.resolve(UUID.fromString(sessionId) + ".complete");
+        Image image;
+        try {
+            linkOrCopy(fileOf(sessionId), link);
+            image = transactionTemplate.execute(status -> storeAndDelete(session, link));
+        } catch (UncheckedIOException e) {
+            uploadSessionRepository.revertCompletion(sessionId);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            uploadSessionRepository.revertCompletion(sessionId);
+            throw e;
+        } finally {
+            deleteQuietly(link);
+        }
+
+        deleteQuietly(fileOf(sessionId));
+        return Optional.of(image);
+    }
+
+    private Image storeAndDelete(UploadSession session, Path link) {
+        Image image;
+        try {
+            image = imageService.storeImage(link, session.getFilename(), session.getUserId(), session.getDescription());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (uploadSessionRepository.deleteSessionById(session.getId()) == 0) {
+            throw new IllegalStateException("Upload " + session.getId() + " was deleted while being completed");
+        }
+        return image;
+    }
+
+    /**
+     * Deletes a session and its file, unless it is being completed.
+     *
+     * @return true if the session was deleted
+     */
+    @Override
+    public boolean abort(String sessionId) {
+        if (uploadSessionRepository.deleteUploadingSessionById(sessionId) == 0) {
+            return false;
+        }
+        deleteQuietly(fileOf(sessionId));
+        return true;
+    }
+
+    /**
+     * Deletes sessions that have not received a chunk within the TTL, along with their files.
+     */
+    @Scheduled(fixedDelayString = "${zephyr.images.upload.session-gc-interval:3600000}")
+    public void deleteStaleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(sessionTtl));
+        int deleted = 0;
+        for (UploadSession session : uploadSessionRepository.findByUpdatedDateBefore(cutoff)) {
+            // Also removes sessions whose completion died with its instance
+            if (uploadSessionRepository.deleteStaleSessionById(session.getId(), cutoff) > 0) {
+                deleteQuietly(fileOf(session.getId()));
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} stale upload sessions", deleted);
+        }
+    }
+
+    private UploadSessionStatus toStatus(UploadSession session) {
+        int chunkCount = chunkCount(session);
+        BitSet received = BitSet.valueOf(session.getReceivedChunks());
+        List<ChunkRange> ranges = new ArrayList<>();
+        for (int first = received.nextSetBit(0); first >= 0 && first < chunkCount; ) {
+            int end = Math.min(received.nextClearBit(first), chunkCount);
+            ranges.add(new ChunkRange(first, end - 1));
+            first = received.nextSetBit(end);
+        }
+        return new UploadSessionStatus(
+            session.getId(),
+            session.getTotalSize(),
+            session.getChunkSize(),
+            chunkCount,
+            ranges,
+            received.cardinality() >= chunkCount);
+    }
+
+    private static int chunkCount(UploadSession session) {
+        return (int) ((session.getTotalSize() + session.getChunkSize() - 1) / session.getChunkSize());
+    }
+
+    private Path fileOf(String sessionId) {
+        // Session ids come from request paths, only accept ones we could have issued
+        return sessionsDir.resolve(UUID.fromString(sessionId) + ".part");
+    }
+
+    private static void linkOrCopy(Path file, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, file);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(file, target);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete upload session file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ctang.zephyrcentrum.services;
+
+/**
+ * Published after a user is updated or deleted, so anything holding on to
+ * the user's details can let go of them.
+ *
+ * @param username the username the user had before the change
+ */
+public record UserChangedEvent(String username) {
+}
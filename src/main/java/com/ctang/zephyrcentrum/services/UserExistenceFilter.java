@@ -0,0 +1,260 @@
+package com.ctang.zephyrcentrum.services;
+
+import java.sql.PreparedStatement;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+import com.ctang.zephyrcentrum.utils.BloomFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Answers "is this username / email taken" without the database when the
+ * answer is no.
+ *
+ * Every username and email ever stored is added to a {@link BloomFilter}, so
+ * a lookup the filter rejects can't match a user and returns empty straight
+ * away; only possible matches go to the repository. Registration storms with
+ * fresh names, and profile edits to unused ones, then cost no queries.
+ *
+ * Values are matched exactly, like the repository lookups. Renamed and
+ * deleted users stay in the filter, which only makes it answer "maybe" more
+ * often. The filters are built from the users table on startup, sized for
+ * the larger of the configured and the actual number of users; until then
+ * every lookup goes to the database.
+ *
+ * Only saves made through this instance are added as they happen. Users
+ * registered through other instances are picked up by the periodic rebuild,
+ * and until then this filter may call their names free. It is a shortcut
+ * for the lookups, not the uniqueness check: the unique constraints on
+ * users.username and users.email reject the duplicate insert.
+ */
+@Component
+public class UserExistenceFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserExistenceFilter.class);
+    private static final String STREAM_USERS_SQL = "SELECT username, email FROM system.users";
+    private static final int FETCH_SIZE = 1000;
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long expectedInsertions;
+    private final double fpp;
+
+    private volatile Filters current;
+    // Filled by a running rebuild; adds go here as well so none are missed
+    private volatile Filters building;
+
+    private final Field username;
+    private final Field email;
+
+    public UserExistenceFilter(
+        UserRepository userRepository,
+        JdbcTemplate jdbcTemplate,
+        PlatformTransactionManager transactionManager,
+        MeterRegistry meterRegistry,
+        @Value("${zephyr.users.bloom.expected-insertions:1000000}") long expectedInsertions,
+        @Value("${zephyr.users.bloom.fpp:0.01}") double fpp
+    ) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.username = new Field("username", Filters::usernames, meterRegistry);
+        this.email = new Field("email", Filters::emails, meterRegistry);
+    }
+
+    /**
+     * Same as {@link UserRepository#findByUsername(String)}, without a query
+     * when no user can have the username.
+     */
+    public Optional<User> findByUsername(String name) {
+        return username.find(name, userRepository::findByUsername);
+    }
+
+    /**
+     * Same as {@link UserRepository#findByEmail(String)}, without a query
+     * when no user can have the email.
+     */
+    public Optional<User> findByEmail(String address) {
+        return email.find(address, userRepository::findByEmail);
+    }
+
+    /**
+     * Records a saved user's username and email. Must be called after every
+     * save that may have set either, once the save has committed.
+     */
+    public void add(User user) {
+        // Read in the opposite order rebuild() publishes them: if no rebuild is running
+        // yet, its scan will see the saved row; if one just finished, current is its result
+        Filters next = building;
+        if (next != null) {
+            next.add(user);
+        }
+        Filters filters = current;
+        if (filters != null && filters != next) {
+            filters.add(user);
+        }
+    }
+
+    /**
+     * Rebuilds both filters by streaming the users table, dropping the names
+     * of renamed and deleted users.
+     *
+     * @return the number of users added
+     */
+    public synchronized long rebuild() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.users", Long.class);
+        // Leaves room to grow, so the rate holds until the next rebuild
+        long users = count == null ? 0 : count;
+        Filters next = new Filters(Math.max(expectedInsertions, users * 2), fpp);
+        building = next;
+        long[] added = new long[1];
+        try {
+            // In a transaction, since the driver only streams with a fetch size when auto-commit is off
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(STREAM_USERS_SQL);
+                statement.setFetchSize(FETCH_SIZE);
+                return statement;
+            }, row -> {
+                next.add(row.getString("username"), row.getString("email"));
+                added[0]++;
+            }));
+            current = next;
+        } finally {
+            building = null;
+        }
+        return added[0];
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            long users = rebuild();
+            logger.info("Built the username and email filters from {} users", users);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to build the username and email filters, lookups go to the database", e);
+        }
+    }
+
+    /**
+     * Picks up the users saved through other instances, which never reach
+     * {@link #add(User)} here.
+     */
+    @Scheduled(
+        initialDelayString = "${zephyr.users.bloom.rebuild-interval:60000}",
+        fixedDelayString = "${zephyr.users.bloom.rebuild-interval:60000}")
+    public void rebuildPeriodically() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // The previous filters stay in use, and may miss more recent users until the next rebuild
+            logger.warn("Failed to rebuild the username and email filters", e);
+        }
+    }
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {
+
+        Filters(long expectedInsertions, double fpp) {
+            this(BloomFilter.create(expectedInsertions, fpp), BloomFilter.create(expectedInsertions, fpp));
+        }
+
+        void add(User user) {
+            add(user.getUsername(), user.getEmail());
+        }
+
+        void add(String username, String email) {
+            if (username != null) {
+                usernames.put(username);
+            }
+            if (email != null) {
+                emails.put(email);
+            }
+        }
+    }
+
+    /**
+     * The lookups of one column, with their metrics.
+     */
+    private final class Field {
+        private final Function<Filters, BloomFilter> filter;
+        private final Counter negatives;
+        private final Counter positives;
+        private final Counter falsePositives;
+
+        private Field(String name, Function<Filters, BloomFilter> filter, MeterRegistry meterRegistry) {
+            this.filter = filter;
+            this.negatives = Counter.builder("users.bloom.checks")
+                .description("Uniqueness lookups answered by the filter alone")
+                .tag("field", name)
+                .tag("result", "negative")
+                .register(meterRegistry);
+            this.positives = Counter.builder("users.bloom.checks")
+                .description("Uniqueness lookups the filter passed on to the database")
+                .tag("field", name)
+                .tag("result", "positive")
+                .register(meterRegistry);
+            this.falsePositives = Counter.builder("users.bloom.false.positives")
+                .description("Lookups the filter passed on that matched no user")
+                .tag("field", name)
+                .register(meterRegistry);
+            Gauge.builder("users.bloom.false.positive.rate", this, Field::falsePositiveRate)
+                .description("Share of lookups for unused values that still went to the database")
+                .tag("field", name)
+                .register(meterRegistry);
+            Gauge.builder("users.bloom.expected.fpp", this, Field::expectedFpp)
+                .description("False positive rate expected from the filter's fill")
+                .tag("field", name)
+                .register(meterRegistry);
+        }
+
+        private Optional<User> find(String value, Function<String, Optional<User>> lookup) {
+            Filters filters = current;
+            if (value != null && filters != null && !filter.apply(filters).mightContain(value)) {
+                negatives.increment();
+                return Optional.empty();
+            }
+            Optional<User> user = lookup.apply(value);
+            if (filters != null) {
+                positives.increment();
+                if (user.isEmpty()) {
+                    falsePositives.increment();
+                }
+            }
+            return user;
+        }
+
+        /**
+         * False positives over all lookups of values no user has, which are
+         * the definite negatives plus the false positives.
+         */
+        private double falsePositiveRate() {
+            double falsePositive = falsePositives.count();
+            double unused = negatives.count() + falsePositive;
+            return unused == 0 ? 0 : falsePositive / unused;
+        }
+
+        private double expectedFpp() {
+            Filters filters = current;
+            return filters == null ? 0 : filter.apply(filters).expectedFpp();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -17,10 +18,19 @@ public class UserServiceImpl implements UserService {
 
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
+    private final UserExistenceFilter userExistenceFilter;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserServiceImpl(
+        UserRepository userRepository,
+        PasswordEncoder passwordEncoder,
+        UserExistenceFilter userExistenceFilter,
+        ApplicationEventPublisher eventPublisher
+    ) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userExistenceFilter = userExistenceFilter;
+        this.eventPublisher = eventPublisher;
     }
     
     @Override
@@ -48,7 +58,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User createUser(User user) throws UsernameAlreadyExistsException {
-        Optional<User> existingUser = userRepository.findByUsername(user.getUsername());
+        Optional<User> existingUser = userExistenceFilter.findByUsername(user.getUsername());
         if (existingUser.isPresent()) {
             throw new UsernameAlreadyExistsException(existingUser.get().getUsername());
         }
@@ -63,7 +73,9 @@ public class UserServiceImpl implements UserService {
             user.setPasswordHash(passwordEncoder.encode(user.getPasswordHash()));
         }
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userExistenceFilter.add(saved);
+        return saved;
     }
 
     @Override
@@ -74,6 +86,7 @@ public class UserServiceImpl implements UserService {
         }
 
         User user = existingUserOptional.get();
+        String previousUsername = user.getUsername();
 
         // Update only the fields provided in the map
         fields.forEach((key, value) -> {
@@ -102,7 +115,10 @@ public class UserServiceImpl implements UserService {
             }
         });
         
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userExistenceFilter.add(saved);
+        eventPublisher.publishEvent(new UserChangedEvent(previousUsername));
+        return saved;
     }
 
     @Override
@@ -110,6 +126,7 @@ public class UserServiceImpl implements UserService {
         Optional<User> user = userRepository.findById(id);
         if (user.isPresent()) {
             userRepository.delete(user.get());
+            eventPublisher.publishEvent(new UserChangedEvent(user.get().getUsername()));
         }
         else {
             throw new RuntimeException("User " + id + " does not exist in the database!");
@@ -0,0 +1,121 @@
+package com.ctang.zephyrcentrum.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.ctang.zephyrcentrum.services.ImageBlobService;
+
+/**
+ * Moves image bytes out of the legacy {@code images.data} BYTEA column and
+ * into the {@link ImageBlobStore}, deduplicating as it goes.
+ *
+ * Rows are processed in id order, a batch of ids at a time, and each row's
+ * bytes are streamed straight from the result set into the blob store so
+ * only one image is in flight at once. A row's {@code storage_key} is set and
+ * its {@code data} column cleared in the transaction that adds the blob
+ * reference, so an interrupted copy leaves neither behind and the job is
+ * safe to re-run.
+ */
+@Component
+public class ImageBlobMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBlobMigrationJob.class);
+    private static final String MIGRATED_SQL =
+        "UPDATE system.images SET storage_key = ?, data = NULL WHERE id = ? AND storage_key IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImageBlobService imageBlobService;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public ImageBlobMigrationJob(
+        JdbcTemplate jdbcTemplate,
+        ImageBlobService imageBlobService,
+        @Value("${zephyr.images.storage.migration.enabled:false}") boolean enabled,
+        @Value("${zephyr.images.storage.migration.batch-size:100}") int batchSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.imageBlobService = imageBlobService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    /**
+     * Copies every image that still has inline bytes into the blob store.
+     *
+     * @return the number of images migrated
+     */
+    public int migrate() {
+        if (!legacyColumnExists()) {
+            logger.info("No legacy images.data column found, nothing to migrate");
+            return 0;
+        }
+
+        int migrated = 0;
+        long lastId = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM system.images WHERE id > ? AND storage_key IS NULL AND data IS NOT NULL ORDER BY id LIMIT ?",
+                Long.class, lastId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            for (Long id : ids) {
+                migrateImage(id);
+                migrated++;
+            }
+            lastId = ids.get(ids.size() - 1);
+            logger.info("Migrated {} images to the blob store (last id {})", migrated, lastId);
+        }
+        return migrated;
+    }
+
+    private void migrateImage(Long id) {
+        try {
+            jdbcTemplate.query(
+                "SELECT data FROM system.images WHERE id = ?",
+                rs -> {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    try (InputStream content = rs.getBinaryStream(1)) {
+                        return content == null ? null : imageBlobService.retain(content, blob -> {
+                            if (jdbcTemplate.update(MIGRATED_SQL, blob.key(), id) == 0) {
+                                throw new IllegalStateException("Image " + id + " was migrated or deleted meanwhile");
+                            }
+                        });
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to migrate image " + id, e);
+                    }
+                },
+                id);
+        } catch (IllegalStateException e) {
+            logger.info("Skipped image {}: {}", id, e.getMessage());
+        }
+    }
+
+    private boolean legacyColumnExists() {
+        Integer count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM information_schema.columns "
+                + "WHERE table_schema = 'system' AND table_name = 'images' AND column_name = 'data'",
+            Integer.class);
+        return count != null && count > 0;
+    }
+}
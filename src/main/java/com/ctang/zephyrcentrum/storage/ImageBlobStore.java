@@ -0,0 +1,89 @@
+package com.ctang.zephyrcentrum.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * Storage backend for raw image bytes. Image metadata lives in Postgres,
+ * the bytes themselves live behind this interface.
+ *
+ * Content is addressed by its SHA-256 hash: writing is a two step
+ * {@link #stage(InputStream)} / {@link #commit(StagedBlob)} so that identical
+ * uploads end up stored once. Reference counting is the caller's business,
+ * see {@link com.ctang.zephyrcentrum.services.ImageBlobService}.
+ */
+public interface ImageBlobStore {
+
+    /**
+     * Streams the given content into the staging area, hashing it on the way.
+     *
+     * @param content the bytes to stage, read until EOF but not closed
+     * @return the staged content
+     * @throws IOException if the content could not be written
+     */
+    StagedBlob stage(InputStream content) throws IOException;
+
+    /**
+     * Takes ownership of a file that was assembled elsewhere, hashing it and
+     * moving it into the staging area rather than copying its content.
+     *
+     * @param file the file to stage, moved away on success
+     * @return the staged content
+     * @throws IOException if the file could not be read or moved
+     */
+    StagedBlob stage(Path file) throws IOException;
+
+    /**
+     * Moves staged content into place under its hash. If content with the
+     * same hash is already stored, the staged copy is discarded instead.
+     *
+     * @param staged the content returned by {@link #stage(InputStream)}
+     * @return true if new content was written, false if it was already stored
+     * @throws IOException if the content could not be moved into place
+     */
+    boolean commit(StagedBlob staged) throws IOException;
+
+    /**
+     * Drops staged content that will not be committed. Safe to call after a commit.
+     *
+     * @param staged the content returned by {@link #stage(InputStream)}
+     */
+    void discard(StagedBlob staged);
+
+    /**
+     * Opens the content stored under the given key.
+     *
+     * @param key the hash of the content
+     * @return a stream over the stored bytes, to be closed by the caller
+     * @throws IOException if the content does not exist or cannot be read
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Exposes the content stored under the given key as a {@link Resource},
+     * so it can be served straight from the backend without being buffered.
+     * Range requests are answered from resource regions.
+     *
+     * @param key the hash of the content
+     * @return the resource over the stored bytes
+     */
+    Resource getResource(String key);
+
+    /**
+     * @param key the key to check
+     * @return true if content is stored under the given key
+     */
+    boolean exists(String key);
+
+    /**
+     * Deletes the content stored under the given key.
+     *
+     * @param key the key to delete
+     * @return true if content was found and deleted, false otherwise
+     * @throws IOException if the content could not be deleted
+     */
+    boolean delete(String key) throws IOException;
+}
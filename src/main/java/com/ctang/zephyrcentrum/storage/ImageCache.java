@@ -0,0 +1,178 @@
+package com.ctang.zephyrcentrum.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.types.Visibility;
+import com.ctang.zephyrcentrum.utils.ByteBufferResource;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Keeps the metadata and bytes of recently read public images in memory, so
+ * hot images are served without a query or a trip to the blob store.
+ *
+ * The cache is bounded by bytes rather than entries. Image bytes live in
+ * direct buffers, outside the Java heap, so a full cache adds little to GC
+ * work. Images larger than the per-entry limit are never cached, only their
+ * metadata is. Metadata is held as an immutable snapshot and every read gets
+ * its own copy, and bytes are only cached alongside metadata that is.
+ *
+ * Entries are keyed by image id and must be invalidated when the image
+ * changes. Invalidating also bumps a generation that loads started before it
+ * can see, so a load that read the row before a change can't put it back.
+ */
+@Component
+public class ImageCache {
+
+    // Rough size of the image snapshot and the entry itself
+    private static final int ENTRY_OVERHEAD = 512;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ImageBlobStore imageBlobStore;
+    private final Cache<Long, Entry> cache;
+    private final long maxEntryBytes;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public ImageCache(
+        ImageBlobStore imageBlobStore,
+        MeterRegistry meterRegistry,
+        @Value("${zephyr.images.cache.max-bytes:67108864}") long maxBytes,
+        @Value("${zephyr.images.cache.max-entry-bytes:1048576}") long maxEntryBytes,
+        @Value("${zephyr.images.cache.expire-after-write:600000}") long expireAfterWrite
+    ) {
+        this.imageBlobStore = imageBlobStore;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Long id, Entry entry) -> ENTRY_OVERHEAD + (entry.content() == null ? 0 : entry.content().capacity()))
+            .expireAfterWrite(Duration.ofMillis(expireAfterWrite))
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "images");
+        Gauge.builder("images.cache.bytes", cache, c -> c.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+            .description("Bytes held by the image cache")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return a copy of the cached image, which the caller may change freely
+     */
+    public Optional<Image> getImage(Long id) {
+        Entry entry = cache.getIfPresent(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.image().toImage());
+    }
+
+    /**
+     * The invalidation generation of an image, to read before loading the
+     * image that will be passed to {@link #putImage(Image, long)}.
+     */
+    public long generation(Long id) {
+        return generations.get(stripe(id));
+    }
+
+    /**
+     * Caches an image if it is public and hasn't been invalidated since
+     * {@code generation} was read.
+     */
+    public void putImage(Image image, long generation) {
+        if (image.getVisibility() != Visibility.PUBLIC) {
+            return;
+        }
+        Entry entry = new Entry(Snapshot.of(image), null);
+        if (cache.asMap().putIfAbsent(image.getId(), entry) == null && generation(image.getId()) != generation) {
+            // Invalidated while the image was loaded, it may be older than the change
+            cache.asMap().remove(image.getId(), entry);
+        }
+    }
+
+    /**
+     * Returns the bytes of an image, loading them into the cache on first use.
+     * Bytes are only cached for an image whose metadata is cached and matches.
+     *
+     * @param image the image whose content to read
+     * @return the content, or empty if the image isn't cached, is too large to cache or its bytes are missing
+     * @throws IOException if the content could not be read from the blob store
+     */
+    public Optional<Resource> getContent(Image image) throws IOException {
+        Snapshot snapshot = Snapshot.of(image);
+        Entry entry = cache.getIfPresent(image.getId());
+        if (entry == null || !entry.image().equals(snapshot)) {
+            return Optional.empty();
+        }
+        if (entry.content() != null) {
+            return Optional.of(new ByteBufferResource(entry.content(), image.getStorageKey()));
+        }
+        if (image.getStorageKey() == null || image.getSize() == null || image.getSize() > maxEntryBytes
+                || !imageBlobStore.exists(image.getStorageKey())) {
+            return Optional.empty();
+        }
+
+        ByteBuffer content = ByteBuffer.allocateDirect(image.getSize().intValue());
+        try (InputStream in = imageBlobStore.open(image.getStorageKey());
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (content.hasRemaining() && channel.read(content) != -1) {
+                // keep reading until the buffer is full
+            }
+        }
+        content.flip();
+        // Only replaces the entry the bytes were loaded for, never one that was invalidated meanwhile
+        cache.asMap().replace(image.getId(), entry, new Entry(snapshot, content));
+        return Optional.of(new ByteBufferResource(content, image.getStorageKey()));
+    }
+
+    public void invalidate(Long id) {
+        generations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    private static int stripe(Long id) {
+        return Math.floorMod(Long.hashCode(id), GENERATION_STRIPES);
+    }
+
+    private record Entry(Snapshot image, ByteBuffer content) {
+    }
+
+    private record Snapshot(Long id, String name, String contentType, Long size, String description,
+            LocalDateTime uploadDate, Visibility visibility, String storageKey, Long userId) {
+
+        static Snapshot of(Image image) {
+            return new Snapshot(image.getId(), image.getName(), image.getContentType(), image.getSize(),
+                image.getDescription(), image.getUploadDate(), image.getVisibility(), image.getStorageKey(),
+                image.getUserId());
+        }
+
+        Image toImage() {
+            Image image = new Image();
+            image.setId(id);
+            image.setName(name);
+            image.setContentType(contentType);
+            image.setSize(size);
+            image.setDescription(description);
+            image.setUploadDate(uploadDate);
+            image.setVisibility(visibility);
+            image.setStorageKey(storageKey);
+            image.setUserId(userId);
+            return image;
+        }
+    }
+}
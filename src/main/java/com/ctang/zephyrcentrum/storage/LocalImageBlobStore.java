@@ -0,0 +1,185 @@
+package com.ctang.zephyrcentrum.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores image bytes on the local filesystem.
+ *
+ * Content is sharded two levels deep by key prefix ({@code ab/cd/abcd...}) so
+ * that no single directory grows unbounded. Keys are SHA-256 hashes computed
+ * while the content is staged to a temp file, which is then moved into place
+ * atomically, so readers never observe partial content.
+ *
+ * Content is copied through a small pool of fixed-size buffers, so staging
+ * an upload costs the same amount of heap regardless of its size.
+ */
+@Component
+public class LocalImageBlobStore implements ImageBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalImageBlobStore.class);
+    private static final Pattern KEY_PATTERN = Pattern.compile("^[0-9a-f]{32,64}$");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private final Path root;
+    private final Path tempDir;
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    @Autowired
+    public LocalImageBlobStore(@Value("${zephyr.images.storage.root:data/images}") String root) throws IOException {
+        this(Paths.get(root));
+    }
+
+    public LocalImageBlobStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.tempDir = this.root.resolve("tmp");
+        Files.createDirectories(this.tempDir);
+    }
+
+    @Override
+    public StagedBlob stage(InputStream content) throws IOException {
+        MessageDigest digest = newDigest();
+        Path temp = Files.createTempFile(tempDir, "upload-", ".part");
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+            long size = copy(content, out);
+            return new StagedBlob(temp, HexFormat.of().formatHex(digest.digest()), size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public StagedBlob stage(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        long size;
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            size = copy(in, out);
+        }
+        Path temp = Files.createTempFile(tempDir, "upload-", ".part");
+        try {
+            // A rename when the file already lives on the same filesystem as the store
+            Files.move(file, temp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new StagedBlob(temp, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    @Override
+    public boolean commit(StagedBlob staged) throws IOException {
+        Path target = resolve(staged.hash());
+        if (Files.exists(target)) {
+            discard(staged);
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(staged.file(), target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // Identical content landed concurrently
+            discard(staged);
+            return false;
+        }
+    }
+
+    @Override
+    public void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.file());
+        } catch (IOException e) {
+            logger.warn("Failed to delete staged blob {}", staged.file(), e);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public Resource getResource(String key) {
+        return new FileSystemResource(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        try {
+            Files.delete(resolve(key));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maps a key onto its sharded location under the store root.
+     *
+     * @param key the blob key
+     * @return the path of the file holding the blob
+     * @throws IllegalArgumentException if the key is not a valid blob key
+     */
+    Path resolve(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            buffers.offer(buffer);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
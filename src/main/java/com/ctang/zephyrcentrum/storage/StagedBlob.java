@@ -0,0 +1,15 @@
+package com.ctang.zephyrcentrum.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Content that has been written to a blob store's staging area but not yet
+ * committed under its key. The SHA-256 hash is computed while the content
+ * streams in, so committing never has to read the bytes a second time.
+ *
+ * @param file the staged file
+ * @param hash the lowercase hex SHA-256 of the content, which is also its key once committed
+ * @param size the number of bytes staged
+ */
+public record StagedBlob(Path file, String hash, long size) {
+}
@@ -0,0 +1,11 @@
+package com.ctang.zephyrcentrum.storage;
+
+/**
+ * A reference to committed content in the blob store.
+ *
+ * @param key the content hash the bytes are stored under
+ * @param size the number of bytes
+ * @param deduplicated true if identical content was already stored and no new bytes were written
+ */
+public record StoredBlob(String key, long size, boolean deduplicated) {
+}
@@ -0,0 +1,8 @@
+package com.ctang.zephyrcentrum.types;
+
+public enum JobStatus {
+    PENDING,
+    RUNNING,
+    DONE,
+    FAILED
+}
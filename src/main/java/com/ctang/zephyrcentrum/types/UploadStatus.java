@@ -0,0 +1,6 @@
+package com.ctang.zephyrcentrum.types;
+
+public enum UploadStatus {
+    UPLOADING,
+    COMPLETING
+}
@@ -0,0 +1,122 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over strings that any number of threads can add to and
+ * query at the same time.
+ *
+ * A negative answer is definite; a positive one is only probable, with a
+ * false positive rate of about the one the filter was sized for as long as
+ * no more than the expected number of values are added. Values can't be
+ * removed.
+ *
+ * Bits live in an {@link AtomicLongArray} and are set with a compare-and-set
+ * loop, so concurrent adds never lose each other's bits and readers never
+ * need a lock. The k bit positions come from one 64-bit hash, as
+ * {@code h + i * step} with the step taken from its upper half.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.bitCount = (long) words.length() << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Creates a filter sized for the given number of values and false positive rate.
+     *
+     * @param expectedInsertions the number of values expected to be added
+     * @param fpp the desired false positive rate, between 0 and 1 exclusive
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + fpp);
+        }
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // Capped so the word count fits in an int
+        bits = Math.min(Math.max(64, bits), (long) Integer.MAX_VALUE << 6);
+        int hashes = (int) Math.max(1, Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(bits, Math.min(hashes, 30));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long step = hash >>> 32 | 1;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(hash + i * step);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false if the value was definitely never added, true if it may have been
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long step = hash >>> 32 | 1;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(hash + i * step);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the current false positive rate from the share of bits set,
+     * which grows past the configured rate once the filter is overfilled.
+     */
+    public double expectedFpp() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashCount);
+    }
+
+    public long bitSize() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    private long index(long combined) {
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the murmur3
+     * mixer so both halves of the result are well distributed.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
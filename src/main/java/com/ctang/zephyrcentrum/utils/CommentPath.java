@@ -0,0 +1,72 @@
+package com.ctang.zephyrcentrum.utils;
+
+/**
+ * Materialized paths for threaded comments.
+ *
+ * A comment's path is its parent's path followed by a segment for its own id,
+ * so sorting a post's comments by path lists every thread depth first, with
+ * siblings in creation order, and a whole subtree is the contiguous range of
+ * paths starting with its root's path.
+ *
+ * A segment is the id in lowercase hex, prefixed by a single hex digit
+ * holding the number of digits, e.g. id 255 is {@code 2ff}. The prefix makes
+ * segments self-delimiting and makes shorter ids sort before longer ones, so
+ * plain string order matches numeric order without zero padding or
+ * separators, which database collations could reorder.
+ */
+public final class CommentPath {
+
+    private CommentPath() {
+    }
+
+    /**
+     * Returns the path segment for a comment id.
+     *
+     * @param id a positive comment id below 2^60
+     * @return the segment
+     */
+    public static String segment(long id) {
+        if (id <= 0 || id >>> 60 != 0) {
+            throw new IllegalArgumentException("Comment id out of range: " + id);
+        }
+        String hex = Long.toHexString(id);
+        return Integer.toHexString(hex.length()) + hex;
+    }
+
+    /**
+     * Returns the path of a comment.
+     *
+     * @param parentPath the path of the parent comment, or null for a top-level comment
+     * @param id the id of the comment
+     * @return the path
+     */
+    public static String child(String parentPath, long id) {
+        return parentPath == null ? segment(id) : parentPath + segment(id);
+    }
+
+    /**
+     * Returns a value that sorts after every path starting with {@code prefix},
+     * and before every other path that sorts after it.
+     * With an empty prefix it sorts after every path.
+     */
+    public static String upperBound(String prefix) {
+        // Paths only ever contain [0-9a-f]
+        return prefix + "g";
+    }
+
+    /**
+     * Returns whether a value could be a path, for validating cursors from clients.
+     */
+    public static boolean isValid(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Downscales images with {@code javax.imageio}.
+ */
+public final class ImageScaler {
+
+    /**
+     * Result of a downscale: the encoded bytes and the dimensions they were rendered at.
+     */
+    public record ScaledImage(byte[] data, int width, int height, String contentType) {
+    }
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Whether images of a type can be decoded at all; not every accepted
+     * upload format, WebP for one, has an {@code ImageIO} reader.
+     *
+     * @param contentType the MIME type of the original
+     * @return true if there is a reader for the type
+     */
+    public static boolean canRead(String contentType) {
+        return contentType != null && ImageIO.getImageReadersByMIMEType(contentType).hasNext();
+    }
+
+    /**
+     * Decodes an image and re-encodes it at the given width, keeping the aspect ratio.
+     *
+     * The source is decoded with subsampling so that a large original is never
+     * fully materialised just to produce a small rendition.
+     *
+     * @param source the encoded original, not closed by this method
+     * @param width the width to render at
+     * @param sourceContentType the content type of the original, used to pick the output format
+     * @return the scaled image, or null if the original is not wider than the requested width
+     * @throws IOException if the source cannot be decoded
+     */
+    public static ScaledImage scale(InputStream source, int width, String sourceContentType) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (width >= sourceWidth) {
+                    return null;
+                }
+
+                // Subsample down to no less than twice the target so the final
+                // interpolation still has enough detail to work with
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, sourceWidth / (width * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                int height = Math.max(1, (int) Math.round((double) sourceHeight * width / sourceWidth));
+                boolean jpeg = "image/jpeg".equalsIgnoreCase(sourceContentType);
+                BufferedImage scaled = new BufferedImage(width, height,
+                    jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = scaled.createGraphics();
+                try {
+                    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                    graphics.drawImage(decoded, 0, 0, width, height, null);
+                } finally {
+                    graphics.dispose();
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(scaled, jpeg ? "jpeg" : "png", out);
+                return new ScaledImage(out.toByteArray(), width, height, jpeg ? "image/jpeg" : "image/png");
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
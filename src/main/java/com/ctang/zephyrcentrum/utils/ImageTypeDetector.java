@@ -0,0 +1,54 @@
+package com.ctang.zephyrcentrum.utils;
+
+/**
+ * Identifies image formats from their leading magic bytes, so uploads can be
+ * validated before their bodies are streamed anywhere. The client supplied
+ * content type is never trusted.
+ */
+public final class ImageTypeDetector {
+
+    /** Number of leading bytes needed to recognise every supported format. */
+    public static final int HEADER_LENGTH = 12;
+
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF87A = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89A = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] RIFF = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP = {'W', 'E', 'B', 'P'};
+
+    private ImageTypeDetector() {
+    }
+
+    /**
+     * @param header the first bytes of the content, up to {@link #HEADER_LENGTH}
+     * @return the MIME type of the image, or null if the format is not supported
+     */
+    public static String detect(byte[] header) {
+        if (startsWith(header, 0, JPEG)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, 0, PNG)) {
+            return "image/png";
+        }
+        if (startsWith(header, 0, GIF87A) || startsWith(header, 0, GIF89A)) {
+            return "image/gif";
+        }
+        if (startsWith(header, 0, RIFF) && startsWith(header, 8, WEBP)) {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int offset, byte[] magic) {
+        if (header.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
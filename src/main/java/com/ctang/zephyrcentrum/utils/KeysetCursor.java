@@ -0,0 +1,44 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Position in a listing ordered by {@code (timestamp DESC, id DESC)}.
+ *
+ * Serialised as {@code <ISO timestamp>,<id>}, e.g. {@code 2024-01-01T12:00:00,42}.
+ * A page request with a cursor returns the rows strictly after that position,
+ * which lets the database seek straight to it through the composite index
+ * instead of skipping over an OFFSET.
+ */
+public record KeysetCursor(LocalDateTime timestamp, Long id) {
+
+    /**
+     * Parses a cursor from its string form.
+     *
+     * @param value the cursor string, may be null or blank
+     * @return the parsed cursor, or null if no cursor was given
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static KeysetCursor parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        int separator = value.lastIndexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+        try {
+            return new KeysetCursor(
+                LocalDateTime.parse(value.substring(0, separator).trim()),
+                Long.parseLong(value.substring(separator + 1).trim()));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "," + id;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of longs kept as a sorted primitive array: 8 bytes per
+ * element and a binary search per lookup, where a {@code Set<Long>} would
+ * cost a boxed Long and a hash node per element.
+ *
+ * Updates return a copy, which suits sets that are read far more often
+ * than they change.
+ */
+public final class SortedLongSet {
+
+    private static final SortedLongSet EMPTY = new SortedLongSet(new long[0]);
+
+    private final long[] values;
+
+    private SortedLongSet(long[] values) {
+        this.values = values;
+    }
+
+    public static SortedLongSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a set from the given values, in any order and with duplicates.
+     */
+    public static SortedLongSet of(long... values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new SortedLongSet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns the smallest value, the set must not be empty.
+     */
+    public long min() {
+        return values[0];
+    }
+
+    public SortedLongSet with(long value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return this;
+        }
+        int insertAt = -index - 1;
+        long[] copy = new long[values.length + 1];
+        System.arraycopy(values, 0, copy, 0, insertAt);
+        copy[insertAt] = value;
+        System.arraycopy(values, insertAt, copy, insertAt + 1, values.length - insertAt);
+        return new SortedLongSet(copy);
+    }
+
+    public SortedLongSet without(long value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return this;
+        }
+        long[] copy = new long[values.length - 1];
+        System.arraycopy(values, 0, copy, 0, index);
+        System.arraycopy(values, index + 1, copy, index, values.length - index - 1);
+        return new SortedLongSet(copy);
+    }
+
+    /**
+     * Returns the set without its {@code count} smallest values.
+     */
+    public SortedLongSet withoutSmallest(int count) {
+        if (count <= 0) {
+            return this;
+        }
+        return count >= values.length ? EMPTY : new SortedLongSet(Arrays.copyOfRange(values, count, values.length));
+    }
+}
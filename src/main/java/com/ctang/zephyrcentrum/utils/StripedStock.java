@@ -0,0 +1,148 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A stock count split over several stripes, so concurrent takers mostly
+ * update different memory instead of all retrying a compare-and-set on one
+ * hot counter.
+ *
+ * A take first tries the caller's own stripe, then the others, each with a
+ * compare-and-set that never lets a stripe go below zero; only when no
+ * single stripe has enough does it lock, gather every stripe, top the total
+ * up through a {@link Refill} if asked to and spread what is left evenly
+ * again. Units are always either in one stripe or taken, so the stock can
+ * never be oversold, and a refused take has seen every unit there was.
+ *
+ * Stripes are spaced a cache line apart in one {@link AtomicIntegerArray}.
+ */
+public final class StripedStock {
+
+    // 16 ints, 64 bytes, between stripes so no two share a cache line
+    private static final int SPACING = 16;
+
+    private final AtomicIntegerArray cells;
+    private final int stripes;
+
+    public StripedStock(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+        }
+        this.stripes = stripes;
+        this.cells = new AtomicIntegerArray(stripes * SPACING);
+    }
+
+    /**
+     * Where a take that found too little stock gets more.
+     */
+    @FunctionalInterface
+    public interface Refill {
+        /**
+         * @param missing how many units the take is short of
+         * @return the units obtained, at least {@code missing} for the take to succeed, or 0 if there are none
+         */
+        int obtain(int missing);
+    }
+
+    /**
+     * Takes units without refilling.
+     *
+     * @return true if the units were taken
+     */
+    public boolean tryTake(int quantity) {
+        return tryTake(quantity, missing -> 0);
+    }
+
+    /**
+     * Takes units, asking the refill for more when the stripes together don't
+     * have enough. The refill is called under this stock's lock, so at most
+     * one caller refills at a time.
+     *
+     * @return true if the units were taken
+     */
+    public boolean tryTake(int quantity, Refill refill) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        int home = home();
+        for (int i = 0; i < stripes; i++) {
+            if (tryTakeFrom((home + i) % stripes, quantity)) {
+                return true;
+            }
+        }
+        return gatherAndTake(quantity, refill);
+    }
+
+    /**
+     * Adds units, spread over the stripes.
+     */
+    public synchronized void add(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity must not be negative: " + quantity);
+        }
+        spread(quantity);
+    }
+
+    /**
+     * Takes every unit left.
+     *
+     * @return the number of units taken
+     */
+    public synchronized int drain() {
+        int total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.getAndSet(i * SPACING, 0);
+        }
+        return total;
+    }
+
+    /**
+     * The units left, which may be out of date by the time it returns.
+     */
+    public int available() {
+        int total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.get(i * SPACING);
+        }
+        return total;
+    }
+
+    private boolean tryTakeFrom(int stripe, int quantity) {
+        int index = stripe * SPACING;
+        int current;
+        do {
+            current = cells.get(index);
+            if (current < quantity) {
+                return false;
+            }
+        } while (!cells.compareAndSet(index, current, current - quantity));
+        return true;
+    }
+
+    private synchronized boolean gatherAndTake(int quantity, Refill refill) {
+        int total = drain();
+        if (total < quantity) {
+            total += refill.obtain(quantity - total);
+        }
+        boolean taken = total >= quantity;
+        spread(taken ? total - quantity : total);
+        return taken;
+    }
+
+    private void spread(int quantity) {
+        int share = quantity / stripes;
+        int remainder = quantity % stripes;
+        for (int i = 0; i < stripes; i++) {
+            int units = share + (i < remainder ? 1 : 0);
+            if (units > 0) {
+                cells.addAndGet(i * SPACING, units);
+            }
+        }
+    }
+
+    private int home() {
+        long id = Thread.currentThread().threadId();
+        // Spreads consecutive thread ids over the stripes
+        return (int) Math.floorMod(id * 0x9E3779B97F4A7C15L >>> 32, stripes);
+    }
+}
@@ -0,0 +1,138 @@
+package com.ctang.zephyrcentrum.utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The newest entries of one user's home timeline, held in a fixed-size ring
+ * ordered by {@code (createdDate DESC, postId DESC)}.
+ *
+ * New posts normally arrive newest-first and are written in front of the
+ * head in O(1); when the ring is full the oldest entry is overwritten. An
+ * entry that arrives out of order is inserted in place. Once an entry has
+ * been dropped the ring no longer holds the whole timeline, and pages that
+ * reach past its oldest entry have to be read from the backing table.
+ */
+public class TimelineRing {
+
+    public record Entry(long postId, LocalDateTime createdDate) {
+    }
+
+    private final long[] postIds;
+    private final LocalDateTime[] createdDates;
+    private int head;
+    private int size;
+    private boolean complete;
+
+    /**
+     * @param capacity the maximum number of entries to hold
+     * @param newestFirst the initial entries, newest first, at most {@code capacity}
+     * @param complete true if the initial entries are the user's whole timeline
+     */
+    public TimelineRing(int capacity, List<Entry> newestFirst, boolean complete) {
+        this.postIds = new long[capacity];
+        this.createdDates = new LocalDateTime[capacity];
+        this.complete = complete;
+        for (Entry entry : newestFirst) {
+            if (size == capacity) {
+                this.complete = false;
+                break;
+            }
+            postIds[size] = entry.postId();
+            createdDates[size] = entry.createdDate();
+            size++;
+        }
+    }
+
+    /**
+     * Adds a post to the timeline, ignoring posts that are already in it.
+     */
+    public synchronized void add(long postId, LocalDateTime createdDate) {
+        int position = 0;
+        while (position < size && isNewer(at(position), postId, createdDate)) {
+            position++;
+        }
+        for (int i = position; i < size; i++) {
+            if (postIds[slot(i)] == postId) {
+                return;
+            }
+        }
+        if (size == postIds.length) {
+            complete = false;
+            if (position == size) {
+                return; // Older than everything we keep
+            }
+        } else {
+            size++;
+        }
+
+        // Move the head back one slot and shift the newer entries into it
+        head = Math.floorMod(head - 1, postIds.length);
+        for (int i = 0; i < position; i++) {
+            postIds[slot(i)] = postIds[slot(i + 1)];
+            createdDates[slot(i)] = createdDates[slot(i + 1)];
+        }
+        postIds[slot(position)] = postId;
+        createdDates[slot(position)] = createdDate;
+    }
+
+    public synchronized void remove(long postId) {
+        for (int i = 0; i < size; i++) {
+            if (postIds[slot(i)] == postId) {
+                for (int j = i; j < size - 1; j++) {
+                    postIds[slot(j)] = postIds[slot(j + 1)];
+                    createdDates[slot(j)] = createdDates[slot(j + 1)];
+                }
+                createdDates[slot(size - 1)] = null;
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a page of entries strictly after the cursor.
+     *
+     * @param before the position to read after, or null for the newest entries
+     * @param limit the maximum number of entries to return
+     * @return the page, newest first, or null if the ring can't tell whether
+     *         older entries exist and the page must be read from the table
+     */
+    public synchronized List<Entry> page(KeysetCursor before, int limit) {
+        List<Entry> page = new ArrayList<>(Math.min(limit, size));
+        for (int i = 0; i < size && page.size() < limit; i++) {
+            Entry entry = at(i);
+            if (before == null || isNewer(before, entry)) {
+                page.add(entry);
+            }
+        }
+        if (page.size() < limit && !complete) {
+            return null;
+        }
+        return page;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private Entry at(int position) {
+        int slot = slot(position);
+        return new Entry(postIds[slot], createdDates[slot]);
+    }
+
+    private int slot(int position) {
+        return (head + position) % postIds.length;
+    }
+
+    private static boolean isNewer(Entry entry, long postId, LocalDateTime createdDate) {
+        int byDate = entry.createdDate().compareTo(createdDate);
+        return byDate > 0 || (byDate == 0 && entry.postId() > postId);
+    }
+
+    private static boolean isNewer(KeysetCursor cursor, Entry entry) {
+        int byDate = cursor.timestamp().compareTo(entry.createdDate());
+        return byDate > 0 || (byDate == 0 && cursor.id() > entry.postId());
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 
 import com.ctang.zephyrcentrum.models.User;
-import com.ctang.zephyrcentrum.repositories.UserRepository;
+import com.ctang.zephyrcentrum.services.UserExistenceFilter;
 import com.ctang.zephyrcentrum.types.Roles;
 
 import java.util.Arrays;
@@ -17,12 +17,12 @@ import java.util.regex.Pattern;
 @Component
 public class UserUpdateValidator implements Validator, FieldUpdateValidator {
     
-    private final UserRepository userRepository;
+    private final UserExistenceFilter userExistenceFilter;
     private static final Pattern EMAIL_PATTERN = 
         Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
     
-    public UserUpdateValidator(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public UserUpdateValidator(UserExistenceFilter userExistenceFilter) {
+        this.userExistenceFilter = userExistenceFilter;
     }
 
     @Override
@@ -86,7 +86,7 @@ public class UserUpdateValidator implements Validator, FieldUpdateValidator {
         }
         
         // Check if username is already taken by another user
-        Optional<User> existingUser = userRepository.findByUsername(username);
+        Optional<User> existingUser = userExistenceFilter.findByUsername(username);
         if (existingUser.isPresent() && !existingUser.get().getId().equals(userId)) {
             errors.rejectValue("username", "field.duplicate", "Username is already taken");
         }
@@ -104,7 +104,7 @@ public class UserUpdateValidator implements Validator, FieldUpdateValidator {
         }
         
         // Check if email is already taken by another user
-        Optional<User> existingUser = userRepository.findByEmail(email);
+        Optional<User> existingUser = userExistenceFilter.findByEmail(email);
         if (existingUser.isPresent() && !existingUser.get().getId().equals(userId)) {
             errors.rejectValue("email", "field.duplicate", "Email is already taken");
         }
@@ -60,7 +60,7 @@ public class CsrfTests {
 			"files", 
 			"test-image.jpg", 
 			"image/jpeg", 
-			"test image content".getBytes()
+			new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0, 1}
 		);
 		
 		mockMvc.perform(multipart("/api/v1/images/upload")
@@ -77,7 +77,7 @@ public class CsrfTests {
 			"files", 
 			"test-image.jpg", 
 			"image/jpeg", 
-			"test image content".getBytes()
+			new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F', 0, 1}
 		);
 		
 		mockMvc.perform(multipart("/api/v1/images/upload")
@@ -0,0 +1,116 @@
+package com.ctang.zephyrcentrum.controllers;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.ImageDerivative;
+import com.ctang.zephyrcentrum.services.ImageDerivativeService;
+import com.ctang.zephyrcentrum.services.ImageServiceImpl;
+import com.ctang.zephyrcentrum.services.UploadSessionService;
+import com.ctang.zephyrcentrum.types.Visibility;
+
+public class ImageControllerTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+    private static final String STORAGE_KEY = "0123456789abcdef0123456789abcdef";
+
+    @Mock
+    private ImageServiceImpl imageService;
+
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
+    @Mock
+    private UploadSessionService uploadSessionService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(new ImageController(imageService, imageDerivativeService, uploadSessionService)).build();
+
+        Image image = new Image();
+        image.setId(1L);
+        image.setContentType("image/png");
+        image.setSize((long) CONTENT.length);
+        image.setStorageKey(STORAGE_KEY);
+        image.setVisibility(Visibility.PUBLIC);
+        image.setUploadDate(LocalDateTime.of(2024, 1, 1, 12, 0));
+
+        when(imageService.getImageById(1L)).thenReturn(Optional.of(image));
+        when(imageService.getImageContent(image)).thenAnswer(invocation -> Optional.of(new ByteArrayResource(CONTENT)));
+    }
+
+    @Test
+    void testGetImageContent() throws Exception {
+        mockMvc.perform(get("/api/v1/images/1/content"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + STORAGE_KEY + "\""))
+            .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+            .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void testGetImageContentRange() throws Exception {
+        mockMvc.perform(get("/api/v1/images/1/content").header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+            .andExpect(content().bytes("2345".getBytes()));
+    }
+
+    @Test
+    void testGetImageContentNotModified() throws Exception {
+        mockMvc.perform(get("/api/v1/images/1/content").header(HttpHeaders.IF_NONE_MATCH, "\"" + STORAGE_KEY + "\""))
+            .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testGetImageContentServesClosestDerivative() throws Exception {
+        ImageDerivative derivative = new ImageDerivative();
+        derivative.setImageId(1L);
+        derivative.setWidth(256);
+        derivative.setContentType("image/png");
+        derivative.setStorageKey("fedcba9876543210fedcba9876543210");
+        when(imageDerivativeService.getClosestDerivative(1L, 200)).thenReturn(Optional.of(derivative));
+        when(imageDerivativeService.getDerivativeContent(derivative))
+            .thenAnswer(invocation -> Optional.of(new ByteArrayResource("thumb".getBytes())));
+
+        mockMvc.perform(get("/api/v1/images/1/content").param("w", "200"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"fedcba9876543210fedcba9876543210\""))
+            .andExpect(content().bytes("thumb".getBytes()));
+    }
+
+    @Test
+    void testGetImageContentFallsBackToOriginal() throws Exception {
+        when(imageDerivativeService.getClosestDerivative(1L, 4096)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/images/1/content").param("w", "4096"))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void testGetImageContentNotFound() throws Exception {
+        when(imageService.getImageById(2L)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/images/2/content"))
+            .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,109 @@
+package com.ctang.zephyrcentrum.controllers;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+import com.ctang.zephyrcentrum.services.CommentService;
+import com.ctang.zephyrcentrum.services.LikeService;
+import com.ctang.zephyrcentrum.services.PostService;
+import com.ctang.zephyrcentrum.services.TimelineService;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+
+public class SocialControllerTest {
+
+    private static final LocalDateTime SAME_INSTANT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private PostService postService;
+
+    @Mock
+    private CommentService commentService;
+
+    @Mock
+    private TimelineService timelineService;
+
+    @Mock
+    private LikeService likeService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        mockMvc = MockMvcBuilders.standaloneSetup(
+            new SocialController(postService, commentService, timelineService, likeService)).build();
+    }
+
+    @Test
+    void testFullFeedPagePointsAtTheNextPage() throws Exception {
+        when(postService.getFeed(null, 2)).thenReturn(posts(5, 4));
+
+        mockMvc.perform(get("/api/v1/social/posts").param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(header().string("X-Next-Cursor", new KeysetCursor(SAME_INSTANT, 4L).toString()));
+    }
+
+    @Test
+    void testLastFeedPageHasNoCursor() throws Exception {
+        KeysetCursor cursor = new KeysetCursor(SAME_INSTANT, 4L);
+        when(postService.getFeed(cursor, 2)).thenReturn(posts(3));
+
+        mockMvc.perform(get("/api/v1/social/posts").param("before", cursor.toString()).param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void testFeedPageSizeIsClamped() throws Exception {
+        when(postService.getFeed(any(), anyInt())).thenReturn(List.of());
+
+        mockMvc.perform(get("/api/v1/social/posts").param("limit", "100000")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/social/posts").param("limit", "-3")).andExpect(status().isOk());
+
+        verify(postService).getFeed(null, 100);
+        verify(postService).getFeed(null, 1);
+    }
+
+    @Test
+    void testMalformedFeedCursorIsRejected() throws Exception {
+        mockMvc.perform(get("/api/v1/social/posts").param("before", "yesterday"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/social/users/1/timeline").param("before", "2024-01-01T12:00,x"))
+            .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(postService, timelineService);
+    }
+
+    @Test
+    void testTimelinePassesTheCursorThrough() throws Exception {
+        KeysetCursor cursor = new KeysetCursor(SAME_INSTANT, 9L);
+        when(timelineService.getHomeTimeline(1L, cursor, 1)).thenReturn(posts(8));
+
+        mockMvc.perform(get("/api/v1/social/users/1/timeline").param("before", cursor.toString()).param("limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Next-Cursor", new KeysetCursor(SAME_INSTANT, 8L).toString()));
+    }
+
+    private static List<PostFeedItem> posts(long... ids) {
+        return IntStream.range(0, ids.length)
+            .mapToObj(i -> new PostFeedItem(ids[i], "post " + ids[i], SAME_INSTANT, 1L, "author"))
+            .sorted(Comparator.comparing(PostFeedItem::id).reversed())
+            .toList();
+    }
+}
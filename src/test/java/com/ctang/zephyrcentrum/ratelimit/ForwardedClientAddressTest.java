@@ -0,0 +1,80 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.embedded.EmbeddedWebServerFactoryCustomizerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Runs an embedded server with the forwarded-header settings of
+ * application.yml and checks which client anonymous requests are limited as.
+ * The test client connects from 127.0.0.1, which stands in for the load balancer.
+ */
+@SpringBootTest(classes = ForwardedClientAddressTest.ClientEndpoint.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ForwardedClientAddressTest {
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void testDirectRequestsUseTheRemoteAddress() throws Exception {
+        assertEquals("ip:127.0.0.1", clientOf(null));
+    }
+
+    @Test
+    void testTrustedProxiesForwardTheClientAddress() throws Exception {
+        assertEquals("ip:203.0.113.7", clientOf("203.0.113.7"));
+        // Through a second internal hop
+        assertEquals("ip:203.0.113.7", clientOf("203.0.113.7, 10.0.0.5"));
+    }
+
+    @Test
+    void testClientsCantChooseTheirOwnAddress() throws Exception {
+        // The client sent "198.51.100.9" itself; the load balancer appended the address it saw
+        assertEquals("ip:203.0.113.7", clientOf("198.51.100.9, 203.0.113.7"));
+    }
+
+    private String clientOf(String forwardedFor) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/client"));
+        if (forwardedFor != null) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Configuration
+    @ImportAutoConfiguration({
+        ServletWebServerFactoryAutoConfiguration.class,
+        EmbeddedWebServerFactoryCustomizerAutoConfiguration.class,
+        DispatcherServletAutoConfiguration.class,
+        WebMvcAutoConfiguration.class,
+        HttpMessageConvertersAutoConfiguration.class
+    })
+    @RestController
+    static class ClientEndpoint {
+
+        @GetMapping("/client")
+        String client(HttpServletRequest request) {
+            return RateLimiterRegistry.clientOf(request);
+        }
+    }
+}
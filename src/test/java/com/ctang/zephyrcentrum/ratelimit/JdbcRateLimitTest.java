@@ -0,0 +1,192 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.config.RateLimitConfig;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs two application contexts, standing in for two instances behind a
+ * load balancer, against one database. The JPA slice only creates the
+ * schema; every statement of the instances commits on its own.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JdbcRateLimitTest {
+
+    private static final int CAPACITY = 100;
+    // A tenth of the capacity, the default lease ratio
+    private static final int LEASE = 10;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @BeforeEach
+    void setUp() {
+        first = startInstance("jdbc");
+        second = startInstance("jdbc");
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.close();
+        second.close();
+        jdbcTemplate.update("DELETE FROM system.rate_limit_buckets");
+    }
+
+    @Test
+    void testInstancesShareOneBucket() {
+        RateLimiterRegistry one = first.getBean(RateLimiterRegistry.class);
+        RateLimiterRegistry two = second.getBean(RateLimiterRegistry.class);
+
+        int allowed = 0;
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            RateLimiterRegistry registry = i % 2 == 0 ? one : two;
+            if (registry.tryConsume(registry.quota("default"), "ip:10.0.0.1", 1).isConsumed()) {
+                allowed++;
+            }
+        }
+
+        // Each instance can only overrun the shared limit by the tokens it leased
+        assertThat(allowed).isBetween(CAPACITY, CAPACITY + 2 * LEASE);
+        // Most requests were decided without the database
+        assertThat(roundTrips(first) + roundTrips(second)).isLessThan(CAPACITY * 2 / 4);
+    }
+
+    @Test
+    void testLocalBackendAllowsTheLimitPerInstance() {
+        ConfigurableApplicationContext local = startInstance("local");
+        try {
+            RateLimiterRegistry one = local.getBean(RateLimiterRegistry.class);
+            RateLimiterRegistry two = first.getBean(RateLimiterRegistry.class);
+            int allowed = 0;
+            for (int i = 0; i < CAPACITY * 2; i++) {
+                if (one.tryConsume(one.quota("default"), "ip:10.0.0.1", 1).isConsumed()) {
+                    allowed++;
+                }
+            }
+            assertThat(allowed).isEqualTo(CAPACITY);
+            // Nothing was taken from the shared bucket
+            assertThat(two.tryConsume(two.quota("default"), "ip:10.0.0.1", CAPACITY).isConsumed()).isTrue();
+        } finally {
+            local.close();
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsOnBothInstances() throws Exception {
+        int threads = 8;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                RateLimiterRegistry registry = (t % 2 == 0 ? first : second).getBean(RateLimiterRegistry.class);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < CAPACITY; i++) {
+                        if (registry.tryConsume(registry.quota("default"), "ip:10.0.0.1", 1).isConsumed()) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            int allowed = 0;
+            for (Future<Integer> future : futures) {
+                allowed += future.get();
+            }
+            assertThat(allowed).isBetween(CAPACITY, CAPACITY + 2 * LEASE);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRefilledBucketsAreDeleted() {
+        RateLimiterRegistry registry = first.getBean(RateLimiterRegistry.class);
+        registry.tryConsume(registry.quota("default"), "ip:10.0.0.1", CAPACITY);
+        JdbcBucketProxyManager proxyManager = first.getBean(JdbcBucketProxyManager.class);
+
+        assertThat(proxyManager.deleteExpired()).isZero();
+        jdbcTemplate.update("UPDATE system.rate_limit_buckets SET expires_at = DATEADD('HOUR', -1, expires_at)");
+        assertThat(proxyManager.deleteExpired()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.rate_limit_buckets", Long.class)).isZero();
+    }
+
+    private ConfigurableApplicationContext startInstance(String backend) {
+        return new SpringApplicationBuilder(Instance.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                // No application.yml, so only these limits apply
+                "spring.config.name=rate-limit-instance",
+                "instance.datasource.url=" + url,
+                "zephyr.rate-limit.backend=" + backend,
+                "zephyr.rate-limit.lease-timeout=10s",
+                "zephyr.rate-limit.policies.default.limits[0].capacity=" + CAPACITY,
+                "zephyr.rate-limit.policies.default.limits[0].refill-tokens=" + CAPACITY,
+                "zephyr.rate-limit.policies.default.limits[0].refill-period=1h")
+            .run();
+    }
+
+    private static double roundTrips(ConfigurableApplicationContext context) {
+        return context.getBean(MeterRegistry.class).get("rate.limit.jdbc.round.trips").counter().count();
+    }
+
+    /**
+     * The rate limiting beans of one instance, with its own connections. Not
+     * a {@code @Configuration}, which the JPA slice would take as its own.
+     */
+    @Import({RateLimitConfig.class, RateLimiterRegistry.class})
+    static class Instance {
+
+        @Bean
+        DataSource dataSource(@Value("${instance.datasource.url}") String url) {
+            return new DriverManagerDataSource(url, "sa", "");
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Backend;
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Limit;
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Policy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RateLimitInterceptorTest {
+
+    private RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterRegistry registry = new RateLimiterRegistry(new RateLimitProperties(Backend.LOCAL, 0.1, Duration.ofMillis(500), 1000, Duration.ofMinutes(10), Map.of(
+            "default", new Policy(List.of(new Limit(10, 10, Duration.ofMinutes(1)))),
+            "reads", new Policy(List.of(new Limit(6, 6, Duration.ofMinutes(1))))
+        )), new SimpleMeterRegistry());
+        interceptor = new RateLimitInterceptor(registry);
+    }
+
+    @Test
+    void testWeightedCostsAndHeaders() throws Exception {
+        MockHttpServletResponse first = handle("findAll", "10.0.0.1");
+        assertEquals(200, first.getStatus());
+        assertEquals("6", first.getHeader("RateLimit-Limit"));
+        assertEquals("1", first.getHeader("RateLimit-Remaining"));
+        assertEquals("6;w=60", first.getHeader("RateLimit-Policy"));
+        assertEquals("50", first.getHeader("RateLimit-Reset"));
+
+        assertEquals(200, handle("findById", "10.0.0.1").getStatus());
+
+        MockHttpServletResponse refused = handle("findById", "10.0.0.1");
+        assertEquals(429, refused.getStatus());
+        assertEquals("0", refused.getHeader("RateLimit-Remaining"));
+        assertEquals("10", refused.getHeader("Retry-After"));
+        assertEquals("10", refused.getHeader("X-Rate-Limit-Retry-After-Seconds"));
+
+        // Another client still has its whole bucket
+        assertEquals(200, handle("findAll", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void testClassAnnotationAppliesToUnannotatedMethods() throws Exception {
+        MockHttpServletResponse response = handle("update", "10.0.0.1");
+        assertEquals(200, response.getStatus());
+        assertEquals("10", response.getHeader("RateLimit-Limit"));
+        assertEquals("9", response.getHeader("RateLimit-Remaining"));
+    }
+
+    @Test
+    void testUnannotatedHandlersAreNotLimited() throws Exception {
+        MockHttpServletRequest request = request("10.0.0.1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = new HandlerMethod(new UnlimitedController(), UnlimitedController.class.getMethod("health"));
+
+        assertTrue(interceptor.preHandle(request, response, handler));
+        assertNull(response.getHeader("RateLimit-Limit"));
+        assertTrue(interceptor.preHandle(request, response, new Object()));
+    }
+
+    @Test
+    void testRejectsCostsAbovePolicyCapacity() throws Exception {
+        HandlerMethod handler = new HandlerMethod(new LimitedController(), LimitedController.class.getMethod("export"));
+        assertThrows(IllegalStateException.class,
+            () -> interceptor.preHandle(request("10.0.0.1"), new MockHttpServletResponse(), handler));
+    }
+
+    /**
+     * Not a rigorous benchmark: checks the best per-request cost of an allowed
+     * request once warmed up stays under a microsecond. Timings on a shared
+     * build machine vary, so it only runs with the benchmark profile.
+     */
+    @Test
+    @Tag("benchmark")
+    void testPerRequestOverhead() throws Exception {
+        HandlerMethod handler = new HandlerMethod(new LimitedController(), LimitedController.class.getMethod("findById"));
+        RateLimiterRegistry registry = new RateLimiterRegistry(new RateLimitProperties(Backend.LOCAL, 0.1, Duration.ofMillis(500), 1000, Duration.ofMinutes(10), Map.of(
+            "default", new Policy(List.of(new Limit(1_000_000_000_000L, 1_000_000_000_000L, Duration.ofHours(1)))),
+            "reads", new Policy(List.of(new Limit(1_000_000_000_000L, 1_000_000_000_000L, Duration.ofHours(1))))
+        )), new SimpleMeterRegistry());
+        RateLimitInterceptor unbounded = new RateLimitInterceptor(registry);
+        MockHttpServletRequest request = request("10.0.0.1");
+        NoopResponse response = new NoopResponse();
+
+        int iterations = 200_000;
+        long best = Long.MAX_VALUE;
+        long allowed = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                if (unbounded.preHandle(request, response, handler)) {
+                    allowed++;
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / iterations);
+        }
+        assertEquals(10L * iterations, allowed);
+        assertTrue(best < 1_000, "Rate limit interceptor took " + best + " ns per request");
+    }
+
+    private MockHttpServletResponse handle(String method, String ip) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = new HandlerMethod(new LimitedController(), LimitedController.class.getMethod(method));
+        interceptor.preHandle(request(ip), response, handler);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(ip);
+        return request;
+    }
+
+    @RateLimited
+    static class LimitedController {
+
+        @RateLimited(policy = "reads", cost = 5)
+        public void findAll() {
+        }
+
+        @RateLimited(policy = "reads")
+        public void findById() {
+        }
+
+        public void update() {
+        }
+
+        @RateLimited(policy = "reads", cost = 7)
+        public void export() {
+        }
+    }
+
+    static class UnlimitedController {
+
+        public void health() {
+        }
+    }
+
+    /**
+     * Drops headers, so the benchmark measures the interceptor rather than the mock's header map.
+     */
+    static class NoopResponse extends MockHttpServletResponse {
+
+        @Override
+        public void setHeader(String name, String value) {
+        }
+    }
+}
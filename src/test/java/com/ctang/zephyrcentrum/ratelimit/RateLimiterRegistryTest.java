@@ -0,0 +1,132 @@
+package com.ctang.zephyrcentrum.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Backend;
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Limit;
+import com.ctang.zephyrcentrum.ratelimit.RateLimitProperties.Policy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RateLimiterRegistryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimiterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new RateLimiterRegistry(new RateLimitProperties(Backend.LOCAL, 0.1, Duration.ofMillis(500), 1000, Duration.ofMinutes(10), Map.of(
+            "default", policy(2),
+            "strict", policy(1)
+        )), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testClientsHaveTheirOwnBuckets() {
+        assertTrue(consume("strict", "ip:10.0.0.1", 1));
+        assertFalse(consume("strict", "ip:10.0.0.1", 1));
+
+        // Another client, and the same client under another policy, are unaffected
+        assertTrue(consume("strict", "ip:10.0.0.2", 1));
+        assertTrue(consume("default", "ip:10.0.0.1", 1));
+        assertEquals(1, meterRegistry.get("rate.limit.rejected").tag("policy", "strict").counter().count());
+    }
+
+    @Test
+    void testUnknownPoliciesUseTheDefault() {
+        assertEquals("default", registry.quota("missing").name());
+        assertTrue(consume("missing", "ip:10.0.0.1", 1));
+        assertTrue(consume("default", "ip:10.0.0.1", 1));
+        assertFalse(consume("missing", "ip:10.0.0.1", 1));
+    }
+
+    @Test
+    void testCostsTakeSeveralTokens() {
+        assertFalse(consume("default", "ip:10.0.0.1", 3));
+        assertTrue(consume("default", "ip:10.0.0.1", 2));
+        assertFalse(consume("default", "ip:10.0.0.1", 1));
+    }
+
+    @Test
+    void testQuotaDescribesThePolicy() {
+        RateLimiterRegistry burst = new RateLimiterRegistry(new RateLimitProperties(Backend.LOCAL, 0.1, Duration.ofMillis(500), 1000, Duration.ofMinutes(10), Map.of(
+            "default", new Policy(List.of(
+                new Limit(50, 10, Duration.ofSeconds(1)),
+                new Limit(600, 600, Duration.ofMinutes(1))))
+        )), meterRegistry);
+
+        assertEquals(50, burst.quota("default").limit());
+        assertEquals("50;w=5, 600;w=60", burst.quota("default").policyHeader());
+    }
+
+    @Test
+    void testRejectsMissingDefaultPolicy() {
+        RateLimitProperties properties = new RateLimitProperties(Backend.LOCAL, 0.1, Duration.ofMillis(500), 1000, Duration.ofMinutes(10), Map.of("strict", policy(1)));
+        assertThrows(IllegalStateException.class, () -> new RateLimiterRegistry(properties, meterRegistry));
+    }
+
+    @Test
+    void testClientOf() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("192.0.2.7");
+        assertEquals("ip:192.0.2.7", RateLimiterRegistry.clientOf(request));
+
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken("alice", null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+        assertEquals("user:alice", RateLimiterRegistry.clientOf(request));
+
+        Jwt jwt = Jwt.withTokenValue("token").header("alg", "RS256").subject("alice").claim("userId", 42L).build();
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt, List.of()));
+        assertEquals("user:42", RateLimiterRegistry.clientOf(request));
+    }
+
+    @Test
+    void testPoliciesBindFromApplicationYml() throws Exception {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+            .load("application", new ClassPathResource("application.yml"));
+        StandardEnvironment environment = new StandardEnvironment();
+        sources.forEach(environment.getPropertySources()::addLast);
+
+        RateLimitProperties properties = Binder.get(environment)
+            .bind("zephyr.rate-limit", RateLimitProperties.class)
+            .get();
+
+        assertTrue(properties.policies().containsKey("default"));
+        assertEquals(2, properties.policies().get("social-read").limits().size());
+        assertEquals(Duration.ofSeconds(1), properties.policies().get("social-read").limits().get(0).refillPeriod());
+        new RateLimiterRegistry(properties, meterRegistry);
+    }
+
+    private boolean consume(String policy, String client, long cost) {
+        return registry.tryConsume(registry.quota(policy), client, cost).isConsumed();
+    }
+
+    private static Policy policy(long capacity) {
+        return new Policy(List.of(new Limit(capacity, capacity, Duration.ofMinutes(1))));
+    }
+}
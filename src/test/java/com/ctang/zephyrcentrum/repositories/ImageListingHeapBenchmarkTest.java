@@ -0,0 +1,90 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ctang.zephyrcentrum.models.Image;
+
+/**
+ * Heap allocated per image listing for a user with 1,000 images: loading
+ * every entity, as the listing used to, against one page of summaries.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+public class ImageListingHeapBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageListingHeapBenchmarkTest.class);
+
+    private static final long USER_ID = 1L;
+    private static final int IMAGES = 1_000;
+    private static final int PAGE_SIZE = 50;
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        String description = "d".repeat(200);
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO system.images (name, content_type, size, description, upload_date, visibility, storage_key, user_id) "
+                + "VALUES (?, 'image/png', 1024, ?, ?, 'PUBLIC', ?, ?)",
+            IntStream.range(0, IMAGES)
+                .mapToObj(i -> new Object[] {"image-" + i + ".png", description, start.plusMinutes(i), "key-" + i, USER_ID})
+                .toList());
+    }
+
+    @Test
+    public void summaryPage_shouldAllocateLessThanLoadingEveryImage() {
+        long entities = allocatedPerRequest(() -> entityManager.getEntityManager()
+            .createQuery("SELECT i FROM Image i WHERE i.userId = :userId", Image.class)
+            .setParameter("userId", USER_ID)
+            .getResultList());
+        long summaries = allocatedPerRequest(() -> imageRepository.findSummariesByUserId(USER_ID, Limit.of(PAGE_SIZE)));
+
+        log.info("Listing {} images: {} bytes per request as entities, {} bytes for a page of {} summaries",
+            IMAGES, entities, summaries, PAGE_SIZE);
+        assertThat(summaries).isLessThan(entities / 4);
+    }
+
+    private long allocatedPerRequest(Supplier<List<?>> request) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // Warm up the query plan cache before measuring
+        for (int i = 0; i < 3; i++) {
+            request.get();
+            entityManager.clear();
+        }
+        long total = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            assertThat(request.get()).isNotEmpty();
+            total += threads.getCurrentThreadAllocatedBytes() - before;
+            entityManager.clear();
+        }
+        return total / ROUNDS;
+    }
+}
@@ -0,0 +1,96 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ctang.zephyrcentrum.models.User;
+
+/**
+ * Feed page latency over 1M seeded posts, at the top of the feed and deep
+ * into it. With the keyset cursor on posts(created_date, id) a page deep in
+ * the feed should cost about the same as the first one.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+public class PostFeedBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PostFeedBenchmarkTest.class);
+
+    private static final int POSTS = 1_000_000;
+    private static final int PAGE_SIZE = 50;
+    private static final int ROUNDS = 50;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        User author = new User();
+        author.setUsername("author");
+        author.setEmail("author@example.com");
+        entityManager.persistAndFlush(author);
+        jdbcTemplate.update("INSERT INTO system.posts (user_id, content, created_date) "
+            + "SELECT ?, 'post ' || \"X\", DATEADD('SECOND', \"X\", TIMESTAMP '2024-01-01 00:00:00') "
+            + "FROM SYSTEM_RANGE(1, ?)", author.getId(), POSTS);
+    }
+
+    @Test
+    public void feedBefore_shouldTakeAboutAsLongAtAnyDepth() {
+        long first = medianNanos(0);
+        long middle = medianNanos(POSTS / 2);
+        long deepest = medianNanos(POSTS - PAGE_SIZE);
+
+        log.info("Feed page of {} over {} posts: {} us at the top, {} us halfway, {} us at the end",
+            PAGE_SIZE, POSTS, first / 1_000, middle / 1_000, deepest / 1_000);
+        // Generous bound; an OFFSET scan over 1M rows is orders of magnitude slower
+        long bound = Math.max(first * 10, 5_000_000);
+        assertThat(middle).isLessThan(bound);
+        assertThat(deepest).isLessThan(bound);
+    }
+
+    /**
+     * Median time to fetch the page after the post at the given depth.
+     */
+    private long medianNanos(int depth) {
+        Object[] cursor = jdbcTemplate.queryForObject(
+            "SELECT created_date, id FROM system.posts ORDER BY created_date DESC, id DESC OFFSET ? ROWS FETCH NEXT 1 ROW ONLY",
+            (rs, rowNum) -> new Object[] {rs.getTimestamp(1), rs.getLong(2)}, depth);
+        LocalDateTime createdDate = ((Timestamp) cursor[0]).toLocalDateTime();
+        Long id = (Long) cursor[1];
+
+        long[] samples = new long[ROUNDS];
+        for (int i = -5; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            int size = postRepository.findFeedBefore(createdDate, id, Limit.of(PAGE_SIZE)).size();
+            long elapsed = System.nanoTime() - start;
+            assertThat(size).isPositive();
+            // The first few rounds warm up the query plan
+            if (i >= 0) {
+                samples[i] = elapsed;
+            }
+        }
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2];
+    }
+}
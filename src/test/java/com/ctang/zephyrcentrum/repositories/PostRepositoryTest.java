@@ -0,0 +1,66 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+
+@DataJpaTest
+public class PostRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void findFeedBefore_shouldPageThroughPostsWithEqualTimestamps() {
+        User author = new User();
+        author.setUsername("author");
+        author.setEmail("author@example.com");
+        entityManager.persist(author);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Post post = new Post();
+            post.setUser(author);
+            post.setContent("post " + i);
+            entityManager.persist(post);
+            ids.add(post.getId());
+        }
+        entityManager.flush();
+        // Posted within the same instant, only the id breaks the tie
+        LocalDateTime sameInstant = LocalDateTime.of(2024, 1, 1, 12, 0);
+        jdbcTemplate.update("UPDATE system.posts SET created_date = ?", sameInstant);
+        jdbcTemplate.update("UPDATE system.posts SET created_date = ? WHERE id = ?", sameInstant.plusSeconds(1), ids.get(0));
+        entityManager.clear();
+
+        List<Long> paged = new ArrayList<>();
+        List<PostFeedItem> page = postRepository.findFeed(Limit.of(3));
+        while (!page.isEmpty()) {
+            page.forEach(post -> paged.add(post.id()));
+            PostFeedItem last = page.get(page.size() - 1);
+            page = postRepository.findFeedBefore(last.createdDate(), last.id(), Limit.of(3));
+        }
+
+        // Newest first, then by descending id, every post exactly once
+        List<Long> expected = new ArrayList<>(ids.subList(1, ids.size()).reversed());
+        expected.add(0, ids.get(0));
+        assertThat(paged).containsExactlyElementsOf(expected);
+    }
+}
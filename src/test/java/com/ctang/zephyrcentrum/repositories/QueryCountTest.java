@@ -0,0 +1,196 @@
+package com.ctang.zephyrcentrum.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import com.ctang.zephyrcentrum.models.Comment;
+import com.ctang.zephyrcentrum.models.Item;
+import com.ctang.zephyrcentrum.models.Like;
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.Purchase;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeItem;
+import com.ctang.zephyrcentrum.utils.CommentPath;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Asserts how many SQL statements each listing takes, including serializing
+ * the result the way the controllers do, so a lazy association that slips
+ * out of its entity graph shows up as a failing count rather than N+1 in production.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class QueryCountTest {
+
+    private static final int USERS = 5;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private LikeRepository likeRepository;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private Statistics statistics;
+    private User buyer;
+    private Post post;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        buyer = user("buyer");
+        post = post(buyer, "root");
+        Comment previous = null;
+        for (int i = 0; i < USERS; i++) {
+            User author = user("author" + i);
+            post(author, "post " + i);
+
+            // Every comment replies to the one before it, from a different author
+            Comment comment = new Comment();
+            comment.setPost(post);
+            comment.setUser(author);
+            comment.setContent("comment " + i);
+            comment.setParentComment(previous);
+            entityManager.persist(comment);
+            comment.setPath(CommentPath.child(previous == null ? null : previous.getPath(), comment.getId()));
+            comment.setDepth(i);
+            previous = comment;
+
+            Like like = new Like();
+            like.setPost(post);
+            like.setUser(author);
+            entityManager.persist(like);
+
+            Item item = new Item();
+            item.setName("item " + i);
+            item.setPrice(BigDecimal.TEN);
+            entityManager.persist(item);
+
+            Purchase purchase = new Purchase();
+            purchase.setUser(buyer);
+            purchase.setItem(item);
+            purchase.setQuantity(1);
+            purchase.setPurchasePrice(BigDecimal.TEN);
+            entityManager.persist(purchase);
+        }
+
+        // Start every listing from an empty persistence context, like a new request
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    public void commentsForPost_shouldLoadAuthorsAndParentsInOneStatement() throws Exception {
+        List<Comment> comments = commentRepository.findByPostId(post.getId());
+        objectMapper.writeValueAsString(comments);
+
+        assertThat(comments).hasSize(USERS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void allComments_shouldLoadAuthorsAndParentsInOneStatement() throws Exception {
+        List<Comment> comments = commentRepository.findAll();
+        objectMapper.writeValueAsString(comments);
+
+        assertThat(comments).hasSize(USERS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void commentThread_shouldLoadInOneStatementInThreadOrder() {
+        List<CommentTreeItem> thread = commentRepository.findThread(
+            post.getId(), "", "", CommentPath.upperBound(""), Integer.MAX_VALUE, Limit.of(100));
+
+        assertThat(thread).extracting(CommentTreeItem::depth).containsExactly(0, 1, 2, 3, 4);
+        assertThat(thread.get(0).parentId()).isNull();
+        assertThat(thread.get(1).parentId()).isEqualTo(thread.get(0).id());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void commentSubtree_shouldOnlyIncludeDescendantsUpToDepth() {
+        List<CommentTreeItem> all = commentRepository.findThread(
+            post.getId(), "", "", CommentPath.upperBound(""), Integer.MAX_VALUE, Limit.of(100));
+        String rootPath = all.get(1).path();
+
+        List<CommentTreeItem> subtree = commentRepository.findThread(
+            post.getId(), rootPath, "", CommentPath.upperBound(rootPath), 2, Limit.of(100));
+
+        assertThat(subtree).extracting(CommentTreeItem::id).containsExactly(all.get(1).id(), all.get(2).id());
+    }
+
+    @Test
+    public void purchasesForUser_shouldLoadItemsInOneStatement() throws Exception {
+        List<Purchase> purchases = purchaseRepository.findByUserOrderByPurchaseDateDesc(buyer);
+        objectMapper.writeValueAsString(purchases);
+
+        assertThat(purchases).hasSize(USERS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void likesForPost_shouldLoadUsersInOneStatement() throws Exception {
+        List<Like> likes = likeRepository.findByPostId(post.getId());
+        objectMapper.writeValueAsString(likes);
+
+        assertThat(likes).hasSize(USERS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void postsForUser_shouldLoadAuthorInOneStatement() throws Exception {
+        List<Post> posts = postRepository.findAllByUserId(buyer.getId());
+        objectMapper.writeValueAsString(posts);
+
+        assertThat(posts).hasSize(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void feed_shouldTakeOneStatement() {
+        assertThat(postRepository.findFeed(Limit.of(10))).hasSize(USERS + 1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        return entityManager.persist(user);
+    }
+
+    private Post post(User author, String content) {
+        Post post = new Post();
+        post.setUser(author);
+        post.setContent(content);
+        return entityManager.persist(post);
+    }
+}
@@ -0,0 +1,120 @@
+package com.ctang.zephyrcentrum.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.ctang.zephyrcentrum.services.AuthenticationService;
+import com.ctang.zephyrcentrum.services.UserChangedEvent;
+
+public class JwtAuthenticationCacheTest {
+
+    @Mock
+    private AuthenticationService authenticationService;
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    private JwtAuthenticationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cache = new JwtAuthenticationCache(authenticationService, userDetailsService, true, 100, 60_000);
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(
+            new User("alice", "hash", List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    @Test
+    void testVerifiesEachTokenOnce() {
+        givenToken("token", "alice", Instant.now().plus(1, ChronoUnit.HOURS));
+
+        Authentication first = cache.authenticate("token");
+        Authentication second = cache.authenticate("token");
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals("alice", second.getName());
+        verify(authenticationService, times(1)).decodeToken("token");
+        verify(userDetailsService, times(1)).loadUserByUsername("alice");
+    }
+
+    @Test
+    void testUserChangeDropsTheUsersEntries() {
+        givenToken("token", "alice", Instant.now().plus(1, ChronoUnit.HOURS));
+        cache.authenticate("token");
+
+        cache.onUserChanged(new UserChangedEvent("alice"));
+        when(userDetailsService.loadUserByUsername("alice")).thenThrow(new UsernameNotFoundException("alice"));
+
+        assertNull(cache.authenticate("token"));
+        verify(authenticationService, times(2)).decodeToken("token");
+    }
+
+    @Test
+    void testOtherUsersChangesKeepTheEntry() {
+        givenToken("token", "alice", Instant.now().plus(1, ChronoUnit.HOURS));
+        cache.authenticate("token");
+
+        cache.onUserChanged(new UserChangedEvent("bob"));
+
+        assertNotNull(cache.authenticate("token"));
+        verify(authenticationService, times(1)).decodeToken("token");
+    }
+
+    @Test
+    void testEntriesExpireAfterTheMaxAge() throws InterruptedException {
+        // Changes made through other instances only show up once the entry expires
+        cache = new JwtAuthenticationCache(authenticationService, userDetailsService, true, 100, 1);
+        givenToken("token", "alice", Instant.now().plus(1, ChronoUnit.HOURS));
+        cache.authenticate("token");
+
+        Thread.sleep(20);
+        when(userDetailsService.loadUserByUsername("alice")).thenThrow(new UsernameNotFoundException("alice"));
+
+        assertNull(cache.authenticate("token"));
+        verify(authenticationService, times(2)).decodeToken("token");
+    }
+
+    @Test
+    void testTokensWithoutExpiryAreNotCached() {
+        givenToken("token", "alice", null);
+
+        assertNotNull(cache.authenticate("token"));
+        assertNotNull(cache.authenticate("token"));
+        verify(authenticationService, times(2)).decodeToken("token");
+    }
+
+    @Test
+    void testInvalidTokensAreRejected() {
+        when(authenticationService.decodeToken("bad")).thenReturn(null);
+
+        assertNull(cache.authenticate("bad"));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    private void givenToken(String token, String username, Instant expiresAt) {
+        Jwt.Builder jwt = Jwt.withTokenValue(token)
+            .header("alg", "RS256")
+            .subject(username)
+            .issuedAt(Instant.now());
+        if (expiresAt != null) {
+            jwt.expiresAt(expiresAt);
+        }
+        when(authenticationService.decodeToken(token)).thenReturn(jwt.build());
+    }
+}
@@ -0,0 +1,226 @@
+package com.ctang.zephyrcentrum.security;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.ctang.zephyrcentrum.exceptions.PasswordHashingUnavailableException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OffloadingPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<OffloadingPasswordEncoder> encoders = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (OffloadingPasswordEncoder encoder : encoders) {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void testEncodesAndMatchesThroughThePool() {
+        OffloadingPasswordEncoder encoder = newEncoder(new BCryptPasswordEncoder(4), 2, 8, 5000);
+
+        String hash = encoder.encode("s3cret!pass");
+
+        assertTrue(encoder.matches("s3cret!pass", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertEquals(1, meterRegistry.get("security.password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get("security.password.hash").tag("operation", "matches").timer().count());
+    }
+
+    @Test
+    void testRejectsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        OffloadingPasswordEncoder encoder = newEncoder(new BlockingEncoder(started, release), 1, 1, 5000);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> running = callers.submit(() -> encoder.encode("a"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> queued = callers.submit(() -> encoder.encode("b"));
+            while (meterRegistry.get("security.password.queue.depth").gauge().value() < 1) {
+                Thread.onSpinWait();
+            }
+
+            long start = System.nanoTime();
+            assertThrows(PasswordHashingUnavailableException.class, () -> encoder.encode("c"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "Rejection should not wait");
+
+            release.countDown();
+            assertEquals("a", running.get(5, TimeUnit.SECONDS));
+            assertEquals("b", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(1, meterRegistry.get("security.password.rejected").counter().count());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    void testTimesOutSlowHashes() {
+        CountDownLatch release = new CountDownLatch(1);
+        OffloadingPasswordEncoder encoder = newEncoder(new BlockingEncoder(new CountDownLatch(1), release), 1, 1, 100);
+        try {
+            assertThrows(PasswordHashingUnavailableException.class, () -> encoder.encode("a"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * A login storm never hashes on more threads than the pool has, so
+     * requests that don't hash keep the rest of the CPU; the excess logins
+     * are shed with 503s instead of piling up.
+     */
+    @Test
+    void testReadsKeepTheirLatencyDuringALoginStorm() throws Exception {
+        CountingEncoder counting = new CountingEncoder(new BCryptPasswordEncoder(8));
+        OffloadingPasswordEncoder encoder = newEncoder(counting, 1, 4, 2000);
+        String hash = new BCryptPasswordEncoder(8).encode("s3cret!pass");
+
+        measureReads(100);
+        long baseline = p99(measureReads(300));
+        long duringStorm = p99(readsDuringStorm(encoder, hash));
+
+        assertEquals(1, counting.maxConcurrent.get());
+        assertTrue(meterRegistry.get("security.password.rejected").counter().count() > 0);
+        assertTrue(duringStorm < Math.max(100_000_000L, baseline * 20),
+            "Read p99 went from " + baseline / 1000 + "us to " + duringStorm / 1000 + "us");
+    }
+
+    /**
+     * Runs 32 clients logging in back to back and times reads once every
+     * client has had at least one answer. A client turned away backs off
+     * briefly, like one that got a 503 would.
+     */
+    private static long[] readsDuringStorm(PasswordEncoder encoder, String hash) throws Exception {
+        int clients = 32;
+        AtomicBoolean storming = new AtomicBoolean(true);
+        CountDownLatch answered = new CountDownLatch(clients);
+        ExecutorService logins = Executors.newFixedThreadPool(clients);
+        try {
+            for (int i = 0; i < clients; i++) {
+                logins.submit(() -> {
+                    boolean first = true;
+                    while (storming.get()) {
+                        try {
+                            encoder.matches("s3cret!pass", hash);
+                        } catch (PasswordHashingUnavailableException e) {
+                            Thread.sleep(10);
+                        }
+                        if (first) {
+                            answered.countDown();
+                            first = false;
+                        }
+                    }
+                    return null;
+                });
+            }
+            assertTrue(answered.await(60, TimeUnit.SECONDS));
+            return measureReads(300);
+        } finally {
+            storming.set(false);
+            logins.shutdown();
+            assertTrue(logins.awaitTermination(60, TimeUnit.SECONDS));
+        }
+    }
+
+    private OffloadingPasswordEncoder newEncoder(PasswordEncoder delegate, int workers, int queueCapacity, long timeout) {
+        OffloadingPasswordEncoder encoder = new OffloadingPasswordEncoder(delegate, workers, queueCapacity, timeout, meterRegistry);
+        encoders.add(encoder);
+        return encoder;
+    }
+
+    /**
+     * Times a small piece of CPU work standing in for a read endpoint.
+     */
+    private static long[] measureReads(int count) {
+        long[] latencies = new long[count];
+        long sink = 0;
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < 1_000_000; j++) {
+                sink += (j * 31L) ^ sink;
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        // Keeps the loop from being optimized away
+        assertNotEquals(Long.MIN_VALUE, sink);
+        return latencies;
+    }
+
+    private static long p99(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+
+    private static final class CountingEncoder implements PasswordEncoder {
+        private final PasswordEncoder delegate;
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private CountingEncoder(PasswordEncoder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return delegate.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                return delegate.matches(rawPassword, encodedPassword);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class BlockingEncoder implements PasswordEncoder {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        private BlockingEncoder(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
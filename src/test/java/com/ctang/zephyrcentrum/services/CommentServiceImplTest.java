@@ -0,0 +1,156 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+
+import com.ctang.zephyrcentrum.models.Comment;
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.dtos.CommentThread;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeItem;
+import com.ctang.zephyrcentrum.models.dtos.CommentTreeNode;
+import com.ctang.zephyrcentrum.repositories.CommentRepository;
+import com.ctang.zephyrcentrum.utils.CommentPath;
+
+public class CommentServiceImplTest {
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    private CommentServiceImpl commentService;
+
+    private Post post;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        commentService = new CommentServiceImpl(commentRepository, false);
+        post = new Post();
+        post.setId(1L);
+    }
+
+    @Test
+    void testGetCommentThreadNestsReplies() {
+        String a = CommentPath.child(null, 10);
+        String b = CommentPath.child(a, 11);
+        String c = CommentPath.child(b, 12);
+        String d = CommentPath.child(a, 13);
+        String e = CommentPath.child(null, 14);
+        when(commentRepository.findThread(eq(1L), eq(""), eq(""), anyString(), eq(Integer.MAX_VALUE), any(Limit.class)))
+            .thenReturn(List.of(item(10, null, a, 0), item(11, 10L, b, 1), item(12, 11L, c, 2),
+                item(13, 10L, d, 1), item(14, null, e, 0)));
+
+        CommentThread thread = commentService.getCommentThread(1L, null, null, null, 10);
+
+        assertNull(thread.nextCursor());
+        assertEquals(List.of(10L, 14L), ids(thread.comments()));
+        CommentTreeNode first = thread.comments().get(0);
+        assertEquals(List.of(11L, 13L), ids(first.replies()));
+        assertEquals(List.of(12L), ids(first.replies().get(0).replies()));
+    }
+
+    @Test
+    void testGetCommentThreadFullPageHasCursorAndOrphansBecomeRoots() {
+        String a = CommentPath.child(null, 10);
+        String b = CommentPath.child(a, 11);
+        String c = CommentPath.child(a, 12);
+        when(commentRepository.findThread(eq(1L), eq(""), eq(b), anyString(), anyInt(), any(Limit.class)))
+            .thenReturn(List.of(item(12, 10L, c, 1)));
+
+        CommentThread thread = commentService.getCommentThread(1L, null, null, b, 1);
+
+        assertEquals(c, thread.nextCursor());
+        assertEquals(List.of(12L), ids(thread.comments()));
+        assertEquals(10L, thread.comments().get(0).parentId());
+    }
+
+    @Test
+    void testGetCommentThreadScansRootSubtree() {
+        Comment root = comment(20L, null);
+        root.setPath(CommentPath.child(CommentPath.child(null, 5), 20));
+        root.setDepth(1);
+        when(commentRepository.findById(20L)).thenReturn(Optional.of(root));
+        when(commentRepository.findThread(anyLong(), anyString(), anyString(), anyString(), anyInt(), any(Limit.class)))
+            .thenReturn(List.of());
+
+        commentService.getCommentThread(1L, 20L, 2, null, 50);
+
+        verify(commentRepository).findThread(1L, root.getPath(), "", CommentPath.upperBound(root.getPath()), 3, Limit.of(50));
+    }
+
+    @Test
+    void testGetCommentThreadRootFromOtherPost() {
+        Post other = new Post();
+        other.setId(2L);
+        Comment root = comment(20L, null);
+        root.setPost(other);
+        root.setPath(CommentPath.child(null, 20));
+        when(commentRepository.findById(20L)).thenReturn(Optional.of(root));
+
+        assertNull(commentService.getCommentThread(1L, 20L, null, null, 50));
+        verify(commentRepository, never()).findThread(anyLong(), anyString(), anyString(), anyString(), anyInt(), any(Limit.class));
+    }
+
+    @Test
+    void testCreateReplyExtendsParentPath() {
+        Comment parent = comment(7L, null);
+        parent.setPath(CommentPath.child(null, 7));
+        when(commentRepository.findById(7L)).thenReturn(Optional.of(parent));
+        when(commentRepository.save(any(Comment.class))).thenAnswer(invocation -> {
+            Comment saved = invocation.getArgument(0);
+            saved.setId(300L);
+            return saved;
+        });
+
+        Comment reply = new Comment();
+        Comment parentReference = new Comment();
+        parentReference.setId(7L);
+        reply.setParentComment(parentReference);
+
+        Comment saved = commentService.createComment(reply);
+
+        assertSame(post, saved.getPost());
+        assertSame(parent, saved.getParentComment());
+        assertEquals(parent.getPath() + CommentPath.segment(300), saved.getPath());
+        assertEquals(1, saved.getDepth());
+    }
+
+    @Test
+    void testCreateReplyTooDeep() {
+        Comment parent = comment(7L, null);
+        parent.setPath(CommentPath.child(null, 7));
+        parent.setDepth(CommentServiceImpl.MAX_DEPTH);
+        when(commentRepository.findById(7L)).thenReturn(Optional.of(parent));
+
+        Comment reply = new Comment();
+        reply.setParentComment(parent);
+
+        assertThrows(IllegalArgumentException.class, () -> commentService.createComment(reply));
+        verify(commentRepository, never()).save(any());
+    }
+
+    private Comment comment(Long id, Comment parent) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setPost(post);
+        comment.setParentComment(parent);
+        return comment;
+    }
+
+    private static CommentTreeItem item(long id, Long parentId, String path, int depth) {
+        return new CommentTreeItem(id, parentId, path, depth, "comment " + id, null, 1L, "user");
+    }
+
+    private static List<Long> ids(List<CommentTreeNode> nodes) {
+        return nodes.stream().map(CommentTreeNode::id).toList();
+    }
+}
@@ -0,0 +1,113 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.ctang.zephyrcentrum.repositories.ImageBlobRepository;
+import com.ctang.zephyrcentrum.storage.LocalImageBlobStore;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ImageBlobServiceImplTest {
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private ImageBlobRepository imageBlobRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LocalImageBlobStore blobStore;
+    private SimpleMeterRegistry meterRegistry;
+    private ImageBlobServiceImpl imageBlobService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        blobStore = new LocalImageBlobStore(root);
+        meterRegistry = new SimpleMeterRegistry();
+        imageBlobService = new ImageBlobServiceImpl(
+            blobStore, imageBlobRepository, jdbcTemplate, transactionManager, meterRegistry);
+    }
+
+    @Test
+    void testRetainDeduplicatesIdenticalContent() throws IOException {
+        StoredBlob first = imageBlobService.retain(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        StoredBlob second = imageBlobService.retain(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+        assertEquals(first.key(), second.key());
+        assertFalse(first.deduplicated());
+        assertTrue(second.deduplicated());
+        verify(imageBlobRepository, times(2)).addReference(first.key(), 3L);
+        assertEquals(1.0, meterRegistry.get("images.storage.dedup.hits").counter().count());
+        assertEquals(3.0, meterRegistry.get("images.storage.dedup.bytes").counter().count());
+    }
+
+    @Test
+    void testRetainDeletesNewContentWhenReferenceFails() throws IOException {
+        when(imageBlobRepository.addReference(anyString(), anyLong())).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(IllegalStateException.class,
+            () -> imageBlobService.retain(new ByteArrayInputStream(new byte[] {1, 2, 3})));
+        try (var files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testRetainUndoesTheReferenceWhenTheOwnerFails() throws IOException {
+        assertThrows(IllegalStateException.class, () -> imageBlobService.retain(
+            new ByteArrayInputStream(new byte[] {1, 2, 3}),
+            blob -> {
+                throw new IllegalStateException("image deleted");
+            }));
+
+        // The reference is rolled back with the transaction, the new bytes are deleted with it
+        verify(transactionManager).rollback(any());
+        try (var files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testReleaseKeepsSharedContent() throws IOException {
+        StoredBlob blob = imageBlobService.retain(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        when(imageBlobRepository.removeReference(blob.key())).thenReturn(1);
+        when(imageBlobRepository.deleteIfUnreferenced(blob.key())).thenReturn(0);
+
+        imageBlobService.release(blob.key());
+
+        assertTrue(blobStore.exists(blob.key()));
+    }
+
+    @Test
+    void testReleaseDeletesLastReference() throws IOException {
+        StoredBlob blob = imageBlobService.retain(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        when(imageBlobRepository.removeReference(blob.key())).thenReturn(1);
+        when(imageBlobRepository.deleteIfUnreferenced(blob.key())).thenReturn(1);
+
+        imageBlobService.release(blob.key());
+
+        assertFalse(blobStore.exists(blob.key()));
+    }
+}
@@ -0,0 +1,151 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.ImageDerivativeJob;
+import com.ctang.zephyrcentrum.repositories.ImageDerivativeJobRepository;
+import com.ctang.zephyrcentrum.repositories.ImageDerivativeRepository;
+import com.ctang.zephyrcentrum.repositories.ImageRepository;
+import com.ctang.zephyrcentrum.storage.ImageBlobStore;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+import com.ctang.zephyrcentrum.types.JobStatus;
+import com.ctang.zephyrcentrum.types.Visibility;
+
+/**
+ * Runs derivative jobs against a real job table, outside a test transaction,
+ * as if other instances shared it.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ImageDerivativeServiceImplTest {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageDerivativeRepository derivativeRepository;
+
+    @Autowired
+    private ImageDerivativeJobRepository jobRepository;
+
+    private ImageBlobStore imageBlobStore;
+    private ImageBlobService imageBlobService;
+    private ImageDerivativeServiceImpl derivativeService;
+    private Image image;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        imageBlobStore = mock(ImageBlobStore.class);
+        imageBlobService = mock(ImageBlobService.class);
+        when(imageBlobStore.open(anyString())).thenAnswer(invocation -> new ByteArrayInputStream(png(64)));
+        when(imageBlobService.retain(any(InputStream.class))).thenReturn(new StoredBlob("derivative", 10, false));
+        derivativeService = new ImageDerivativeServiceImpl(imageRepository, derivativeRepository, jobRepository,
+            imageBlobStore, imageBlobService, List.of(16), 1, 10, 3, 60_000);
+
+        image = new Image();
+        image.setName("original.png");
+        image.setContentType("image/png");
+        image.setVisibility(Visibility.PUBLIC);
+        image.setStorageKey("original");
+        image = imageRepository.save(image);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        derivativeService.shutdown();
+        jobRepository.deleteAll();
+        derivativeRepository.deleteAll();
+        imageRepository.deleteAll();
+    }
+
+    @Test
+    public void recoverJobs_shouldOnlyRequeueExpiredLeases() throws Exception {
+        ImageDerivativeJob live = runningJob(LocalDateTime.now().plusMinutes(5));
+        ImageDerivativeJob abandoned = runningJob(LocalDateTime.now().minusMinutes(1));
+
+        derivativeService.recoverJobs();
+        derivativeService.shutdown();
+
+        // Still rendered by the instance holding the lease
+        ImageDerivativeJob stillLive = jobRepository.findById(live.getId()).orElseThrow();
+        assertThat(stillLive.getStatus()).isEqualTo(JobStatus.RUNNING);
+        assertThat(stillLive.getLeaseOwner()).isEqualTo("other-instance");
+        ImageDerivativeJob recovered = jobRepository.findById(abandoned.getId()).orElseThrow();
+        assertThat(recovered.getStatus()).isEqualTo(JobStatus.DONE);
+        assertThat(recovered.getLeaseOwner()).isNull();
+        assertThat(derivativeRepository.findByImageIdOrderByWidthAsc(image.getId())).hasSize(1);
+    }
+
+    @Test
+    public void deleteDerivatives_shouldRemoveWhatARunningJobRendersAfterwards() throws Exception {
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch deleted = new CountDownLatch(1);
+        when(imageBlobStore.open(anyString())).thenAnswer(invocation -> {
+            rendering.countDown();
+            deleted.await(10, TimeUnit.SECONDS);
+            return new ByteArrayInputStream(png(64));
+        });
+
+        derivativeService.scheduleDerivatives(image);
+        assertThat(rendering.await(10, TimeUnit.SECONDS)).isTrue();
+        derivativeService.deleteDerivatives(image.getId());
+        imageRepository.deleteById(image.getId());
+        deleted.countDown();
+        derivativeService.shutdown();
+
+        assertThat(derivativeRepository.count()).isZero();
+        assertThat(jobRepository.count()).isZero();
+        verify(imageBlobService, times(1)).release("derivative");
+    }
+
+    @Test
+    public void scheduleDerivatives_shouldSkipTypesThatCantBeDecoded() {
+        image.setContentType("image/webp");
+
+        derivativeService.scheduleDerivatives(image);
+
+        assertThat(jobRepository.count()).isZero();
+    }
+
+    private ImageDerivativeJob runningJob(LocalDateTime leaseExpiresAt) {
+        ImageDerivativeJob job = new ImageDerivativeJob();
+        job.setImageId(image.getId());
+        job.setWidth(16);
+        job.setStatus(JobStatus.RUNNING);
+        job.setLeaseOwner("other-instance");
+        job.setLeaseExpiresAt(leaseExpiresAt);
+        return jobRepository.save(job);
+    }
+
+    private static byte[] png(int width) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, width, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,357 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.ctang.zephyrcentrum.exceptions.UnsupportedImageTypeException;
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.repositories.ImageBlobRepository;
+import com.ctang.zephyrcentrum.repositories.ImageRepository;
+import com.ctang.zephyrcentrum.storage.ImageCache;
+import com.ctang.zephyrcentrum.storage.LocalImageBlobStore;
+import com.ctang.zephyrcentrum.types.Visibility;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ImageServiceImplTest {
+
+    // Larger than the heap surefire gives the tests, see pom.xml
+    private static final long LARGE_UPLOAD_SIZE = 500L * 1024 * 1024;
+    private static final byte[] JPEG_HEADER = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0};
+
+    @TempDir
+    Path root;
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ImageBlobRepository imageBlobRepository;
+
+    @Mock
+    private ImageDerivativeService imageDerivativeService;
+
+    private LocalImageBlobStore blobStore;
+    private SimpleMeterRegistry meterRegistry;
+    private ImageCache imageCache;
+    private ImageServiceImpl imageService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        blobStore = new LocalImageBlobStore(root);
+        meterRegistry = new SimpleMeterRegistry();
+        ImageBlobService imageBlobService = new ImageBlobServiceImpl(
+            blobStore, imageBlobRepository, mock(JdbcTemplate.class),
+            mock(PlatformTransactionManager.class), meterRegistry);
+        imageCache = new ImageCache(blobStore, meterRegistry, 1024 * 1024, 1024, 60_000);
+        imageService = new ImageServiceImpl(
+            imageRepository, blobStore, imageBlobService, imageDerivativeService, imageCache, 4);
+        when(imageRepository.save(any(Image.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(imageRepository.insertAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testStoreImageStreamsLargeUploads() throws IOException {
+        Image image = imageService.storeImage(new GeneratedMultipartFile(LARGE_UPLOAD_SIZE), 1L, null);
+
+        assertEquals("image/jpeg", image.getContentType());
+        assertEquals(LARGE_UPLOAD_SIZE, image.getSize());
+        assertEquals(LARGE_UPLOAD_SIZE, blobStore.getResource(image.getStorageKey()).contentLength());
+    }
+
+    @Test
+    void testStoreImageDetectsContentTypeFromMagicBytes() throws IOException {
+        MockMultipartFile file = new MockMultipartFile(
+            "files", "photo.png", "text/plain", new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0});
+
+        Image image = imageService.storeImage(file, 1L, null);
+
+        assertEquals("image/png", image.getContentType());
+    }
+
+    @Test
+    void testStoreImageRejectsNonImages() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("files", "fake.jpg", "image/jpeg", "not an image".getBytes());
+
+        assertThrows(UnsupportedImageTypeException.class, () -> imageService.storeImage(file, 1L, null));
+        verify(imageRepository, never()).save(any());
+        try (var files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testStoreMultipleImagesInsertsOneBatch() throws IOException {
+        MultipartFile[] files = new MultipartFile[50];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new MockMultipartFile("files", "photo" + i + ".jpg", "image/jpeg", jpeg(i));
+        }
+
+        List<Image> images = imageService.storeMultipleImages(files, 1L);
+
+        assertEquals(files.length, images.size());
+        assertEquals("photo7.jpg", images.get(7).getName());
+        verify(imageRepository, times(1)).insertAll(anyList());
+        verify(imageRepository, never()).save(any());
+        verify(imageDerivativeService, times(files.length)).scheduleDerivatives(any());
+    }
+
+    @Test
+    void testStoreMultipleImagesIsAllOrNothing() throws IOException {
+        MultipartFile[] files = {
+            new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(1)),
+            new MockMultipartFile("files", "b.jpg", "image/jpeg", "not an image".getBytes()),
+            new MockMultipartFile("files", "c.jpg", "image/jpeg", jpeg(3))
+        };
+        when(imageBlobRepository.removeReference(anyString())).thenReturn(1);
+        when(imageBlobRepository.deleteIfUnreferenced(anyString())).thenReturn(1);
+
+        assertThrows(UnsupportedImageTypeException.class, () -> imageService.storeMultipleImages(files, 1L));
+        verify(imageRepository, never()).insertAll(anyList());
+        try (var stored = Files.walk(root)) {
+            assertEquals(0, stored.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testStoreMultipleImagesReleasesBlobsWhenInsertFails() throws IOException {
+        MultipartFile[] files = {
+            new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(1)),
+            new MockMultipartFile("files", "b.jpg", "image/jpeg", jpeg(2))
+        };
+        when(imageRepository.insertAll(anyList())).thenThrow(new IllegalStateException("db down"));
+        when(imageBlobRepository.removeReference(anyString())).thenReturn(1);
+        when(imageBlobRepository.deleteIfUnreferenced(anyString())).thenReturn(1);
+
+        assertThrows(IllegalStateException.class, () -> imageService.storeMultipleImages(files, 1L));
+        try (var stored = Files.walk(root)) {
+            assertEquals(0, stored.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testGetImageByIdIsCached() {
+        Image image = new Image();
+        image.setId(1L);
+        image.setName("a.jpg");
+        image.setVisibility(Visibility.PUBLIC);
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(image));
+
+        assertSame(image, imageService.getImageById(1L).orElseThrow());
+        Image cached = imageService.getImageById(1L).orElseThrow();
+
+        verify(imageRepository, times(1)).findById(1L);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "images").tag("result", "hit").functionCounter().count());
+        // Every read gets its own copy, changing one doesn't leak into the cache
+        assertEquals("a.jpg", cached.getName());
+        cached.setName("changed.jpg");
+        assertEquals("a.jpg", imageService.getImageById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void testOnlyPublicImagesAreCached() {
+        Image image = new Image();
+        image.setId(1L);
+        image.setVisibility(Visibility.PRIVATE);
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(image));
+
+        imageService.getImageById(1L);
+        imageService.getImageById(1L);
+
+        verify(imageRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void testImageInvalidatedWhileLoadingIsNotCached() {
+        Image image = new Image();
+        image.setId(1L);
+        image.setVisibility(Visibility.PUBLIC);
+        // As if the image was updated between reading the row and caching it
+        when(imageRepository.findById(1L)).thenAnswer(invocation -> {
+            imageCache.invalidate(1L);
+            return Optional.of(image);
+        }).thenReturn(Optional.of(image));
+
+        imageService.getImageById(1L);
+        imageService.getImageById(1L);
+        imageService.getImageById(1L);
+
+        verify(imageRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void testGetImageContentIsServedFromCache() throws IOException {
+        Image image = imageService.storeImage(new MockMultipartFile("files", "a.jpg", "image/jpeg", jpeg(1)), 1L, null);
+        image.setId(1L);
+        image.setVisibility(Visibility.PUBLIC);
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(image));
+        image = imageService.getImageById(1L).orElseThrow();
+
+        byte[] first = imageService.getImageContent(image).orElseThrow().getInputStream().readAllBytes();
+        // Served from memory even once the blob is gone
+        blobStore.delete(image.getStorageKey());
+        byte[] second = imageService.getImageContent(image).orElseThrow().getInputStream().readAllBytes();
+
+        assertArrayEquals(jpeg(1), first);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    void testUpdateAndDeleteInvalidateCache() {
+        Image image = new Image();
+        image.setId(1L);
+        image.setUserId(1L);
+        image.setVisibility(Visibility.PUBLIC);
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(image));
+
+        imageService.getImageById(1L);
+        imageService.updateImage(1L, image);
+        imageService.getImageById(1L);
+        imageService.deleteImage(1L);
+        imageService.getImageById(1L);
+
+        // One load per read, the updates and deletes themselves add one each
+        verify(imageRepository, times(5)).findById(1L);
+    }
+
+    @Test
+    void testStoreImageInARolledBackTransactionReleasesTheBlob() throws IOException {
+        Path upload = root.resolve("upload.jpg");
+        Files.write(upload, jpeg(1));
+        TransactionSynchronizationManager.initSynchronization();
+        Image image;
+        try {
+            image = imageService.storeImage(upload, "upload.jpg", 1L, null);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(imageBlobRepository).removeReference(image.getStorageKey());
+        assertFalse(blobStore.exists(image.getStorageKey()));
+    }
+
+    @Test
+    void testUpdateKeepsTheDetectedContentType() {
+        Image stored = new Image();
+        stored.setId(1L);
+        stored.setUserId(1L);
+        stored.setContentType("image/png");
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(stored));
+        Image update = new Image();
+        update.setUserId(1L);
+        update.setName("page.html");
+        update.setContentType("text/html");
+
+        Image updated = imageService.updateImage(1L, update);
+
+        assertEquals("page.html", updated.getName());
+        assertEquals("image/png", updated.getContentType());
+    }
+
+    private static byte[] jpeg(int seed) {
+        byte[] content = new byte[64];
+        System.arraycopy(JPEG_HEADER, 0, content, 0, JPEG_HEADER.length);
+        content[JPEG_HEADER.length] = (byte) seed;
+        return content;
+    }
+
+    /**
+     * An upload of the given size that is generated on the fly, standing in for
+     * a multipart file that the container has spooled to disk.
+     */
+    private static class GeneratedMultipartFile implements MultipartFile {
+
+        private final long size;
+
+        GeneratedMultipartFile(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private long position;
+
+                @Override
+                public int read() {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    return position < JPEG_HEADER.length ? JPEG_HEADER[(int) position++] & 0xFF : (int) (position++ & 0x7F);
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    int count = (int) Math.min(length, size - position);
+                    for (int i = 0; i < count; i++) {
+                        buffer[offset + i] = (byte) read();
+                    }
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "files";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "large.jpg";
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/jpeg";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new UnsupportedOperationException("Uploads must be streamed");
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException("Uploads must be streamed");
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ctang.zephyrcentrum.exceptions.InsufficientStockException;
+import com.ctang.zephyrcentrum.models.Item;
+import com.ctang.zephyrcentrum.models.Purchase;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.repositories.ItemRepository;
+import com.ctang.zephyrcentrum.repositories.PurchaseRepository;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Sells hot items against a real database, outside a test transaction, so
+ * claims and flushes commit like they do in production.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class InventoryLedgerTest {
+
+    private static final int ALLOCATION_SIZE = 10;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path journalDir;
+
+    private User user;
+    private Item item;
+    private InventoryLedger ledger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        user = new User();
+        user.setUsername("buyer");
+        user.setEmail("buyer@example.com");
+        user = userRepository.save(user);
+        item = new Item();
+        item.setName("drop");
+        item.setPrice(new BigDecimal("4.00"));
+        item.setStock(50);
+        item.setHot(true);
+        item = itemRepository.save(item);
+
+        ledger = newLedger();
+        ledger.refreshHotItems();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM system.item_allocations");
+        purchaseRepository.deleteAll();
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void buy_shouldSellFromMemoryAndFlushLater() {
+        Purchase purchase = ledger.buy(user.getId(), item.getId(), 3);
+
+        assertThat(purchase.getId()).isNull();
+        assertThat(purchase.getPurchasePrice()).isEqualByComparingTo("12.00");
+        // One chunk was claimed, the purchase is only in the journal so far
+        assertThat(stock()).isEqualTo(40);
+        assertThat(allocated()).isEqualTo(10);
+        assertThat(purchaseRepository.count()).isZero();
+        assertThat(ledger.available(item.getId())).isEqualTo(7);
+
+        assertThat(ledger.flush()).isEqualTo(1);
+        assertThat(purchaseRepository.count()).isEqualTo(1);
+        assertThat(allocated()).isEqualTo(7);
+    }
+
+    @Test
+    public void buy_shouldLeaveOtherItemsAndUnknownUsersAlone() {
+        item.setHot(false);
+        Item cold = itemRepository.save(item);
+        ledger.itemChanged(cold);
+        assertThat(ledger.buy(user.getId(), cold.getId(), 1)).isNull();
+
+        cold.setHot(true);
+        ledger.itemChanged(itemRepository.save(cold));
+        assertThatThrownBy(() -> ledger.buy(-1L, cold.getId(), 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(stock()).isEqualTo(50);
+    }
+
+    @Test
+    public void updateItem_shouldNotOverwriteStockTheLedgerReturns() {
+        ItemServiceImpl itemService = new ItemServiceImpl(itemRepository, ledger);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ledger.buy(user.getId(), item.getId(), 1);
+        assertThat(stock()).isEqualTo(40);
+
+        // A new price, echoing a stock read before the claim
+        Item update = new Item();
+        update.setName("drop");
+        update.setPrice(new BigDecimal("5.00"));
+        update.setStock(50);
+        transactionTemplate.executeWithoutResult(status -> itemService.updateItem(item.getId(), update));
+        assertThat(stock()).isEqualTo(40);
+        assertThat(ledger.available(item.getId())).isEqualTo(9);
+
+        // No longer hot: the 9 unsold units go back to the row
+        update.setHot(false);
+        transactionTemplate.executeWithoutResult(status -> itemService.updateItem(item.getId(), update));
+        assertThat(stock()).isEqualTo(49);
+        assertThat(ledger.available(item.getId())).isZero();
+
+        ledger.flush();
+        assertThat(purchaseRepository.count()).isEqualTo(1);
+        assertThat(allocated()).isZero();
+    }
+
+    @Test
+    public void buy_shouldClaimUntilTheStockRunsOut() {
+        for (int i = 0; i < 25; i++) {
+            ledger.buy(user.getId(), item.getId(), 2);
+        }
+        assertThatThrownBy(() -> ledger.buy(user.getId(), item.getId(), 1))
+            .isInstanceOf(InsufficientStockException.class);
+        assertThat(stock()).isZero();
+
+        ledger.flush();
+        assertThat(purchaseRepository.count()).isEqualTo(25);
+        assertThat(allocated()).isZero();
+    }
+
+    @Test
+    public void shutdown_shouldReturnUnsoldUnits() throws Exception {
+        ledger.buy(user.getId(), item.getId(), 4);
+
+        ledger.shutdown();
+
+        assertThat(stock()).isEqualTo(46);
+        assertThat(purchaseRepository.count()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.item_allocations", Long.class)).isZero();
+        assertThat(journals()).isEmpty();
+    }
+
+    @Test
+    public void recover_shouldReplayTheJournalOfACrashedRun() throws Exception {
+        ledger.buy(user.getId(), item.getId(), 2);
+        ledger.buy(user.getId(), item.getId(), 1);
+        Path journal = journals().get(0);
+        byte[] flushedEntries = Files.readAllBytes(journal);
+        ledger.flush();
+        ledger.buy(user.getId(), item.getId(), 3);
+        // As if the run died after the flush committed but before the journal was emptied
+        ledger.abandon();
+        byte[] unflushedEntries = Files.readAllBytes(journal);
+        Files.write(journal, flushedEntries);
+        Files.write(journal, unflushedEntries, StandardOpenOption.APPEND);
+
+        // The crashed run's sold and unsold units are all still claimed
+        assertThat(stock()).isEqualTo(40);
+        InventoryLedger restarted = newLedger();
+        assertThat(restarted.recover()).isEqualTo(1);
+
+        assertThat(purchaseRepository.count()).isEqualTo(3);
+        assertThat(purchaseRepository.findAll().stream().mapToInt(Purchase::getQuantity).sum()).isEqualTo(6);
+        assertThat(stock()).isEqualTo(44);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.item_allocations", Long.class)).isZero();
+        assertThat(Files.exists(journal)).isFalse();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void recover_shouldLeaveTheJournalsOfRunningInstancesAlone() throws Exception {
+        ledger.buy(user.getId(), item.getId(), 2);
+        Path journal = journals().get(0);
+
+        // Another instance starting from the same directory
+        InventoryLedger other = newLedger();
+        assertThat(other.recover()).isZero();
+
+        assertThat(Files.exists(journal)).isTrue();
+        assertThat(stock()).isEqualTo(40);
+        assertThat(allocated()).isEqualTo(10);
+        assertThat(ledger.buy(user.getId(), item.getId(), 8)).isNotNull();
+        assertThat(ledger.flush()).isEqualTo(2);
+        assertThat(purchaseRepository.count()).isEqualTo(2);
+        assertThat(allocated()).isZero();
+        other.shutdown();
+    }
+
+    @Test
+    public void flush_shouldPutUnwritablePurchasesBackOnSale() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InventoryLedger ledger = newLedger(ALLOCATION_SIZE, meterRegistry);
+        ledger.refreshHotItems();
+        User leaving = new User();
+        leaving.setUsername("leaving");
+        leaving.setEmail("leaving@example.com");
+        leaving = userRepository.save(leaving);
+        ledger.buy(user.getId(), item.getId(), 2);
+        ledger.buy(leaving.getId(), item.getId(), 3);
+        // Deleted before its confirmed purchase was written
+        userRepository.deleteById(leaving.getId());
+
+        assertThat(ledger.flush()).isEqualTo(2);
+
+        assertThat(purchaseRepository.count()).isEqualTo(1);
+        assertThat(meterRegistry.get("items.hot.purchases.dropped").counter().count()).isEqualTo(1);
+        assertThat(stock()).isEqualTo(43);
+        assertThat(allocated()).isEqualTo(5);
+        ledger.shutdown();
+        assertThat(stock()).isEqualTo(48);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.item_allocations", Long.class)).isZero();
+    }
+
+    @Test
+    public void concurrentBuyers_shouldNeverOversell() throws Exception {
+        int units = 20_000;
+        int attempts = 40_000;
+        int threads = 16;
+        item.setStock(units);
+        itemRepository.save(item);
+        // Claims in the default chunks, so nearly every purchase is decided in memory
+        InventoryLedger ledger = newLedger(1000);
+        ledger.refreshHotItems();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger bought = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (next.getAndIncrement() < attempts) {
+                        try {
+                            ledger.buy(user.getId(), item.getId(), 1);
+                            bought.incrementAndGet();
+                        } catch (InsufficientStockException e) {
+                            // Sold out
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(bought.get()).isEqualTo(units);
+        ledger.flush();
+        assertThat(purchaseRepository.count()).isEqualTo(units);
+        assertThat(stock()).isZero();
+        assertThat(allocated()).isZero();
+    }
+
+    private InventoryLedger newLedger() throws Exception {
+        return newLedger(ALLOCATION_SIZE);
+    }
+
+    private InventoryLedger newLedger(int allocationSize) throws Exception {
+        return newLedger(allocationSize, new SimpleMeterRegistry());
+    }
+
+    private InventoryLedger newLedger(int allocationSize, SimpleMeterRegistry meterRegistry) throws Exception {
+        return new InventoryLedger(itemRepository, userRepository, jdbcTemplate, transactionManager,
+            meterRegistry, journalDir.toString(), 4, allocationSize, 1000, 60_000);
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT stock FROM system.items WHERE id = ?", Integer.class, item.getId());
+    }
+
+    private int allocated() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM system.item_allocations "
+            + "WHERE item_id = ?", Integer.class, item.getId());
+    }
+
+    private List<Path> journals() throws Exception {
+        try (var files = Files.list(journalDir)) {
+            return files.toList();
+        }
+    }
+}
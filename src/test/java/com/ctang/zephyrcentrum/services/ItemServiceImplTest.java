@@ -0,0 +1,95 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.ctang.zephyrcentrum.models.Item;
+import com.ctang.zephyrcentrum.repositories.ItemRepository;
+
+public class ItemServiceImplTest {
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private InventoryLedger inventoryLedger;
+
+    private ItemServiceImpl itemService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        itemService = new ItemServiceImpl(itemRepository, inventoryLedger);
+        when(itemRepository.save(any(Item.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testUpdateWithoutTheFlagKeepsItemHot() {
+        Item hot = item(40, true);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(hot));
+
+        itemService.updateItem(1L, item(40, null));
+
+        verify(itemRepository).updateDetails(1L, "drop", new BigDecimal("4.00"), null, true);
+        verify(inventoryLedger).itemChanged(hot);
+    }
+
+    @Test
+    void testUpdateCanClearTheFlag() {
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item(40, true)));
+
+        itemService.updateItem(1L, item(40, false));
+
+        verify(itemRepository).updateDetails(1L, "drop", new BigDecimal("4.00"), null, false);
+    }
+
+    @Test
+    void testStockOfHotItemsIsLeftAlone() {
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item(40, true)));
+
+        itemService.updateItem(1L, item(100, null));
+
+        verify(itemRepository, never()).addStock(anyLong(), anyInt());
+        verify(itemRepository, never()).save(any());
+    }
+
+    @Test
+    void testStockOfOtherItemsIsChangedRelatively() {
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item(40, false)));
+        when(itemRepository.addStock(1L, 60)).thenReturn(1);
+
+        itemService.updateItem(1L, item(100, true));
+
+        verify(itemRepository).updateDetails(1L, "drop", new BigDecimal("4.00"), null, true);
+        verify(itemRepository).addStock(1L, 60);
+        verify(itemRepository, never()).save(any());
+    }
+
+    @Test
+    void testStockCantGoBelowZero() {
+        when(itemRepository.addStock(1L, -50)).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> itemService.updateStock(1L, -50));
+    }
+
+    private static Item item(int stock, Boolean hot) {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("drop");
+        item.setPrice(new BigDecimal("4.00"));
+        item.setStock(stock);
+        item.setHot(hot);
+        return item;
+    }
+}
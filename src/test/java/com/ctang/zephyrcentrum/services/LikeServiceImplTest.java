@@ -0,0 +1,173 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.repositories.LikeRepository;
+import com.ctang.zephyrcentrum.repositories.PostRepository;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+
+/**
+ * Runs likes against a real database, outside a test transaction, so every
+ * statement commits on its own like it does in production.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class LikeServiceImplTest {
+
+    @Autowired
+    private LikeRepository likeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    /** Sums the deltas the service reports, standing in for the post_stats counter */
+    private final AtomicLong likeCount = new AtomicLong();
+
+    private LikeServiceImpl likeService;
+    private LikeServiceImpl recentOnlyLikeService;
+    private User user;
+    private Post post;
+
+    @BeforeEach
+    void setUp() {
+        likeService = newLikeService(true, 1000);
+        recentOnlyLikeService = newLikeService(true, 2);
+
+        user = new User();
+        user.setUsername("liker");
+        user.setEmail("liker@example.com");
+        user = userRepository.save(user);
+        post = new Post();
+        post.setUser(user);
+        post.setContent("likeable");
+        post = postRepository.save(post);
+    }
+
+    @AfterEach
+    void tearDown() {
+        likeRepository.deleteAll();
+        postRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void likeAndUnlike_shouldOnlyCountRealTransitions() {
+        assertThat(likeService.likePost(user.getId(), post.getId())).isTrue();
+        assertThat(likeService.likePost(user.getId(), post.getId())).isFalse();
+        assertThat(likeCount.get()).isEqualTo(1);
+        assertThat(likeService.isPostLiked(user.getId(), post.getId())).isTrue();
+
+        assertThat(likeService.unlikePost(user.getId(), post.getId())).isTrue();
+        assertThat(likeService.unlikePost(user.getId(), post.getId())).isFalse();
+        assertThat(likeCount.get()).isZero();
+        assertThat(likeService.isPostLiked(user.getId(), post.getId())).isFalse();
+    }
+
+    @Test
+    public void likedPostIds_shouldMatchTheDatabaseWithAndWithoutCache() {
+        List<Long> postIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Post other = new Post();
+            other.setUser(user);
+            other.setContent("post " + i);
+            postIds.add(postRepository.save(other).getId());
+        }
+        LikeServiceImpl uncached = newLikeService(false, 0);
+
+        // Warm the caches before liking, so they have to follow the changes
+        assertThat(likeService.likedPostIds(user.getId(), postIds)).isEmpty();
+        assertThat(recentOnlyLikeService.likedPostIds(user.getId(), postIds)).isEmpty();
+        for (int i = 0; i < 4; i++) {
+            likeService.likePost(user.getId(), postIds.get(i));
+            recentOnlyLikeService.likePost(user.getId(), postIds.get(i));
+        }
+        likeService.unlikePost(user.getId(), postIds.get(1));
+        recentOnlyLikeService.unlikePost(user.getId(), postIds.get(1));
+
+        Set<Long> expected = Set.of(postIds.get(0), postIds.get(2), postIds.get(3));
+        assertThat(uncached.likedPostIds(user.getId(), postIds)).isEqualTo(expected);
+        assertThat(likeService.likedPostIds(user.getId(), postIds)).isEqualTo(expected);
+        // Only remembers the two newest likes, the older one comes from the database
+        assertThat(recentOnlyLikeService.likedPostIds(user.getId(), postIds)).isEqualTo(expected);
+        assertThat(newLikeService(true, 2).likedPostIds(user.getId(), postIds)).isEqualTo(expected);
+    }
+
+    @Test
+    public void concurrentToggling_shouldKeepCountExact() throws Exception {
+        int threads = 16;
+        int togglesPerThread = 200;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < togglesPerThread; i++) {
+                        if (ThreadLocalRandom.current().nextBoolean()) {
+                            likeService.likePost(user.getId(), post.getId());
+                        } else {
+                            likeService.unlikePost(user.getId(), post.getId());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long rows = likeRepository.findByPostId(post.getId()).size();
+        assertThat(rows).isBetween(0L, 1L);
+        assertThat(likeCount.get()).isEqualTo(rows);
+    }
+
+    private LikeServiceImpl newLikeService(boolean cacheEnabled, int maxPostsPerUser) {
+        return new LikeServiceImpl(likeRepository, new PostStatsService() {
+            @Override
+            public void addLikes(Long postId, long delta) {
+                likeCount.addAndGet(delta);
+            }
+
+            @Override
+            public long getLikeCount(Long postId) {
+                return likeCount.get();
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public int reconcile() {
+                return 0;
+            }
+        }, cacheEnabled, 100, maxPostsPerUser, 60_000);
+    }
+}
@@ -0,0 +1,144 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+
+import com.ctang.zephyrcentrum.repositories.PostStatsRepository;
+
+public class PostStatsServiceImplTest {
+
+    @Mock
+    private PostStatsRepository postStatsRepository;
+
+    private PostStatsServiceImpl postStatsService;
+
+    /** What the counter table would hold after every successful flush */
+    private final Map<Long, Long> stored = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        postStatsService = new PostStatsServiceImpl(postStatsRepository, false, 10_000);
+        doAnswer(this::store).when(postStatsRepository).addLikeCounts(anyMap());
+        when(postStatsRepository.findLikeCountByPostId(anyLong()))
+            .thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<Long>getArgument(0))));
+    }
+
+    @Test
+    void testReadsIncludeUnflushedLikes() {
+        postStatsService.addLikes(1L, 1);
+        postStatsService.addLikes(1L, 1);
+        postStatsService.addLikes(1L, -1);
+
+        assertEquals(1, postStatsService.getLikeCount(1L));
+        verify(postStatsRepository, never()).addLikeCounts(anyMap());
+
+        postStatsService.flush();
+
+        assertEquals(Map.of(1L, 1L), stored);
+        assertEquals(1, postStatsService.getLikeCount(1L));
+    }
+
+    @Test
+    void testReconcileOnlyRecountsQuietPosts() {
+        LocalDateTime before = LocalDateTime.now();
+
+        postStatsService.reconcile();
+
+        ArgumentCaptor<LocalDateTime> quietSince = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(postStatsRepository).reconcileLikeCounts(quietSince.capture());
+        assertFalse(quietSince.getValue().isBefore(before.minusSeconds(10)));
+        assertFalse(quietSince.getValue().isAfter(LocalDateTime.now().minusSeconds(10)));
+    }
+
+    @Test
+    void testFlushBatchesAllPostsAndSkipsUnchanged() {
+        postStatsService.addLikes(1L, 1);
+        postStatsService.addLikes(2L, 3);
+        postStatsService.flush();
+        postStatsService.flush();
+
+        verify(postStatsRepository, times(1)).addLikeCounts(anyMap());
+        assertEquals(Map.of(1L, 1L, 2L, 3L), stored);
+    }
+
+    @Test
+    void testFailedFlushIsRetried() {
+        doThrow(new RuntimeException("database down")).doAnswer(this::store)
+            .when(postStatsRepository).addLikeCounts(anyMap());
+        postStatsService.addLikes(1L, 2);
+
+        postStatsService.flush();
+        assertTrue(stored.isEmpty());
+        assertEquals(2, postStatsService.getLikeCount(1L));
+
+        postStatsService.flush();
+        assertEquals(Map.of(1L, 2L), stored);
+    }
+
+    @Test
+    void testIdleCountersAreEvictedWithoutLosingLikes() {
+        postStatsService.addLikes(1L, 1);
+        for (int i = 0; i < 5; i++) {
+            postStatsService.flush();
+        }
+        postStatsService.addLikes(1L, 1);
+        postStatsService.flush();
+
+        assertEquals(Map.of(1L, 2L), stored);
+    }
+
+    @Test
+    void testConcurrentLikesAreNotLost() throws Exception {
+        int threads = 8;
+        int likesPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < likesPerThread; i++) {
+                        postStatsService.addLikes(1L + (i % 3), 1);
+                    }
+                }));
+            }
+            // Flush while the likes are still coming in
+            while (futures.stream().anyMatch(f -> !f.isDone())) {
+                postStatsService.flush();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        postStatsService.flush();
+
+        long total = stored.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals((long) threads * likesPerThread, total);
+    }
+
+    private Object store(InvocationOnMock invocation) {
+        Map<Long, Long> deltas = invocation.getArgument(0);
+        deltas.forEach((postId, delta) -> stored.merge(postId, delta, Long::sum));
+        return null;
+    }
+}
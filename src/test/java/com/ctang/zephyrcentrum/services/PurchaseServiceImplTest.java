@@ -0,0 +1,269 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException;
+import com.ctang.zephyrcentrum.exceptions.CheckoutFailedException.LineFailure;
+import com.ctang.zephyrcentrum.exceptions.HotItemCheckoutException;
+import com.ctang.zephyrcentrum.exceptions.InsufficientStockException;
+import com.ctang.zephyrcentrum.models.Item;
+import com.ctang.zephyrcentrum.models.Purchase;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.models.dtos.LineItem;
+import com.ctang.zephyrcentrum.models.dtos.Order;
+import com.ctang.zephyrcentrum.repositories.ItemRepository;
+import com.ctang.zephyrcentrum.repositories.PurchaseRepository;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Buys against a real database, each purchase in its own committed
+ * transaction like in production.
+ */
+@DataJpaTest
+@Import({PurchaseServiceImpl.class, InventoryLedger.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PurchaseServiceImplTest {
+
+    @Autowired
+    private PurchaseService purchaseService;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        users = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User user = new User();
+            user.setUsername("buyer" + i);
+            user.setEmail("buyer" + i + "@example.com");
+            users.add(userRepository.save(user));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        purchaseRepository.deleteAll();
+        itemRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void buyItem_shouldTakeStockAndRecordThePrice() {
+        Item item = newItem(5);
+
+        Purchase purchase = purchaseService.buyItem(users.get(0).getId(), item.getId(), 3);
+
+        assertThat(purchase.getPurchasePrice()).isEqualByComparingTo("7.50");
+        assertThat(purchase.getItem().getStock()).isEqualTo(2);
+        assertThat(itemRepository.findById(item.getId()).orElseThrow().getStock()).isEqualTo(2);
+    }
+
+    @Test
+    public void buyItem_shouldRefuseMoreThanTheStock() {
+        Item item = newItem(2);
+
+        assertThatThrownBy(() -> purchaseService.buyItem(users.get(0).getId(), item.getId(), 3))
+            .isInstanceOfSatisfying(InsufficientStockException.class,
+                e -> assertThat(e.getAvailableQuantity()).isEqualTo(2));
+        assertThat(itemRepository.findById(item.getId()).orElseThrow().getStock()).isEqualTo(2);
+        assertThat(purchaseRepository.count()).isZero();
+    }
+
+    @Test
+    public void buyItem_shouldRejectUnknownIdsAndBadQuantities() {
+        Item item = newItem(2);
+
+        assertThatThrownBy(() -> purchaseService.buyItem(-1L, item.getId(), 1))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> purchaseService.buyItem(users.get(0).getId(), -1L, 1))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> purchaseService.buyItem(users.get(0).getId(), item.getId(), 0))
+            .isInstanceOf(IllegalArgumentException.class);
+        // A negative quantity must not add stock
+        assertThatThrownBy(() -> purchaseService.buyItem(users.get(0).getId(), item.getId(), -5))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(itemRepository.findById(item.getId()).orElseThrow().getStock()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentBuyers_shouldNeverOversell() throws Exception {
+        int stock = 100;
+        int buyers = 400;
+        int threads = 16;
+        Item item = newItem(stock);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger bought = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = next.getAndIncrement(); i < buyers; i = next.getAndIncrement()) {
+                        try {
+                            purchaseService.buyItem(users.get(i % users.size()).getId(), item.getId(), 1);
+                            bought.incrementAndGet();
+                        } catch (InsufficientStockException e) {
+                            refused.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(bought.get()).isEqualTo(stock);
+        assertThat(refused.get()).isEqualTo(buyers - stock);
+        assertThat(itemRepository.findById(item.getId()).orElseThrow().getStock()).isZero();
+        assertThat(purchaseRepository.count()).isEqualTo(stock);
+    }
+
+    @Test
+    public void checkout_shouldBuyEveryLineInOneOrder() {
+        Item first = newItem(5);
+        Item second = newItem(3);
+
+        Order order = purchaseService.checkout(users.get(0).getId(), List.of(
+            new LineItem(second.getId(), 1), new LineItem(first.getId(), 2), new LineItem(second.getId(), 1)));
+
+        // Lines for the same item are merged, purchases come in item id order
+        assertThat(order.purchases()).extracting(p -> p.getItem().getId())
+            .containsExactly(first.getId(), second.getId());
+        assertThat(order.purchases()).extracting(Purchase::getQuantity).containsExactly(2, 2);
+        assertThat(order.purchases()).allSatisfy(p -> assertThat(p.getId()).isNotNull());
+        assertThat(order.total()).isEqualByComparingTo("10.00");
+        assertThat(itemRepository.findById(first.getId()).orElseThrow().getStock()).isEqualTo(3);
+        assertThat(itemRepository.findById(second.getId()).orElseThrow().getStock()).isEqualTo(1);
+        assertThat(purchaseRepository.findAll()).extracting(Purchase::getId)
+            .containsExactlyInAnyOrderElementsOf(order.purchases().stream().map(Purchase::getId).toList());
+    }
+
+    @Test
+    public void checkout_shouldBuyNothingIfAnyLineIsShort() {
+        Item plenty = newItem(5);
+        Item scarce = newItem(1);
+        Item gone = newItem(0);
+
+        assertThatThrownBy(() -> purchaseService.checkout(users.get(0).getId(), List.of(
+                new LineItem(plenty.getId(), 2), new LineItem(scarce.getId(), 2), new LineItem(gone.getId(), 1))))
+            .isInstanceOfSatisfying(CheckoutFailedException.class, e -> assertThat(e.getFailures()).containsExactly(
+                new LineFailure(scarce.getId(), 2, 1), new LineFailure(gone.getId(), 1, 0)));
+        assertThat(itemRepository.findById(plenty.getId()).orElseThrow().getStock()).isEqualTo(5);
+        assertThat(itemRepository.findById(scarce.getId()).orElseThrow().getStock()).isEqualTo(1);
+        assertThat(purchaseRepository.count()).isZero();
+
+        assertThatThrownBy(() -> purchaseService.checkout(users.get(0).getId(), List.of(
+                new LineItem(plenty.getId(), 1), new LineItem(-1L, 1))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> purchaseService.checkout(-1L, List.of(new LineItem(plenty.getId(), 1))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> purchaseService.checkout(users.get(0).getId(), List.of(new LineItem(plenty.getId(), 0))))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThat(itemRepository.findById(plenty.getId()).orElseThrow().getStock()).isEqualTo(5);
+    }
+
+    @Test
+    public void concurrentCarts_shouldNeitherDeadlockNorOversell() throws Exception {
+        int stock = 100;
+        int carts = 400;
+        int threads = 16;
+        Item first = newItem(stock);
+        Item second = newItem(stock);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger bought = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = next.getAndIncrement(); i < carts; i = next.getAndIncrement()) {
+                        // Half the carts list the items the other way round
+                        List<LineItem> lines = i % 2 == 0
+                            ? List.of(new LineItem(first.getId(), 1), new LineItem(second.getId(), 1))
+                            : List.of(new LineItem(second.getId(), 1), new LineItem(first.getId(), 1));
+                        try {
+                            purchaseService.checkout(users.get(i % users.size()).getId(), lines);
+                            bought.incrementAndGet();
+                        } catch (CheckoutFailedException e) {
+                            // Sold out
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(bought.get()).isEqualTo(stock);
+        assertThat(itemRepository.findById(first.getId()).orElseThrow().getStock()).isZero();
+        assertThat(itemRepository.findById(second.getId()).orElseThrow().getStock()).isZero();
+        assertThat(purchaseRepository.count()).isEqualTo(2L * stock);
+    }
+
+    @Test
+    public void checkout_shouldRefuseHotItems() {
+        Item cold = newItem(5);
+        Item hot = newItem(5);
+        hot.setHot(true);
+        itemRepository.save(hot);
+
+        assertThatThrownBy(() -> purchaseService.checkout(users.get(0).getId(),
+                List.of(new LineItem(cold.getId(), 1), new LineItem(hot.getId(), 1))))
+            .isInstanceOfSatisfying(HotItemCheckoutException.class,
+                e -> assertThat(e.getItemIds()).containsExactly(hot.getId()));
+        assertThat(itemRepository.findById(cold.getId()).orElseThrow().getStock()).isEqualTo(5);
+        assertThat(purchaseRepository.count()).isZero();
+    }
+
+    private Item newItem(int stock) {
+        Item item = new Item();
+        item.setName("limited");
+        item.setPrice(new BigDecimal("2.50"));
+        item.setStock(stock);
+        return itemRepository.save(item);
+    }
+}
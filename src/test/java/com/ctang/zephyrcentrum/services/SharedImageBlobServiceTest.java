@@ -0,0 +1,95 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.repositories.ImageBlobRepository;
+import com.ctang.zephyrcentrum.storage.LocalImageBlobStore;
+import com.ctang.zephyrcentrum.storage.StoredBlob;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two blob services sharing one database and one store, like two instances
+ * of the application, retaining and releasing the same content.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SharedImageBlobServiceTest {
+
+    @TempDir
+    Path root;
+
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        imageBlobRepository.deleteAll();
+    }
+
+    @Test
+    public void concurrentInstances_shouldNeverReferenceDeletedContent() throws Exception {
+        LocalImageBlobStore blobStore = new LocalImageBlobStore(root);
+        List<ImageBlobServiceImpl> instances = List.of(newService(blobStore), newService(blobStore));
+        int rounds = 200;
+        CyclicBarrier start = new CyclicBarrier(instances.size());
+        ExecutorService executor = Executors.newFixedThreadPool(instances.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (ImageBlobServiceImpl instance : instances) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        StoredBlob blob = instance.retain(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+                        // Nobody may delete content this instance holds a reference to
+                        assertThat(blobStore.exists(blob.key())).isTrue();
+                        instance.release(blob.key());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(imageBlobRepository.count()).isZero();
+        try (var files = Files.walk(root)) {
+            assertThat(files.filter(Files::isRegularFile).count()).isZero();
+        }
+    }
+
+    private ImageBlobServiceImpl newService(LocalImageBlobStore blobStore) {
+        return new ImageBlobServiceImpl(
+            blobStore, imageBlobRepository, jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,181 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ctang.zephyrcentrum.models.Post;
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.models.dtos.PostFeedItem;
+import com.ctang.zephyrcentrum.repositories.FollowRepository;
+import com.ctang.zephyrcentrum.repositories.PostRepository;
+import com.ctang.zephyrcentrum.repositories.TimelineEntryRepository;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+import com.ctang.zephyrcentrum.utils.KeysetCursor;
+
+/**
+ * Runs the timeline service against real follows, posts and timeline
+ * entries, outside a test transaction so commits and rollbacks are real.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TimelineServiceImplTest {
+
+    @Autowired
+    private TimelineEntryRepository timelineEntryRepository;
+
+    @Autowired
+    private FollowRepository followRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private User author;
+    private User reader;
+    private User bystander;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        author = user("author");
+        reader = user("reader");
+        bystander = user("bystander");
+    }
+
+    @AfterEach
+    void tearDown() {
+        timelineEntryRepository.deleteAll();
+        followRepository.deleteAll();
+        postRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void fanOut_shouldInsertEachTimelineEntryOnce() {
+        TimelineServiceImpl timelineService = newService(10_000);
+        timelineService.follow(reader.getId(), author.getId());
+        timelineService.follow(bystander.getId(), author.getId());
+        Post post = savePost(author);
+
+        List<Long> first = timelineEntryRepository.fanOut(post.getId(), post.getCreatedDate(), author.getId(), true);
+        List<Long> again = timelineEntryRepository.fanOut(post.getId(), post.getCreatedDate(), author.getId(), true);
+
+        assertThat(first).containsExactlyInAnyOrder(author.getId(), reader.getId(), bystander.getId());
+        // Timelines that already hold the post are not returned, or duplicated
+        assertThat(again).isEmpty();
+        assertThat(timelineEntryRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    public void publish_shouldUpdateCachedTimelinesOnlyAfterCommit() {
+        TimelineServiceImpl timelineService = newService(10_000);
+        timelineService.follow(reader.getId(), author.getId());
+        assertThat(timelineService.getHomeTimeline(reader.getId(), null, 10)).isEmpty();
+
+        Post rolledBack = transactionTemplate.execute(status -> {
+            Post post = savePost(author);
+            timelineService.publish(post);
+            status.setRollbackOnly();
+            return post;
+        });
+        assertThat(timelineService.getHomeTimeline(reader.getId(), null, 10)).isEmpty();
+
+        Post committed = transactionTemplate.execute(status -> {
+            Post post = savePost(author);
+            timelineService.publish(post);
+            // Not visible to readers of the cached timeline before the commit
+            assertThat(timelineService.getHomeTimeline(reader.getId(), null, 10)).isEmpty();
+            return post;
+        });
+
+        assertThat(ids(timelineService.getHomeTimeline(reader.getId(), null, 10)))
+            .containsExactly(committed.getId())
+            .doesNotContain(rolledBack.getId());
+        assertThat(timelineService.getHomeTimeline(bystander.getId(), null, 10)).isEmpty();
+    }
+
+    @Test
+    public void getHomeTimeline_shouldMergeCelebrityPostsWhenRead() {
+        TimelineServiceImpl timelineService = newService(2);
+        timelineService.follow(reader.getId(), author.getId());
+        timelineService.follow(bystander.getId(), author.getId());
+        timelineService.refreshCelebrities();
+        Post older = publish(timelineService, reader);
+        Post celebrityPost = publish(timelineService, author);
+        Post newer = publish(timelineService, reader);
+
+        // Celebrity posts are only written to the author's own timeline
+        assertThat(timelineEntryRepository.findUserIdsByPostId(celebrityPost.getId())).containsExactly(author.getId());
+        List<PostFeedItem> firstPage = timelineService.getHomeTimeline(reader.getId(), null, 2);
+        assertThat(ids(firstPage)).containsExactly(newer.getId(), celebrityPost.getId());
+        PostFeedItem last = firstPage.get(1);
+        List<PostFeedItem> secondPage = timelineService.getHomeTimeline(
+            reader.getId(), new KeysetCursor(last.createdDate(), last.id()), 2);
+        assertThat(ids(secondPage)).containsExactly(older.getId());
+    }
+
+    @Test
+    public void retract_shouldRemoveThePostFromCachedTimelines() {
+        TimelineServiceImpl timelineService = newService(10_000);
+        timelineService.follow(reader.getId(), author.getId());
+        Post kept = publish(timelineService, author);
+        Post retracted = publish(timelineService, author);
+        assertThat(ids(timelineService.getHomeTimeline(reader.getId(), null, 10)))
+            .containsExactly(retracted.getId(), kept.getId());
+
+        timelineService.retract(retracted.getId());
+
+        // The post itself still exists, so only the ring could still serve it
+        assertThat(timelineEntryRepository.findUserIdsByPostId(retracted.getId())).isEmpty();
+        assertThat(ids(timelineService.getHomeTimeline(reader.getId(), null, 10))).containsExactly(kept.getId());
+        assertThat(ids(timelineService.getHomeTimeline(author.getId(), null, 10))).containsExactly(kept.getId());
+    }
+
+    private TimelineServiceImpl newService(long celebrityThreshold) {
+        return new TimelineServiceImpl(
+            timelineEntryRepository, followRepository, postRepository, 200, 100, 60_000, celebrityThreshold, 50);
+    }
+
+    private Post publish(TimelineServiceImpl timelineService, User user) {
+        return transactionTemplate.execute(status -> {
+            Post post = savePost(user);
+            timelineService.publish(post);
+            return post;
+        });
+    }
+
+    private Post savePost(User user) {
+        Post post = new Post();
+        post.setUser(user);
+        post.setContent("post by " + user.getUsername());
+        return postRepository.save(post);
+    }
+
+    private User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        return userRepository.save(user);
+    }
+
+    private static List<Long> ids(List<PostFeedItem> items) {
+        return items.stream().map(PostFeedItem::id).toList();
+    }
+}
@@ -0,0 +1,288 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.models.UploadSession;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus;
+import com.ctang.zephyrcentrum.models.dtos.UploadSessionStatus.ChunkRange;
+import com.ctang.zephyrcentrum.repositories.UploadSessionRepository;
+import com.ctang.zephyrcentrum.types.UploadStatus;
+
+public class UploadSessionServiceImplTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path sessionsDir;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<String, UploadSession> sessions = new HashMap<>();
+    private UploadSessionServiceImpl uploadSessionService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        uploadSessionService = new UploadSessionServiceImpl(
+            uploadSessionRepository, imageService, transactionManager, sessionsDir.toString(), CHUNK_SIZE, 1024, 60_000, 60_000);
+
+        // Behave like the table, including the in-place set_bit
+        when(uploadSessionRepository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            UploadSession session = invocation.getArgument(0);
+            sessions.put(session.getId(), session);
+            return session;
+        });
+        when(uploadSessionRepository.findById(anyString()))
+            .thenAnswer(invocation -> Optional.ofNullable(sessions.get(invocation.<String>getArgument(0))));
+        when(uploadSessionRepository.existsById(anyString()))
+            .thenAnswer(invocation -> sessions.containsKey(invocation.<String>getArgument(0)));
+        when(uploadSessionRepository.beginChunkWrite(anyString(), any())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || session.getStatus() != UploadStatus.UPLOADING) {
+                return 0;
+            }
+            session.setWriters(session.getWriters() + 1);
+            return 1;
+        });
+        when(uploadSessionRepository.finishChunkWrite(anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null) {
+                return 0;
+            }
+            int chunk = invocation.getArgument(1);
+            session.getReceivedChunks()[chunk / 8] |= (byte) (1 << (chunk % 8));
+            session.setWriters(session.getWriters() - 1);
+            session.setUpdatedDate(invocation.getArgument(2));
+            return 1;
+        });
+        when(uploadSessionRepository.abandonChunkWrite(anyString())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null) {
+                return 0;
+            }
+            session.setWriters(session.getWriters() - 1);
+            return 1;
+        });
+        when(uploadSessionRepository.claimCompletion(anyString(), any(), any())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || session.getStatus() != UploadStatus.UPLOADING || session.getWriters() > 0) {
+                return 0;
+            }
+            session.setStatus(UploadStatus.COMPLETING);
+            return 1;
+        });
+        when(uploadSessionRepository.revertCompletion(anyString())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || session.getStatus() != UploadStatus.COMPLETING) {
+                return 0;
+            }
+            session.setStatus(UploadStatus.UPLOADING);
+            return 1;
+        });
+        when(uploadSessionRepository.deleteSessionById(anyString()))
+            .thenAnswer(invocation -> sessions.remove(invocation.<String>getArgument(0)) != null ? 1 : 0);
+        when(uploadSessionRepository.deleteUploadingSessionById(anyString())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || session.getStatus() != UploadStatus.UPLOADING) {
+                return 0;
+            }
+            sessions.remove(session.getId());
+            return 1;
+        });
+        when(uploadSessionRepository.deleteStaleSessionById(anyString(), any())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || !session.getUpdatedDate().isBefore(invocation.getArgument(1))) {
+                return 0;
+            }
+            sessions.remove(session.getId());
+            return 1;
+        });
+        when(uploadSessionRepository.findByUpdatedDateBefore(any())).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(0);
+            return sessions.values().stream().filter(session -> session.getUpdatedDate().isBefore(cutoff)).toList();
+        });
+    }
+
+    @Test
+    void testChunksAssembleInAnyOrder() throws IOException {
+        byte[] content = "0123456789".getBytes();
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, content.length);
+        assertEquals(3, session.chunkCount());
+
+        uploadSessionService.writeChunk(session.id(), 2, new ByteArrayInputStream(content, 8, 2));
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(content, 0, 4));
+        UploadSessionStatus status = uploadSessionService.writeChunk(session.id(), 1, new ByteArrayInputStream(content, 4, 4)).orElseThrow();
+        assertTrue(status.complete());
+
+        AtomicReference<byte[]> assembled = new AtomicReference<>();
+        when(imageService.storeImage(any(Path.class), eq("photo.jpg"), eq(1L), isNull())).thenAnswer(invocation -> {
+            assembled.set(Files.readAllBytes(invocation.<Path>getArgument(0)));
+            return new Image();
+        });
+
+        assertTrue(uploadSessionService.complete(session.id()).isPresent());
+        assertArrayEquals(content, assembled.get());
+        assertTrue(uploadSessionService.getStatus(session.id()).isEmpty());
+        try (var files = Files.list(sessionsDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testFailedCompletionKeepsTheUpload() throws IOException {
+        byte[] content = "0123".getBytes();
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, content.length);
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(content));
+        // Like the blob store, storing moves the file away before failing
+        when(imageService.storeImage(any(Path.class), any(), any(), any())).thenAnswer(invocation -> {
+            Files.delete(invocation.<Path>getArgument(0));
+            throw new IOException("disk full");
+        });
+
+        assertThrows(IOException.class, () -> uploadSessionService.complete(session.id()));
+        assertEquals(UploadStatus.UPLOADING, sessions.get(session.id()).getStatus());
+
+        AtomicReference<byte[]> assembled = new AtomicReference<>();
+        doAnswer(invocation -> {
+            assembled.set(Files.readAllBytes(invocation.<Path>getArgument(0)));
+            return new Image();
+        }).when(imageService).storeImage(any(Path.class), any(), any(), any());
+        assertTrue(uploadSessionService.complete(session.id()).isPresent());
+        assertArrayEquals(content, assembled.get());
+    }
+
+    @Test
+    void testCompletionRollsBackTheImageIfTheSessionIsntDeleted() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, CHUNK_SIZE);
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+        when(imageService.storeImage(any(Path.class), any(), any(), any())).thenReturn(new Image());
+        doThrow(new IllegalStateException("connection lost"))
+            .doAnswer(invocation -> sessions.remove(session.id()) != null ? 1 : 0)
+            .when(uploadSessionRepository).deleteSessionById(session.id());
+
+        assertThrows(IllegalStateException.class, () -> uploadSessionService.complete(session.id()));
+        // The image insert went with it, so completing again stores the upload once
+        verify(transactionManager).rollback(any());
+        assertEquals(UploadStatus.UPLOADING, sessions.get(session.id()).getStatus());
+
+        assertTrue(uploadSessionService.complete(session.id()).isPresent());
+        verify(transactionManager).commit(any());
+        assertFalse(sessions.containsKey(session.id()));
+    }
+
+    @Test
+    void testChunksAreRejectedWhileCompleting() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, CHUNK_SIZE);
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+        when(imageService.storeImage(any(Path.class), any(), any(), any())).thenAnswer(invocation -> {
+            assertThrows(IllegalStateException.class,
+                () -> uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE])));
+            assertFalse(uploadSessionService.abort(session.id()));
+            return new Image();
+        });
+
+        assertTrue(uploadSessionService.complete(session.id()).isPresent());
+        assertTrue(uploadSessionService.getStatus(session.id()).isEmpty());
+    }
+
+    @Test
+    void testCompleteWaitsForChunkWrites() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, CHUNK_SIZE);
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+        // A resend of the chunk still in flight
+        sessions.get(session.id()).setWriters(1);
+
+        assertThrows(IllegalStateException.class, () -> uploadSessionService.complete(session.id()));
+        verify(imageService, never()).storeImage(any(Path.class), any(), any(), any());
+    }
+
+    @Test
+    void testStatusReportsReceivedRanges() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, 20);
+
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+        uploadSessionService.writeChunk(session.id(), 1, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+        uploadSessionService.writeChunk(session.id(), 3, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+
+        UploadSessionStatus status = uploadSessionService.getStatus(session.id()).orElseThrow();
+        assertEquals(List.of(new ChunkRange(0, 1), new ChunkRange(3, 3)), status.received());
+        assertFalse(status.complete());
+    }
+
+    @Test
+    void testRejectsChunksOfTheWrongSize() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, 10);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[3])));
+        assertThrows(IllegalArgumentException.class,
+            () -> uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[5])));
+        assertThrows(IllegalArgumentException.class,
+            () -> uploadSessionService.writeChunk(session.id(), 3, new ByteArrayInputStream(new byte[CHUNK_SIZE])));
+        assertTrue(uploadSessionService.getStatus(session.id()).orElseThrow().received().isEmpty());
+    }
+
+    @Test
+    void testCompleteRequiresEveryChunk() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, 10);
+        uploadSessionService.writeChunk(session.id(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+
+        assertThrows(IllegalStateException.class, () -> uploadSessionService.complete(session.id()));
+        verify(imageService, never()).storeImage(any(Path.class), any(), any(), any());
+        assertTrue(uploadSessionService.getStatus(session.id()).isPresent());
+    }
+
+    @Test
+    void testDeletesStaleSessions() throws IOException {
+        UploadSessionStatus stale = uploadSessionService.createSession(1L, "old.jpg", null, 10);
+        UploadSessionStatus active = uploadSessionService.createSession(1L, "new.jpg", null, 10);
+        sessions.get(stale.id()).setUpdatedDate(LocalDateTime.now().minusHours(1));
+
+        uploadSessionService.deleteStaleSessions();
+
+        assertTrue(uploadSessionService.getStatus(stale.id()).isEmpty());
+        assertTrue(uploadSessionService.getStatus(active.id()).isPresent());
+        try (var files = Files.list(sessionsDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testReceivedChunksMatchBitSetLayout() throws IOException {
+        UploadSessionStatus session = uploadSessionService.createSession(1L, "photo.jpg", null, 40);
+        uploadSessionService.writeChunk(session.id(), 9, new ByteArrayInputStream(new byte[CHUNK_SIZE]));
+
+        BitSet received = BitSet.valueOf(sessions.get(session.id()).getReceivedChunks());
+        assertEquals(9, received.nextSetBit(0));
+        assertEquals(2, sessions.get(session.id()).getReceivedChunks().length);
+    }
+}
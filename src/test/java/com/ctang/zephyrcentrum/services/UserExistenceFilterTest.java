@@ -0,0 +1,122 @@
+package com.ctang.zephyrcentrum.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.User;
+import com.ctang.zephyrcentrum.repositories.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserExistenceFilterTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserExistenceFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new UserExistenceFilter(userRepository, jdbcTemplate, transactionManager, meterRegistry, 1000, 0.01);
+        User existing = new User();
+        existing.setUsername("existing");
+        existing.setEmail("existing@example.com");
+        userRepository.save(existing);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void lookups_shouldGoToTheDatabaseUntilBuilt() {
+        assertThat(filter.findByUsername("existing")).isPresent();
+        assertThat(filter.findByUsername("missing")).isEmpty();
+        assertThat(meterRegistry.get("users.bloom.checks").tag("field", "username").tag("result", "negative")
+            .counter().count()).isZero();
+    }
+
+    @Test
+    public void rebuild_shouldAnswerUnusedValuesWithoutTheDatabase() {
+        assertThat(filter.rebuild()).isEqualTo(1);
+
+        assertThat(filter.findByUsername("existing")).isPresent();
+        assertThat(filter.findByEmail("existing@example.com")).isPresent();
+        for (int i = 0; i < 100; i++) {
+            assertThat(filter.findByUsername("fresh" + i)).isEmpty();
+            assertThat(filter.findByEmail("fresh" + i + "@example.com")).isEmpty();
+        }
+
+        double negatives = meterRegistry.get("users.bloom.checks").tag("field", "username").tag("result", "negative")
+            .counter().count();
+        double falsePositives = meterRegistry.get("users.bloom.false.positives").tag("field", "username")
+            .counter().count();
+        assertThat(negatives + falsePositives).isEqualTo(100);
+        assertThat(meterRegistry.get("users.bloom.false.positive.rate").tag("field", "username").gauge().value())
+            .isEqualTo(falsePositives / 100);
+    }
+
+    @Test
+    public void add_shouldMakeNewUsersVisible() {
+        filter.rebuild();
+        User created = new User();
+        created.setUsername("created");
+        created.setEmail("created@example.com");
+        filter.add(userRepository.save(created));
+
+        assertThat(filter.findByUsername("created")).isPresent();
+        assertThat(filter.findByEmail("created@example.com")).isPresent();
+    }
+
+    @Test
+    public void rebuildPeriodically_shouldPickUpUsersSavedThroughOtherInstances() {
+        filter.rebuild();
+        // Saved without add(), as by another instance
+        User elsewhere = new User();
+        elsewhere.setUsername("elsewhere");
+        elsewhere.setEmail("elsewhere@example.com");
+        userRepository.save(elsewhere);
+
+        filter.rebuildPeriodically();
+
+        assertThat(filter.findByUsername("elsewhere")).isPresent();
+        assertThat(filter.findByEmail("elsewhere@example.com")).isPresent();
+    }
+
+    @Test
+    public void save_shouldRejectTakenUsernamesAndEmailsTheFilterMissed() {
+        filter.rebuild();
+        User sameUsername = new User();
+        sameUsername.setUsername("existing");
+        sameUsername.setEmail("other@example.com");
+        User sameEmail = new User();
+        sameEmail.setUsername("other");
+        sameEmail.setEmail("existing@example.com");
+
+        assertThatThrownBy(() -> userRepository.save(sameUsername)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> userRepository.save(sameEmail)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(userRepository.count()).isEqualTo(1);
+    }
+}
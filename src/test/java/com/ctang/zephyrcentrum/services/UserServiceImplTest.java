@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import com.ctang.zephyrcentrum.models.User;
@@ -23,6 +24,12 @@ public class UserServiceImplTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private PasswordEncoder passwordEncoder;
     
     private UserServiceImpl userService;
@@ -30,7 +37,7 @@ public class UserServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        userService = new UserServiceImpl(userRepository, passwordEncoder);
+        userService = new UserServiceImpl(userRepository, passwordEncoder, userExistenceFilter, eventPublisher);
     }
     
     @Test
@@ -0,0 +1,91 @@
+package com.ctang.zephyrcentrum.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ctang.zephyrcentrum.models.Image;
+import com.ctang.zephyrcentrum.repositories.ImageBlobRepository;
+import com.ctang.zephyrcentrum.repositories.ImageRepository;
+import com.ctang.zephyrcentrum.services.ImageBlobServiceImpl;
+import com.ctang.zephyrcentrum.types.Visibility;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Migrates rows of a legacy images.data column, added for the test, into a
+ * real blob store, with the references committed to the database.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ImageBlobMigrationJobTest {
+
+    @TempDir
+    Path root;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ImageBlobMigrationJob job;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate.execute("ALTER TABLE system.images ADD COLUMN data BYTEA");
+        ImageBlobServiceImpl imageBlobService = new ImageBlobServiceImpl(new LocalImageBlobStore(root),
+            imageBlobRepository, jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+        job = new ImageBlobMigrationJob(jdbcTemplate, imageBlobService, true, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageRepository.deleteAll();
+        imageBlobRepository.deleteAll();
+        jdbcTemplate.execute("ALTER TABLE system.images DROP COLUMN data");
+    }
+
+    @Test
+    public void migrate_shouldReferenceEachBlobOncePerImage() {
+        Long first = legacyImage(new byte[] {1, 2, 3});
+        Long second = legacyImage(new byte[] {1, 2, 3});
+
+        assertThat(job.migrate()).isEqualTo(2);
+        // Nothing left to copy, so a re-run can't add references
+        assertThat(job.migrate()).isZero();
+
+        String key = imageRepository.findById(first).orElseThrow().getStorageKey();
+        assertThat(imageRepository.findById(second).orElseThrow().getStorageKey()).isEqualTo(key);
+        assertThat(imageBlobRepository.findById(key).orElseThrow().getRefCount()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM system.images WHERE data IS NOT NULL",
+            Long.class)).isZero();
+    }
+
+    private Long legacyImage(byte[] data) {
+        Image image = new Image();
+        image.setName("legacy.png");
+        image.setContentType("image/png");
+        image.setVisibility(Visibility.PUBLIC);
+        Long id = imageRepository.save(image).getId();
+        jdbcTemplate.update("UPDATE system.images SET data = ? WHERE id = ?", data, id);
+        return id;
+    }
+}
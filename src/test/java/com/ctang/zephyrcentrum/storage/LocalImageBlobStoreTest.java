@@ -0,0 +1,101 @@
+package com.ctang.zephyrcentrum.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalImageBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private LocalImageBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new LocalImageBlobStore(root);
+    }
+
+    @Test
+    void testStageAndCommit() throws IOException {
+        byte[] content = "test image content".getBytes();
+
+        StagedBlob staged = blobStore.stage(new ByteArrayInputStream(content));
+
+        assertTrue(blobStore.commit(staged));
+        assertTrue(blobStore.exists(staged.hash()));
+        assertEquals(content.length, staged.size());
+        try (InputStream in = blobStore.open(staged.hash())) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testStageHashesContent() throws IOException, NoSuchAlgorithmException {
+        byte[] content = "test image content".getBytes();
+
+        StagedBlob staged = blobStore.stage(new ByteArrayInputStream(content));
+
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertEquals(expected, staged.hash());
+    }
+
+    @Test
+    void testCommitOfIdenticalContentIsDeduplicated() throws IOException {
+        StagedBlob first = blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        StagedBlob second = blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+        assertEquals(first.hash(), second.hash());
+        assertTrue(blobStore.commit(first));
+        assertFalse(blobStore.commit(second));
+        assertFalse(Files.exists(second.file()));
+    }
+
+    @Test
+    void testCommitShardsByKeyPrefix() throws IOException {
+        StagedBlob staged = blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        blobStore.commit(staged);
+
+        String key = staged.hash();
+        Path expected = root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+        assertTrue(Files.exists(expected));
+    }
+
+    @Test
+    void testCommitLeavesNoTempFiles() throws IOException {
+        blobStore.commit(blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3})));
+        blobStore.commit(blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3})));
+        blobStore.discard(blobStore.stage(new ByteArrayInputStream(new byte[] {4, 5, 6})));
+
+        try (var temps = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, temps.count());
+        }
+    }
+
+    @Test
+    void testDelete() throws IOException {
+        StagedBlob staged = blobStore.stage(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        blobStore.commit(staged);
+
+        assertTrue(blobStore.delete(staged.hash()));
+        assertFalse(blobStore.exists(staged.hash()));
+        assertFalse(blobStore.delete(staged.hash()));
+    }
+
+    @Test
+    void testRejectsInvalidKeys() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.open("../../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.exists(null));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CommentPathTest {
+
+    @Test
+    void testSegment() {
+        assertEquals("11", CommentPath.segment(1));
+        assertEquals("2ff", CommentPath.segment(255));
+        assertEquals("3100", CommentPath.segment(256));
+    }
+
+    @Test
+    void testSegmentsSortNumerically() {
+        long[] ids = {1, 9, 15, 16, 255, 256, 4095, 4096, 1_000_000, Long.MAX_VALUE >>> 4};
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(CommentPath.segment(ids[i - 1]).compareTo(CommentPath.segment(ids[i])) < 0,
+                ids[i - 1] + " should sort before " + ids[i]);
+        }
+    }
+
+    @Test
+    void testPathsSortDepthFirst() {
+        String root = CommentPath.child(null, 2);
+        String firstReply = CommentPath.child(root, 300);
+        String nestedReply = CommentPath.child(firstReply, 301);
+        String secondReply = CommentPath.child(root, 302);
+        String nextRoot = CommentPath.child(null, 16);
+
+        List<String> paths = new ArrayList<>(List.of(nextRoot, secondReply, nestedReply, root, firstReply));
+        paths.sort(null);
+
+        assertEquals(List.of(root, firstReply, nestedReply, secondReply, nextRoot), paths);
+    }
+
+    @Test
+    void testUpperBoundCoversSubtreeOnly() {
+        String root = CommentPath.child(null, 2);
+        String reply = CommentPath.child(CommentPath.child(root, 0xfff), 0xffff);
+        String upper = CommentPath.upperBound(root);
+
+        assertTrue(reply.compareTo(upper) < 0);
+        assertTrue(CommentPath.child(null, 3).compareTo(upper) > 0);
+        assertTrue(CommentPath.child(null, 16).compareTo(upper) > 0);
+    }
+
+    @Test
+    void testSegmentOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> CommentPath.segment(0));
+        assertThrows(IllegalArgumentException.class, () -> CommentPath.segment(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testIsValid() {
+        assertTrue(CommentPath.isValid("2ff3100"));
+        assertFalse(CommentPath.isValid(""));
+        assertFalse(CommentPath.isValid(null));
+        assertFalse(CommentPath.isValid("2FF"));
+        assertFalse(CommentPath.isValid("12/"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import com.ctang.zephyrcentrum.utils.ImageScaler.ScaledImage;
+
+public class ImageScalerTest {
+
+    @Test
+    void testScaleKeepsAspectRatio() throws IOException {
+        byte[] original = encode(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB), "png");
+
+        ScaledImage scaled = ImageScaler.scale(new ByteArrayInputStream(original), 200, "image/png");
+
+        assertNotNull(scaled);
+        assertEquals(200, scaled.width());
+        assertEquals(100, scaled.height());
+        assertEquals("image/png", scaled.contentType());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(scaled.data()));
+        assertEquals(200, decoded.getWidth());
+        assertEquals(100, decoded.getHeight());
+    }
+
+    @Test
+    void testScaleKeepsJpegFormat() throws IOException {
+        byte[] original = encode(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "jpeg");
+
+        ScaledImage scaled = ImageScaler.scale(new ByteArrayInputStream(original), 256, "image/jpeg");
+
+        assertNotNull(scaled);
+        assertEquals("image/jpeg", scaled.contentType());
+    }
+
+    @Test
+    void testCanReadOnlyTypesWithAReader() {
+        assertTrue(ImageScaler.canRead("image/png"));
+        assertTrue(ImageScaler.canRead("image/jpeg"));
+        assertFalse(ImageScaler.canRead("image/webp"));
+        assertFalse(ImageScaler.canRead(null));
+    }
+
+    @Test
+    void testScaleSkipsNarrowerOriginals() throws IOException {
+        byte[] original = encode(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png");
+
+        assertNull(ImageScaler.scale(new ByteArrayInputStream(original), 256, "image/png"));
+    }
+
+    @Test
+    void testScaleRejectsNonImages() {
+        assertThrows(IOException.class,
+            () -> ImageScaler.scale(new ByteArrayInputStream("not an image".getBytes()), 256, "image/png"));
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,30 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+public class KeysetCursorTest {
+
+    @Test
+    void testRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 1, 1, 12, 30, 15, 123_000_000), 42L);
+
+        assertEquals(cursor, KeysetCursor.parse(cursor.toString()));
+    }
+
+    @Test
+    void testParseBlankReturnsNull() {
+        assertNull(KeysetCursor.parse(null));
+        assertNull(KeysetCursor.parse(" "));
+    }
+
+    @Test
+    void testParseInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.parse("2024-01-01T12:00:00"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.parse("yesterday,42"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.parse("2024-01-01T12:00:00,abc"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class SortedLongSetTest {
+
+    @Test
+    void testOfSortsAndDeduplicates() {
+        SortedLongSet set = SortedLongSet.of(5, 1, 3, 5, 1);
+
+        assertEquals(3, set.size());
+        assertEquals(1, set.min());
+        assertTrue(set.contains(3));
+        assertFalse(set.contains(4));
+    }
+
+    @Test
+    void testWithAndWithoutReturnCopies() {
+        SortedLongSet set = SortedLongSet.of(2, 4);
+
+        SortedLongSet added = set.with(3).with(1).with(9);
+        assertEquals(5, added.size());
+        assertEquals(1, added.min());
+        assertFalse(set.contains(3));
+        assertSame(added, added.with(3));
+
+        SortedLongSet removed = added.without(1).without(3);
+        assertEquals(3, removed.size());
+        assertEquals(2, removed.min());
+        assertSame(removed, removed.without(7));
+    }
+
+    @Test
+    void testWithoutSmallest() {
+        SortedLongSet set = SortedLongSet.of(1, 2, 3, 4);
+
+        SortedLongSet trimmed = set.withoutSmallest(2);
+        assertEquals(2, trimmed.size());
+        assertEquals(3, trimmed.min());
+        assertEquals(0, set.withoutSmallest(10).size());
+        assertSame(set, set.withoutSmallest(0));
+    }
+
+    @Test
+    void testEmpty() {
+        assertEquals(0, SortedLongSet.empty().size());
+        assertFalse(SortedLongSet.empty().contains(0));
+        assertEquals(1, SortedLongSet.empty().with(7).size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class StripedStockTest {
+
+    @Test
+    void testTakesFromAllStripes() {
+        StripedStock stock = new StripedStock(4);
+        stock.add(10);
+        assertEquals(10, stock.available());
+
+        // More than any one stripe holds, so the stripes are gathered
+        assertTrue(stock.tryTake(7));
+        assertEquals(3, stock.available());
+        assertFalse(stock.tryTake(4));
+        assertEquals(3, stock.available());
+        assertEquals(3, stock.drain());
+        assertEquals(0, stock.available());
+    }
+
+    @Test
+    void testRefillsOnlyWhenShort() {
+        StripedStock stock = new StripedStock(4);
+        AtomicInteger refills = new AtomicInteger();
+        StripedStock.Refill chunks = missing -> {
+            refills.incrementAndGet();
+            return Math.max(missing, 8);
+        };
+
+        assertTrue(stock.tryTake(2, chunks));
+        assertEquals(6, stock.available());
+        assertTrue(stock.tryTake(6, chunks));
+        assertEquals(1, refills.get());
+        assertTrue(stock.tryTake(10, chunks));
+        assertEquals(2, refills.get());
+        assertFalse(stock.tryTake(1, missing -> 0));
+    }
+
+    @Test
+    void testConcurrentTakesNeverOversell() throws Exception {
+        int units = 10_000;
+        int threads = 8;
+        StripedStock stock = new StripedStock(16);
+        stock.add(units);
+        AtomicInteger taken = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int quantity = t % 3 + 1;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    while (stock.tryTake(quantity)) {
+                        taken.addAndGet(quantity);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Every take that failed saw less than 3 units in total
+        assertTrue(units - taken.get() < 3, "Left " + (units - taken.get()));
+        assertEquals(units - taken.get(), stock.available());
+    }
+}
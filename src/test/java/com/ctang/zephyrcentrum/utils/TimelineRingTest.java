@@ -0,0 +1,103 @@
+package com.ctang.zephyrcentrum.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TimelineRingTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Test
+    void testNewestFirst() {
+        TimelineRing ring = new TimelineRing(10, List.of(), true);
+        ring.add(1, T0);
+        ring.add(2, T0.plusMinutes(1));
+        ring.add(3, T0.plusMinutes(2));
+
+        assertEquals(List.of(3L, 2L, 1L), postIds(ring.page(null, 10)));
+    }
+
+    @Test
+    void testOutOfOrderInsertKeepsOrder() {
+        TimelineRing ring = new TimelineRing(10, List.of(), true);
+        ring.add(1, T0);
+        ring.add(3, T0.plusMinutes(2));
+        ring.add(2, T0.plusMinutes(1));
+        // Same timestamp, ordered by id
+        ring.add(4, T0.plusMinutes(1));
+
+        assertEquals(List.of(3L, 4L, 2L, 1L), postIds(ring.page(null, 10)));
+    }
+
+    @Test
+    void testIgnoresDuplicates() {
+        TimelineRing ring = new TimelineRing(10, List.of(), true);
+        ring.add(1, T0);
+        ring.add(1, T0);
+
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    void testDropsOldestWhenFull() {
+        TimelineRing ring = new TimelineRing(3, List.of(), true);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i, T0.plusMinutes(i));
+        }
+        ring.add(0, T0);
+
+        assertEquals(List.of(5L, 4L, 3L), postIds(ring.page(null, 3)));
+    }
+
+    @Test
+    void testPageAfterCursor() {
+        TimelineRing ring = new TimelineRing(10, List.of(), true);
+        for (int i = 1; i <= 5; i++) {
+            ring.add(i, T0.plusMinutes(i));
+        }
+
+        List<TimelineRing.Entry> page = ring.page(new KeysetCursor(T0.plusMinutes(4), 4L), 2);
+
+        assertEquals(List.of(3L, 2L), postIds(page));
+    }
+
+    @Test
+    void testPagePastTruncatedRingFallsBack() {
+        TimelineRing ring = new TimelineRing(3, List.of(), true);
+        for (int i = 1; i <= 4; i++) {
+            ring.add(i, T0.plusMinutes(i));
+        }
+
+        assertNotNull(ring.page(null, 3));
+        assertNull(ring.page(new KeysetCursor(T0.plusMinutes(3), 3L), 3));
+    }
+
+    @Test
+    void testCompleteRingAnswersShortPages() {
+        TimelineRing ring = new TimelineRing(10, List.of(
+            new TimelineRing.Entry(2, T0.plusMinutes(2)),
+            new TimelineRing.Entry(1, T0.plusMinutes(1))), true);
+
+        assertEquals(List.of(2L, 1L), postIds(ring.page(null, 50)));
+    }
+
+    @Test
+    void testRemove() {
+        TimelineRing ring = new TimelineRing(10, List.of(), true);
+        for (int i = 1; i <= 3; i++) {
+            ring.add(i, T0.plusMinutes(i));
+        }
+        ring.remove(2);
+        ring.add(4, T0.plusMinutes(4));
+
+        assertEquals(List.of(4L, 3L, 1L), postIds(ring.page(null, 10)));
+    }
+
+    private static List<Long> postIds(List<TimelineRing.Entry> entries) {
+        return entries.stream().map(TimelineRing.Entry::postId).toList();
+    }
+}